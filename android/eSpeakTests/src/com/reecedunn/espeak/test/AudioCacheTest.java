@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak.test;
+
+import android.test.AndroidTestCase;
+
+import com.reecedunn.espeak.AudioCache;
+import com.reecedunn.espeak.FileUtils;
+import com.reecedunn.espeak.SpeechSynthesis;
+import com.reecedunn.espeak.Voice;
+import com.reecedunn.espeak.VoiceVariant;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class AudioCacheTest extends AndroidTestCase
+{
+    private static final Voice ENGLISH = new Voice("en-gb", "gmw/en", SpeechSynthesis.GENDER_MALE, 0, new Locale("en", "GB"));
+    private static final Voice GERMAN = new Voice("de", "gmw/de", SpeechSynthesis.GENDER_MALE, 0, new Locale("de"));
+    private static final VoiceVariant MALE = VoiceVariant.parseVoiceVariant(VoiceVariant.MALE);
+    private static final int[] NO_EVENTS = new int[0];
+
+    private File mDirectory;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "audio-cache-test");
+        FileUtils.rmdir(mDirectory);
+        mDirectory.delete();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        FileUtils.rmdir(mDirectory);
+        mDirectory.delete();
+        super.tearDown();
+    }
+
+    private static String key(String text, Voice voice, int rate)
+    {
+        return AudioCache.getKey(text, voice, MALE, rate, 50, 50, 100, 0, null, 22050);
+    }
+
+    private static byte[] audio(int length, int value)
+    {
+        final byte[] audio = new byte[length];
+        for (int i = 0; i < length; ++i)
+        {
+            audio[i] = (byte)(value + i);
+        }
+        return audio;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer)
+    {
+        final byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        return data;
+    }
+
+    public void testKey()
+    {
+        assertThat(key("button", ENGLISH, 175), is(key("  button ", ENGLISH, 175)));
+        assertThat(key("double  tap\tto activate", ENGLISH, 175), is(key("double tap to activate", ENGLISH, 175)));
+        assertThat(key("button", ENGLISH, 175), is(not(key("button", GERMAN, 175))));
+        assertThat(key("button", ENGLISH, 175), is(not(key("button", ENGLISH, 200))));
+        assertThat(key("button", ENGLISH, 175), is(not(key("Button", ENGLISH, 175))));
+
+        // Long texts and SSML are not cached.
+        final StringBuilder text = new StringBuilder();
+        while (text.length() <= AudioCache.MAX_TEXT_LENGTH)
+        {
+            text.append("word ");
+        }
+        assertThat(key(text.toString(), ENGLISH, 175), is(nullValue()));
+        assertThat(key("<speak>button</speak>", ENGLISH, 175), is(nullValue()));
+        assertThat(key("   ", ENGLISH, 175), is(nullValue()));
+    }
+
+    public void testMemoryCache()
+    {
+        final AudioCache cache = new AudioCache(250, null, 0);
+        cache.setDataVersion("1");
+        assertThat(cache.get(key("a", ENGLISH, 175), "a"), is(nullValue()));
+
+        cache.put(key("a", ENGLISH, 175), "a", audio(100, 1), NO_EVENTS);
+        cache.put(key("b", ENGLISH, 175), "b", audio(100, 2), NO_EVENTS);
+        assertThat(toArray(cache.get(key("a", ENGLISH, 175), "a").audio), is(audio(100, 1)));
+
+        // The least recently used entry is removed when the cache is full.
+        cache.put(key("c", ENGLISH, 175), "c", audio(100, 3), NO_EVENTS);
+        assertThat(cache.get(key("b", ENGLISH, 175), "b"), is(nullValue()));
+        assertThat(cache.get(key("a", ENGLISH, 175), "a"), is(notNullValue()));
+        assertThat(cache.get(key("c", ENGLISH, 175), "c"), is(notNullValue()));
+        assertThat(cache.getSize(), is(200));
+
+        assertThat(cache.getHits(), is(3L));
+        assertThat(cache.getMisses(), is(2L));
+        assertThat(cache.getBytesSaved(), is(300L));
+        assertThat(cache.getHitRate(), is(0.6f));
+    }
+
+    public void testEntrySize()
+    {
+        final AudioCache cache = new AudioCache(AudioCache.MAX_ENTRY_SIZE * 2, null, 0);
+        cache.put(key("a", ENGLISH, 175), "a", audio(AudioCache.MAX_ENTRY_SIZE + 1, 0), NO_EVENTS);
+        assertThat(cache.get(key("a", ENGLISH, 175), "a"), is(nullValue()));
+        cache.put(key("a", ENGLISH, 175), "a", new byte[0], NO_EVENTS);
+        assertThat(cache.get(key("a", ENGLISH, 175), "a"), is(nullValue()));
+    }
+
+    public void testDiskCache()
+    {
+        final AudioCache cache = new AudioCache(1000, mDirectory, 1000);
+        cache.setDataVersion("1");
+        cache.put(key("a", ENGLISH, 175), "a", audio(100, 1), NO_EVENTS);
+
+        // The audio on disk is used when the service is restarted.
+        final AudioCache restarted = new AudioCache(1000, mDirectory, 1000);
+        restarted.setDataVersion("1");
+        assertThat(toArray(restarted.get(key("a", ENGLISH, 175), "a").audio), is(audio(100, 1)));
+
+        // The audio on disk is removed when the voice data changes.
+        final AudioCache upgraded = new AudioCache(1000, mDirectory, 1000);
+        upgraded.setDataVersion("2");
+        assertThat(upgraded.get(key("a", ENGLISH, 175), "a"), is(nullValue()));
+    }
+
+    public void testDiskCacheSize()
+    {
+        final AudioCache cache = new AudioCache(1000, mDirectory, 250);
+        cache.setDataVersion("1");
+        cache.put(key("a", ENGLISH, 175), "a", audio(100, 1), NO_EVENTS);
+        cache.put(key("b", ENGLISH, 175), "b", audio(100, 2), NO_EVENTS);
+        cache.put(key("c", ENGLISH, 175), "c", audio(100, 3), NO_EVENTS);
+
+        long size = 0;
+        for (File file : mDirectory.listFiles())
+        {
+            if (file.getName().endsWith(".entry"))
+            {
+                size += file.length();
+            }
+        }
+        assertThat(size, is(lessThanOrEqualTo(250L)));
+    }
+
+    private static int[] wordEvent(int start, int length, int frame)
+    {
+        final int[] event = new int[SpeechSynthesis.EVENT_SIZE];
+        event[SpeechSynthesis.EVENT_TYPE] = SpeechSynthesis.EVENT_WORD;
+        event[SpeechSynthesis.EVENT_TEXT_START] = start;
+        event[SpeechSynthesis.EVENT_TEXT_LENGTH] = length;
+        event[SpeechSynthesis.EVENT_FRAME] = frame;
+        return event;
+    }
+
+    private static int[] events(int[]... events)
+    {
+        final int[] all = new int[events.length * SpeechSynthesis.EVENT_SIZE];
+        for (int i = 0; i < events.length; ++i)
+        {
+            System.arraycopy(events[i], 0, all, i * SpeechSynthesis.EVENT_SIZE, SpeechSynthesis.EVENT_SIZE);
+        }
+        return all;
+    }
+
+    public void testEvents()
+    {
+        final AudioCache cache = new AudioCache(1000, mDirectory, 1000);
+        cache.setDataVersion("1");
+        cache.put(key("double tap", ENGLISH, 175), "double tap", audio(100, 1),
+                  events(wordEvent(0, 6, 0), wordEvent(7, 3, 20)));
+        assertThat(cache.get(key("double tap", ENGLISH, 175), "double tap").events,
+                   is(events(wordEvent(0, 6, 0), wordEvent(7, 3, 20))));
+
+        // The events are moved to the words in a text with different whitespace.
+        assertThat(key(" double\t\ttap ", ENGLISH, 175), is(key("double tap", ENGLISH, 175)));
+        assertThat(cache.get(key(" double\t\ttap ", ENGLISH, 175), " double\t\ttap ").events,
+                   is(events(wordEvent(1, 6, 0), wordEvent(9, 3, 20))));
+
+        // The events are kept on disk with the audio.
+        final AudioCache restarted = new AudioCache(1000, mDirectory, 1000);
+        restarted.setDataVersion("1");
+        final AudioCache.Entry entry = restarted.get(key("double tap", ENGLISH, 175), "double  tap");
+        assertThat(toArray(entry.audio), is(audio(100, 1)));
+        assertThat(entry.events, is(events(wordEvent(0, 6, 0), wordEvent(8, 3, 20))));
+    }
+
+    public void testDataVersion()
+    {
+        final AudioCache cache = new AudioCache(1000, null, 0);
+        cache.setDataVersion("1");
+        cache.put(key("a", ENGLISH, 175), "a", audio(100, 1), NO_EVENTS);
+        cache.setDataVersion("1");
+        assertThat(cache.get(key("a", ENGLISH, 175), "a"), is(notNullValue()));
+        cache.setDataVersion("2");
+        assertThat(cache.get(key("a", ENGLISH, 175), "a"), is(nullValue()));
+    }
+}
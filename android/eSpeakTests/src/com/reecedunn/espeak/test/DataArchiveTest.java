@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak.test;
+
+import android.test.AndroidTestCase;
+
+import com.reecedunn.espeak.DataArchive;
+import com.reecedunn.espeak.FileUtils;
+import com.reecedunn.espeak.R;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class DataArchiveTest extends AndroidTestCase
+{
+    private File mDirectory;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "archive-test");
+        FileUtils.rmdir(mDirectory);
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        FileUtils.rmdir(mDirectory);
+        mDirectory.delete();
+        super.tearDown();
+    }
+
+    public void testOpen() throws IOException
+    {
+        final DataArchive archive = DataArchive.open(getContext(), R.raw.espeakdata, mDirectory);
+        assertThat(archive, is(notNullValue()));
+        assertThat(archive.getDirectory(), is(mDirectory));
+        assertThat(archive.contains("espeak-ng-data/phondata"), is(true));
+        assertThat(archive.contains("espeak-ng-data/en_dict"), is(true));
+        assertThat(archive.contains("espeak-ng-data/missing"), is(false));
+
+        final String version = FileUtils.read(getContext().getResources().openRawResource(R.raw.espeakdata_version));
+        assertThat(FileUtils.read(new File(mDirectory, "espeak-ng-data/version")), is(version));
+
+        assertThat(archive.getOffsets().length, is(archive.getNames().length));
+        assertThat(archive.getLengths().length, is(archive.getNames().length));
+        for (int i = 0; i < archive.getNames().length; ++i)
+        {
+            // eSpeak needs the files to be word aligned to map them.
+            assertThat(archive.getOffsets()[i] % 4, is(0L));
+        }
+    }
+
+    public void testFileData() throws IOException
+    {
+        final DataArchive archive = DataArchive.open(getContext(), R.raw.espeakdata, mDirectory);
+        assertThat(archive, is(notNullValue()));
+
+        int checked = 0;
+        final RandomAccessFile apk = new RandomAccessFile(getContext().getPackageCodePath(), "r");
+        final ZipInputStream zip = new ZipInputStream(getContext().getResources().openRawResource(R.raw.espeakdata));
+        try
+        {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null)
+            {
+                if (entry.isDirectory())
+                {
+                    continue;
+                }
+
+                final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = zip.read(buffer)) != -1)
+                {
+                    expected.write(buffer, 0, read);
+                }
+
+                final int index = indexOf(archive.getNames(), entry.getName());
+                assertThat(index, is(greaterThanOrEqualTo(0)));
+                assertThat(archive.getLengths()[index], is((long)expected.size()));
+
+                final byte[] actual = new byte[expected.size()];
+                apk.seek(archive.getOffsets()[index]);
+                apk.readFully(actual);
+                assertThat(actual, is(expected.toByteArray()));
+                ++checked;
+            }
+        }
+        finally
+        {
+            zip.close();
+            apk.close();
+        }
+        assertThat(checked, is(archive.getNames().length));
+    }
+
+    private static int indexOf(String[] names, String name)
+    {
+        for (int i = 0; i < names.length; ++i)
+        {
+            if (names[i].equals(name))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak.test;
+
+import android.test.AndroidTestCase;
+
+import com.reecedunn.espeak.DataExtractor;
+import com.reecedunn.espeak.DataManifest;
+import com.reecedunn.espeak.FileUtils;
+import com.reecedunn.espeak.R;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class DataExtractorTest extends AndroidTestCase
+{
+    private File mOutput;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        mOutput = new File(getContext().getCacheDir(), "extract-test");
+        FileUtils.rmdir(mOutput);
+        mOutput.mkdirs();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        FileUtils.rmdir(mOutput);
+        mOutput.delete();
+        super.tearDown();
+    }
+
+    public void testExtract() throws IOException
+    {
+        final AtomicLong totalSize = new AtomicLong(-1);
+        final AtomicInteger files = new AtomicInteger();
+        final AtomicLong fileBytes = new AtomicLong();
+
+        final DataExtractor extractor = new DataExtractor(getContext(), R.raw.espeakdata, mOutput, 4);
+        final DataExtractor.Result result = extractor.extract(new DataExtractor.Listener()
+        {
+            @Override
+            public void onStart(long size)
+            {
+                totalSize.set(size);
+            }
+
+            @Override
+            public void onFileExtracted(File file, long size, long elapsedNanos, long extracted)
+            {
+                assertThat(file.length(), is(size));
+                files.incrementAndGet();
+                fileBytes.addAndGet(size);
+            }
+        });
+
+        assertThat(result.files, is(files.get()));
+        assertThat(result.bytes, is(fileBytes.get()));
+        assertThat(result.bytes, is(totalSize.get()));
+        assertThat(new File(mOutput, "espeak-ng-data/phondata").length(), is(greaterThan(0L)));
+        assertThat(new File(mOutput, "espeak-ng-data/en_dict").length(), is(greaterThan(0L)));
+    }
+
+    public void testExtractUnchangedData() throws IOException
+    {
+        final DataExtractor.Listener listener = new DataExtractor.Listener()
+        {
+            @Override
+            public void onStart(long size)
+            {
+            }
+
+            @Override
+            public void onFileExtracted(File file, long size, long elapsedNanos, long extracted)
+            {
+            }
+        };
+
+        final DataExtractor extractor = new DataExtractor(getContext(), R.raw.espeakdata, mOutput);
+        final DataExtractor.Result install = extractor.extract(listener);
+        assertThat(new File(mOutput, DataManifest.FILE_NAME).exists(), is(true));
+
+        // Only the files that are missing are extracted when the data is the same.
+        new File(mOutput, "espeak-ng-data/en_dict").delete();
+        final DataExtractor.Result upgrade = extractor.extract(listener);
+        assertThat(upgrade.files, is(1));
+        assertThat(upgrade.unchangedFiles, is(install.files - 1));
+        assertThat(upgrade.removedFiles, is(0));
+        assertThat(new File(mOutput, "espeak-ng-data/en_dict").length(), is(greaterThan(0L)));
+    }
+
+    public void testExtractIntoNewTree() throws IOException
+    {
+        final DataExtractor.Listener listener = new DataExtractor.Listener()
+        {
+            @Override
+            public void onStart(long size)
+            {
+            }
+
+            @Override
+            public void onFileExtracted(File file, long size, long elapsedNanos, long extracted)
+            {
+            }
+        };
+
+        final File base = new File(mOutput, "base");
+        final File tree = new File(mOutput, "tree");
+        final DataExtractor.Result install = new DataExtractor(getContext(), R.raw.espeakdata, base).extract(listener);
+
+        // The unchanged files are linked from the base, which is not modified.
+        new File(base, "espeak-ng-data/en_dict").delete();
+        final DataExtractor.Result upgrade = new DataExtractor(getContext(), R.raw.espeakdata, tree, base).extract(listener);
+        assertThat(upgrade.files, is(1));
+        assertThat(upgrade.unchangedFiles, is(install.files - 1));
+        assertThat(new File(tree, "espeak-ng-data/phondata").length(), is(new File(base, "espeak-ng-data/phondata").length()));
+        assertThat(new File(tree, "espeak-ng-data/en_dict").length(), is(greaterThan(0L)));
+        assertThat(new File(tree, DataManifest.FILE_NAME).exists(), is(true));
+        assertThat(new File(base, "espeak-ng-data/en_dict").exists(), is(false));
+    }
+
+    public void testResumeExtract() throws IOException
+    {
+        final DataExtractor.Listener listener = new DataExtractor.Listener()
+        {
+            @Override
+            public void onStart(long size)
+            {
+            }
+
+            @Override
+            public void onFileExtracted(File file, long size, long elapsedNanos, long extracted)
+            {
+            }
+        };
+
+        final File base = new File(mOutput, "base");
+        final File tree = new File(mOutput, "tree");
+        final DataExtractor.Result install = new DataExtractor(getContext(), R.raw.espeakdata, tree, base).extract(listener);
+
+        // An extraction that stopped before all of the files were written.
+        final File phondata = new File(tree, "espeak-ng-data/phondata");
+        assertThat(phondata.setLastModified(1000), is(true));
+        new File(tree, "espeak-ng-data/en_dict").delete();
+        new File(tree, DataManifest.FILE_NAME).delete();
+
+        final DataExtractor extractor = new DataExtractor(getContext(), R.raw.espeakdata, tree, base);
+        extractor.setResume(true);
+        final DataExtractor.Result resume = extractor.extract(listener);
+        assertThat(resume.files, is(1));
+        assertThat(resume.unchangedFiles, is(install.files - 1));
+        assertThat(phondata.lastModified(), is(1000L));
+        assertThat(new File(tree, "espeak-ng-data/en_dict").length(), is(greaterThan(0L)));
+        assertThat(new File(tree, DataManifest.FILE_NAME).exists(), is(true));
+    }
+}
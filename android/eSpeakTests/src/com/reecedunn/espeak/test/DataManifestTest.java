@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak.test;
+
+import android.test.AndroidTestCase;
+
+import com.reecedunn.espeak.DataManifest;
+import com.reecedunn.espeak.FileUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class DataManifestTest extends AndroidTestCase
+{
+    private static DataManifest parse(String content) throws IOException
+    {
+        return DataManifest.parse(new ByteArrayInputStream(content.getBytes("UTF-8")));
+    }
+
+    public void testParse() throws IOException
+    {
+        final DataManifest manifest = parse(
+                "c02251c07158c6ba740214276d10455f69dfe6f42715f3fc6c6f1160dec52dc0  espeak-ng-data/en_dict\n" +
+                "0254b93c8af79d9666a7667ca8b33b21a5453012da4ea0acd79660a9695f89d4  espeak-ng-data/lang/art/eo\n");
+        assertThat(manifest.getPaths().size(), is(2));
+        assertThat(manifest.getPaths().contains("espeak-ng-data/lang/art/eo"), is(true));
+        assertThat(manifest.getHash("espeak-ng-data/en_dict"), is("c02251c07158c6ba740214276d10455f69dfe6f42715f3fc6c6f1160dec52dc0"));
+        assertThat(manifest.getHash("espeak-ng-data/fr_dict"), is(nullValue()));
+    }
+
+    public void testInvalidEntry()
+    {
+        try
+        {
+            parse("c02251c07158c6ba740214276d10455f69dfe6f42715f3fc6c6f1160dec52dc0 espeak-ng-data/en_dict\n");
+            fail("Expected an IOException.");
+        }
+        catch (IOException e)
+        {
+        }
+    }
+
+    public void testRemovedPaths() throws IOException
+    {
+        final DataManifest installed = parse("aa  espeak-ng-data/en_dict\nbb  espeak-ng-data/eo_dict\n");
+        final DataManifest upgrade = parse("ab  espeak-ng-data/en_dict\ncc  espeak-ng-data/fr_dict\n");
+        assertThat(installed.getRemovedPaths(upgrade).size(), is(1));
+        assertThat(installed.getRemovedPaths(upgrade).get(0), is("espeak-ng-data/eo_dict"));
+        assertThat(upgrade.getRemovedPaths(installed).size(), is(1));
+        assertThat(upgrade.getRemovedPaths(installed).get(0), is("espeak-ng-data/fr_dict"));
+    }
+
+    public void testVerify() throws IOException
+    {
+        final File directory = new File(getContext().getCacheDir(), "manifest-test");
+        FileUtils.rmdir(directory);
+        new File(directory, "espeak-ng-data").mkdirs();
+        try
+        {
+            FileUtils.write(new File(directory, "espeak-ng-data/phontab"), "abc");
+            FileUtils.write(new File(directory, "espeak-ng-data/phondata"), "abd");
+            // The version is written by the installer, so is not checked.
+            FileUtils.write(new File(directory, "espeak-ng-data/version"), "1.52");
+
+            final DataManifest manifest = parse(
+                    "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad  espeak-ng-data/phontab\n" +
+                    "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad  espeak-ng-data/phondata\n" +
+                    "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad  espeak-ng-data/phonindex\n" +
+                    "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855  espeak-ng-data/version\n");
+            final List<String> missing = new ArrayList<String>();
+            final List<String> corrupt = manifest.verify(directory, missing);
+            assertThat(corrupt.size(), is(1));
+            assertThat(corrupt.get(0), is("espeak-ng-data/phondata"));
+            assertThat(missing.size(), is(1));
+            assertThat(missing.get(0), is("espeak-ng-data/phonindex"));
+        }
+        finally
+        {
+            FileUtils.rmdir(directory);
+            directory.delete();
+        }
+    }
+
+    public void testToHex()
+    {
+        assertThat(DataManifest.toHex(new byte[] { 0x00, 0x0F, (byte)0xA5, (byte)0xFF }), is("000fa5ff"));
+    }
+}
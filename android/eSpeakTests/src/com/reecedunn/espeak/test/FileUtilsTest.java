@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.reecedunn.espeak.DataExtractor;
+import com.reecedunn.espeak.FileUtils;
+import com.reecedunn.espeak.R;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class FileUtilsTest extends AndroidTestCase
+{
+    private static final String TAG = "eSpeakTTS";
+
+    private File mDirectory;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        mDirectory = new File(getContext().getCacheDir(), "file-utils-test");
+        FileUtils.rmdir(mDirectory);
+        mDirectory.mkdirs();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        FileUtils.rmdir(mDirectory);
+        mDirectory.delete();
+        super.tearDown();
+    }
+
+    private static byte[] createData(int length)
+    {
+        final byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    public void testReadEmptyFile() throws IOException
+    {
+        final File file = new File(mDirectory, "empty");
+        FileUtils.write(file, new byte[0]);
+        assertThat(FileUtils.readBinary(file).length, is(0));
+        assertThat(FileUtils.read(file), is(""));
+    }
+
+    public void testReadFile() throws IOException
+    {
+        // Larger than the copy buffer, and not a multiple of it.
+        final byte[] data = createData(FileUtils.BUFFER_SIZE * 3 + 17);
+        final File file = new File(mDirectory, "data");
+        FileUtils.write(file, data);
+        assertThat(FileUtils.readBinary(file), is(data));
+
+        FileUtils.write(file, "Hello World!");
+        assertThat(FileUtils.read(file), is("Hello World!"));
+    }
+
+    public void testReadStream() throws IOException
+    {
+        final byte[] data = createData(FileUtils.BUFFER_SIZE + 1);
+        assertThat(FileUtils.readBinary(new ByteArrayInputStream(data)), is(data));
+        // The length is only used to size the buffer.
+        assertThat(FileUtils.readBinary(new ByteArrayInputStream(data), 10), is(data));
+        assertThat(FileUtils.read(new ByteArrayInputStream("Hello".getBytes()), 0), is("Hello"));
+    }
+
+    public void testCopyStream() throws IOException
+    {
+        final byte[] data = createData(FileUtils.BUFFER_SIZE * 2 + 5);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertThat(FileUtils.copy(new ByteArrayInputStream(data), output), is((long)data.length));
+        assertThat(output.toByteArray(), is(data));
+    }
+
+    public void testCopyFile() throws IOException
+    {
+        final byte[] data = createData(FileUtils.BUFFER_SIZE * 2 + 5);
+        final File source = new File(mDirectory, "source");
+        final File destination = new File(mDirectory, "destination");
+        FileUtils.write(source, data);
+        FileUtils.write(destination, createData(FileUtils.BUFFER_SIZE * 4));
+
+        // The destination is truncated to the source.
+        assertThat(FileUtils.copy(source, destination), is((long)data.length));
+        assertThat(FileUtils.readBinary(destination), is(data));
+    }
+
+    public void testReplaceFromFile() throws IOException
+    {
+        final byte[] data = createData(1000);
+        final File source = new File(mDirectory, "source");
+        final File destination = new File(mDirectory, "destination");
+        FileUtils.write(source, data);
+        FileUtils.write(destination, "old");
+
+        FileUtils.replace(destination, source);
+        assertThat(FileUtils.readBinary(destination), is(data));
+        assertThat(new File(mDirectory, "destination.tmp").exists(), is(false));
+        assertThat(source.exists(), is(true));
+    }
+
+    /**
+     * The way FileUtils read files before it used channels: one byte at a
+     * time from an unbuffered stream.
+     */
+    private static byte[] readBytewise(File file) throws IOException
+    {
+        final InputStream stream = new FileInputStream(file);
+        try
+        {
+            final ByteArrayOutputStream content = new ByteArrayOutputStream((int)file.length());
+            int c = stream.read();
+            while (c != -1)
+            {
+                content.write((byte)c);
+                c = stream.read();
+            }
+            return content.toByteArray();
+        }
+        finally
+        {
+            stream.close();
+        }
+    }
+
+    private long[] readAll(File directory, boolean bytewise) throws IOException
+    {
+        final long[] total = new long[] { 0, 0 };
+        final File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return total;
+        }
+        for (File file : files)
+        {
+            if (file.isDirectory())
+            {
+                final long[] child = readAll(file, bytewise);
+                total[0] += child[0];
+                total[1] += child[1];
+                continue;
+            }
+
+            final long start = System.nanoTime();
+            final byte[] data = bytewise ? readBytewise(file) : FileUtils.readBinary(file);
+            total[0] += System.nanoTime() - start;
+            total[1] += data.length;
+            assertThat((long)data.length, is(file.length()));
+        }
+        return total;
+    }
+
+    public void testBenchmarkReadVoiceData() throws Exception
+    {
+        final File tree = new File(mDirectory, "tree");
+        new DataExtractor(getContext(), R.raw.espeakdata, tree, tree).extract(DataExtractor.Listener.NONE);
+        final File data = new File(tree, "espeak-ng-data");
+
+        final File phondata = new File(data, "phondata");
+        assertThat(FileUtils.readBinary(phondata), is(readBytewise(phondata)));
+
+        // Warm the page cache so both paths read from memory.
+        readAll(data, false);
+
+        final long[] bytewise = readAll(data, true);
+        final long[] channel = readAll(data, false);
+        assertThat(channel[1], is(bytewise[1]));
+        Log.i(TAG, "Read " + channel[1] + " bytes of voice data: bytewise " + (bytewise[0] / 1000000) + " ms, channel " + (channel[0] / 1000000) + " ms");
+
+        final File copy = new File(mDirectory, "phondata");
+        long start = System.nanoTime();
+        FileUtils.write(copy, readBytewise(phondata));
+        final long bytewiseCopy = System.nanoTime() - start;
+        start = System.nanoTime();
+        FileUtils.copy(phondata, copy);
+        final long channelCopy = System.nanoTime() - start;
+        assertThat(FileUtils.readBinary(copy), is(FileUtils.readBinary(phondata)));
+        Log.i(TAG, "Copied phondata: bytewise " + (bytewiseCopy / 1000) + " us, channel " + (channelCopy / 1000) + " us");
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak.test;
+
+import android.test.AndroidTestCase;
+
+import com.reecedunn.espeak.DataExtractor;
+import com.reecedunn.espeak.FileUtils;
+import com.reecedunn.espeak.LanguagePacks;
+import com.reecedunn.espeak.R;
+import com.reecedunn.espeak.SpeechSynthesis;
+import com.reecedunn.espeak.Voice;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class LanguagePacksTest extends AndroidTestCase
+{
+    private static final Voice ENGLISH = new Voice("en-gb", "gmw/en", SpeechSynthesis.GENDER_MALE, 0, new Locale("en", "GB"));
+    private static final Voice GERMAN = new Voice("de", "gmw/de", SpeechSynthesis.GENDER_MALE, 0, new Locale("de"));
+    private static final Voice WESTERN_ARMENIAN = new Voice("hyw", "ine/hyw", SpeechSynthesis.GENDER_MALE, 0, new Locale("hy", "AM", "arevmda"));
+
+    private File mRoot;
+    private ExecutorService mExecutor;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        mRoot = new File(getContext().getCacheDir(), "packs-test");
+        FileUtils.rmdir(mRoot);
+        mExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        mExecutor.shutdown();
+        FileUtils.rmdir(mRoot);
+        mRoot.delete();
+        super.tearDown();
+    }
+
+    private File createTree(String name, File base) throws Exception
+    {
+        final File tree = new File(mRoot, name);
+        new DataExtractor(getContext(), R.raw.espeakdata, tree, base == null ? tree : base).extract(DataExtractor.Listener.NONE);
+        return tree;
+    }
+
+    public void testAvailablePacks()
+    {
+        final List<String> packs = LanguagePacks.getAvailablePacks(getContext());
+        assertThat(packs.contains("de"), is(true));
+        assertThat(packs.contains("en"), is(false));
+        for (String pack : packs)
+        {
+            assertThat(LanguagePacks.getResourceId(getContext(), pack), is(not(0)));
+        }
+    }
+
+    public void testPack() throws Exception
+    {
+        final LanguagePacks packs = new LanguagePacks(getContext(), createTree("tree", null), false);
+        assertThat(packs.getPack(ENGLISH), is(nullValue()));
+        assertThat(packs.getPack(GERMAN), is("de"));
+        // The dictionary is set by the voice file.
+        assertThat(packs.getPack(WESTERN_ARMENIAN), is("hy"));
+    }
+
+    public void testInstall() throws Exception
+    {
+        final File tree = createTree("tree", null);
+        assertThat(new File(tree, "espeak-ng-data/de_dict").exists(), is(false));
+
+        final LanguagePacks packs = new LanguagePacks(getContext(), tree, false);
+        assertThat(packs.isInstalled(ENGLISH), is(true));
+        assertThat(packs.isInstalled(GERMAN), is(false));
+        assertThat(packs.install(ENGLISH, mExecutor), is(nullValue()));
+
+        final Future<Void> install = packs.install(GERMAN, mExecutor);
+        assertThat(install, is(notNullValue()));
+        install.get();
+        assertThat(packs.isInstalled(GERMAN), is(true));
+        assertThat(packs.install(GERMAN, mExecutor), is(nullValue()));
+        assertThat(new File(tree, "espeak-ng-data/de_dict").length(), is(greaterThan(0L)));
+        assertThat(FileUtils.read(new File(tree, LanguagePacks.FILE_NAME)), is("de\n"));
+
+        // The packs are read again when the engine is created.
+        assertThat(new LanguagePacks(getContext(), tree, false).install(GERMAN, mExecutor), is(nullValue()));
+    }
+
+    public void testInPlace() throws Exception
+    {
+        final LanguagePacks packs = new LanguagePacks(getContext(), createTree("tree", null), true);
+        assertThat(packs.isInstalled(GERMAN), is(true));
+        assertThat(packs.install(GERMAN, mExecutor), is(nullValue()));
+    }
+
+    public void testUpgrade() throws Exception
+    {
+        final File current = createTree("current", null);
+        new LanguagePacks(getContext(), current, false).install(GERMAN, mExecutor).get();
+
+        final File upgrade = createTree("upgrade", current);
+        LanguagePacks.upgrade(getContext(), current, upgrade);
+
+        // Only the packs that were used are installed.
+        assertThat(new File(upgrade, "espeak-ng-data/de_dict").length(), is(greaterThan(0L)));
+        assertThat(new File(upgrade, "espeak-ng-data/fr_dict").exists(), is(false));
+        assertThat(FileUtils.read(new File(upgrade, LanguagePacks.FILE_NAME)), is("de\n"));
+        assertThat(new File(current, "espeak-ng-data/de_dict").exists(), is(true));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak.test;
+
+import android.test.AndroidTestCase;
+
+import com.reecedunn.espeak.RenderQueue;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class RenderQueueTest extends AndroidTestCase
+{
+    private File mFile;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        mFile = new File(getContext().getCacheDir(), "render-queue-test");
+        mFile.delete();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testClaim() throws IOException
+    {
+        final RenderQueue queue = new RenderQueue(mFile);
+        assertThat(queue.claim(3), is(0));
+        assertThat(queue.claim(3), is(1));
+        assertThat(queue.claim(3), is(2));
+        assertThat(queue.claim(3), is(-1));
+        assertThat(queue.claim(3), is(-1));
+    }
+
+    public void testSharedQueue() throws IOException
+    {
+        // The queues of the processes rendering the same requests use the same file.
+        final RenderQueue first = new RenderQueue(mFile);
+        final RenderQueue second = new RenderQueue(mFile);
+        assertThat(first.claim(4), is(0));
+        assertThat(second.claim(4), is(1));
+        assertThat(second.claim(4), is(2));
+        assertThat(first.claim(4), is(3));
+        assertThat(second.claim(4), is(-1));
+    }
+
+    public void testReset() throws IOException
+    {
+        final RenderQueue queue = new RenderQueue(mFile);
+        assertThat(queue.claim(1), is(0));
+        assertThat(queue.claim(1), is(-1));
+        queue.reset();
+        assertThat(queue.claim(1), is(0));
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak.test;
+
+import android.test.AndroidTestCase;
+
+import com.reecedunn.espeak.SharedAudioRing;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class SharedAudioRingTest extends AndroidTestCase
+{
+    private static ByteBuffer createAudio(int start, int length)
+    {
+        final ByteBuffer audio = ByteBuffer.allocate(length);
+        for (int i = 0; i < length; ++i)
+        {
+            audio.put((byte)(start + i));
+        }
+        audio.flip();
+        return audio;
+    }
+
+    public void testEmpty()
+    {
+        final SharedAudioRing ring = new SharedAudioRing(ByteBuffer.allocateDirect(SharedAudioRing.HEADER_SIZE + 16));
+        assertThat(ring.getCapacity(), is(16));
+        assertThat(ring.getWritePosition(), is(0L));
+        assertThat(ring.getReadPosition(), is(0L));
+        assertThat(ring.available(), is(0));
+        assertThat(ring.read(new byte[4], 0, 4), is(0));
+    }
+
+    public void testWriteAndRead()
+    {
+        final SharedAudioRing ring = new SharedAudioRing(ByteBuffer.allocateDirect(SharedAudioRing.HEADER_SIZE + 16));
+        final ByteBuffer audio = createAudio(0, 10);
+        assertThat(ring.write(audio), is(10));
+        assertThat(audio.remaining(), is(0));
+        assertThat(ring.getWritePosition(), is(10L));
+        assertThat(ring.available(), is(10));
+
+        final byte[] data = new byte[10];
+        assertThat(ring.read(data, 0, 10), is(10));
+        assertThat(ring.getReadPosition(), is(10L));
+        assertThat(ring.available(), is(0));
+        for (int i = 0; i < 10; ++i)
+        {
+            assertThat(data[i], is((byte)i));
+        }
+    }
+
+    public void testWrapAround()
+    {
+        final SharedAudioRing ring = new SharedAudioRing(ByteBuffer.allocateDirect(SharedAudioRing.HEADER_SIZE + 16));
+        final byte[] data = new byte[12];
+        assertThat(ring.write(createAudio(0, 12)), is(12));
+        assertThat(ring.read(data, 0, 12), is(12));
+
+        // The audio is split across the end of the ring.
+        assertThat(ring.write(createAudio(12, 12)), is(12));
+        assertThat(ring.getWritePosition(), is(24L));
+        assertThat(ring.read(data, 0, 12), is(12));
+        for (int i = 0; i < 12; ++i)
+        {
+            assertThat(data[i], is((byte)(12 + i)));
+        }
+    }
+
+    public void testFull()
+    {
+        final SharedAudioRing ring = new SharedAudioRing(ByteBuffer.allocateDirect(SharedAudioRing.HEADER_SIZE + 16));
+        final ByteBuffer audio = createAudio(0, 20);
+        assertThat(ring.write(audio), is(16));
+        assertThat(audio.remaining(), is(4));
+        assertThat(ring.write(audio), is(0));
+
+        // Reading the audio makes space for the rest of it.
+        final byte[] data = new byte[8];
+        assertThat(ring.read(data, 0, 8), is(8));
+        assertThat(ring.write(audio), is(4));
+        assertThat(audio.remaining(), is(0));
+        assertThat(ring.available(), is(12));
+
+        final byte[] rest = new byte[16];
+        assertThat(ring.read(rest, 2, 14), is(12));
+        for (int i = 0; i < 12; ++i)
+        {
+            assertThat(rest[2 + i], is((byte)(8 + i)));
+        }
+    }
+
+    public void testDirectAudio()
+    {
+        final SharedAudioRing ring = new SharedAudioRing(ByteBuffer.allocateDirect(SharedAudioRing.HEADER_SIZE + 16));
+        final ByteBuffer audio = ByteBuffer.allocateDirect(20);
+        audio.put(createAudio(0, 20));
+        audio.flip();
+        audio.position(2);
+        assertThat(ring.write(audio), is(16));
+        assertThat(audio.position(), is(18));
+
+        final byte[] data = new byte[16];
+        assertThat(ring.read(data, 0, 16), is(16));
+        for (int i = 0; i < 16; ++i)
+        {
+            assertThat(data[i], is((byte)(2 + i)));
+        }
+    }
+
+    public void testPositionsInHeader()
+    {
+        final ByteBuffer memory = ByteBuffer.allocateDirect(SharedAudioRing.HEADER_SIZE + 16).order(ByteOrder.nativeOrder());
+        final SharedAudioRing ring = new SharedAudioRing(memory);
+        assertThat(ring.write(createAudio(0, 10)), is(10));
+        assertThat(ring.read(new byte[4], 0, 4), is(4));
+
+        // The client reads the positions from the same memory in another process.
+        assertThat(memory.getLong(0), is(10L));
+        assertThat(memory.getLong(8), is(4L));
+        assertThat(new SharedAudioRing(memory).available(), is(6));
+    }
+
+    public void testMemoryTooSmall()
+    {
+        try
+        {
+            new SharedAudioRing(ByteBuffer.allocateDirect(SharedAudioRing.HEADER_SIZE));
+            fail("IllegalArgumentException not thrown.");
+        }
+        catch (IllegalArgumentException e)
+        {
+        }
+    }
+}
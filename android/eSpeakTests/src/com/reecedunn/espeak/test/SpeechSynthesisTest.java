@@ -16,16 +16,29 @@
 
 package com.reecedunn.espeak.test;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
+import com.reecedunn.espeak.DataMemoryUsage;
 import com.reecedunn.espeak.SpeechSynthesis;
 import com.reecedunn.espeak.Voice;
+import com.reecedunn.espeak.VoiceSettings;
+import com.reecedunn.espeak.VoiceVariant;
 
+import android.content.Context;
 import android.media.AudioFormat;
 import android.speech.tts.TextToSpeech;
 import android.util.Log;
@@ -165,6 +178,507 @@ public class SpeechSynthesisTest extends TextToSpeechTestCase
         assertThat(synth.getAudioFormat(), is(AudioFormat.ENCODING_PCM_16BIT));
     }
 
+    public void testSynthesizeToAudioBuffers()
+    {
+        final Set<ByteBuffer> buffers = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+        final int[] bytesReceived = { 0 };
+        final boolean[] completed = { false };
+
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), new SpeechSynthesis.SynthBufferReadyCallback()
+        {
+            @Override
+            public void onSynthDataReady(ByteBuffer audioData)
+            {
+                assertThat(audioData.isDirect(), is(true));
+                assertThat(audioData.position(), is(0));
+                assertThat(audioData.remaining() % 2, is(0));
+                buffers.add(audioData);
+                bytesReceived[0] += audioData.remaining();
+            }
+
+            @Override
+            public void onSynthDataReady(byte[] audioData)
+            {
+                throw new AssertionError("audio should be delivered in the direct buffers");
+            }
+
+            @Override
+            public void onSynthDataComplete()
+            {
+                completed[0] = true;
+            }
+        });
+        synth.setVoice(getVoice("en-gb"), VoiceVariant.parseVoiceVariant(VoiceVariant.MALE));
+        synth.synthesize("This is a test of the direct audio buffers.", false);
+
+        assertThat(completed[0], is(true));
+        assertThat(bytesReceived[0], is(greaterThan(0)));
+        assertThat(buffers.size(), is(greaterThan(1))); // the buffers are reused in turn
+    }
+
+    public void testPipelinedSynthesis()
+    {
+        final int[] bytesReceived = { 0, 0 };
+        final boolean[] completed = { false };
+
+        final SpeechSynthesis.SynthBufferReadyCallback callback = new SpeechSynthesis.SynthBufferReadyCallback()
+        {
+            @Override
+            public void onSynthDataReady(ByteBuffer audioData)
+            {
+                bytesReceived[0] += audioData.remaining();
+            }
+
+            @Override
+            public void onSynthDataReady(byte[] audioData)
+            {
+                throw new AssertionError("audio should be delivered in the direct buffers");
+            }
+
+            @Override
+            public void onSynthDataComplete()
+            {
+                completed[0] = true;
+            }
+        };
+
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), callback);
+        synth.setVoice(getVoice("en-gb"), VoiceVariant.parseVoiceVariant(VoiceVariant.MALE));
+
+        synth.synthesize("This is a test of the pipelined synthesis.", false);
+        assertThat(completed[0], is(true));
+        bytesReceived[1] = bytesReceived[0];
+
+        bytesReceived[0] = 0;
+        completed[0] = false;
+        synth.setPipelineLength(1000);
+        synth.synthesize("This is a test of the pipelined synthesis.", false);
+        assertThat(completed[0], is(true));
+        assertThat(bytesReceived[0], is(bytesReceived[1])); // same audio as when synthesizing in place
+    }
+
+    public void testLatencyOutputMode()
+    {
+        final int[] firstChunkLength = { 0 };
+
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), new SpeechSynthesis.SynthBufferReadyCallback()
+        {
+            @Override
+            public void onSynthDataReady(ByteBuffer audioData)
+            {
+                if (firstChunkLength[0] == 0)
+                {
+                    firstChunkLength[0] = audioData.remaining();
+                }
+            }
+
+            @Override
+            public void onSynthDataReady(byte[] audioData)
+            {
+                throw new AssertionError("audio should be delivered in the direct buffers");
+            }
+
+            @Override
+            public void onSynthDataComplete()
+            {
+            }
+        });
+        synth.setVoice(getVoice("en-gb"), VoiceVariant.parseVoiceVariant(VoiceVariant.MALE));
+        final int initialBufferSize = (synth.getSampleRate() * SpeechSynthesis.INITIAL_BUFFER_SIZE_IN_MILLISECONDS / 1000) * 2;
+
+        assertThat(synth.getOutputMode(), is(SpeechSynthesis.OUTPUT_MODE_THROUGHPUT));
+        synth.synthesize("This is a test of the output modes.", false);
+        assertThat(firstChunkLength[0], is(greaterThan(initialBufferSize + 2)));
+        assertThat(synth.getTimeToFirstAudio(), is(greaterThanOrEqualTo(0L)));
+
+        firstChunkLength[0] = 0;
+        synth.synthesize("This is a test of the output modes.", false, SpeechSynthesis.OUTPUT_MODE_LATENCY);
+        assertThat(firstChunkLength[0], is(lessThanOrEqualTo(initialBufferSize + 2)));
+        assertThat(synth.getTimeToFirstAudio(), is(greaterThanOrEqualTo(0L)));
+    }
+
+    public void testIncrementalSynthesis()
+    {
+        final int[] completions = { 0 };
+        final boolean[] receivedAudio = { false };
+
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), new SpeechSynthesis.SynthBufferReadyCallback()
+        {
+            @Override
+            public void onSynthDataReady(ByteBuffer audioData)
+            {
+                assertThat(completions[0], is(0));
+                receivedAudio[0] = true;
+            }
+
+            @Override
+            public void onSynthDataReady(byte[] audioData)
+            {
+                throw new AssertionError("audio should be delivered in the direct buffers");
+            }
+
+            @Override
+            public void onSynthDataComplete()
+            {
+                ++completions[0];
+            }
+        });
+        synth.setVoice(getVoice("en-gb"), VoiceVariant.parseVoiceVariant(VoiceVariant.MALE));
+        synth.setIncrementalSynthesis(true);
+
+        final StringBuilder text = new StringBuilder();
+        while (text.length() <= SpeechSynthesis.SEGMENT_LENGTH * 2)
+        {
+            text.append("This is one of the sentences in a long text. ");
+        }
+        synth.synthesize(text.toString(), false);
+
+        assertThat(receivedAudio[0], is(true));
+        assertThat(completions[0], is(1)); // only at the end of the last segment
+    }
+
+    public void testSynthesizeStopped()
+    {
+        final SpeechSynthesis[] engine = { null };
+        final boolean[] stopOnAudio = { false };
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), new SpeechSynthesis.SynthReadyCallback()
+        {
+            @Override
+            public void onSynthDataReady(byte[] audioData)
+            {
+                if (stopOnAudio[0])
+                {
+                    engine[0].stop();
+                }
+            }
+
+            @Override
+            public void onSynthDataComplete()
+            {
+            }
+        });
+        engine[0] = synth;
+        synth.setVoice(getVoice("en-gb"), VoiceVariant.parseVoiceVariant(VoiceVariant.MALE));
+        synth.setPipelineLength(500);
+        assertThat(synth.synthesize("This is a test of stopping the synthesis.", false), is(true));
+
+        stopOnAudio[0] = true;
+        assertThat(synth.synthesize("This is a test of stopping the synthesis.", false), is(false));
+
+        // A stop request only applies to the synthesis it was made during.
+        stopOnAudio[0] = false;
+        assertThat(synth.synthesize("This is a test of stopping the synthesis.", false), is(true));
+    }
+
+    private interface EventCallback extends SpeechSynthesis.SynthBufferReadyCallback, SpeechSynthesis.SynthEventCallback
+    {
+    }
+
+    private static class EventRecorder implements EventCallback
+    {
+        public final String text;
+        public final List<String> words = new ArrayList<String>();
+        public final List<String> phonemes = new ArrayList<String>();
+        public int sentences = 0;
+        public int framesReceived = 0;
+
+        public EventRecorder(String text)
+        {
+            this.text = text;
+        }
+
+        @Override
+        public void onSynthEvents(int[] events, int count)
+        {
+            for (int i = 0; i < count * SpeechSynthesis.EVENT_SIZE; i += SpeechSynthesis.EVENT_SIZE)
+            {
+                // The events are passed before the audio they occur in.
+                assertThat(events[i + SpeechSynthesis.EVENT_FRAME], is(greaterThanOrEqualTo(framesReceived)));
+                final int start = events[i + SpeechSynthesis.EVENT_TEXT_START];
+                if (events[i + SpeechSynthesis.EVENT_TYPE] == SpeechSynthesis.EVENT_WORD)
+                {
+                    words.add(text.substring(start, start + events[i + SpeechSynthesis.EVENT_TEXT_LENGTH]));
+                }
+                else if (events[i + SpeechSynthesis.EVENT_TYPE] == SpeechSynthesis.EVENT_SENTENCE)
+                {
+                    ++sentences;
+                }
+                else if (events[i + SpeechSynthesis.EVENT_TYPE] == SpeechSynthesis.EVENT_PHONEME)
+                {
+                    phonemes.add(SpeechSynthesis.getPhonemeName(events, i));
+                }
+            }
+        }
+
+        @Override
+        public void onSynthDataReady(ByteBuffer audioData)
+        {
+            framesReceived += audioData.remaining() / 2;
+        }
+
+        @Override
+        public void onSynthDataReady(byte[] audioData)
+        {
+            throw new AssertionError("audio should be delivered in the direct buffers");
+        }
+
+        @Override
+        public void onSynthDataComplete()
+        {
+        }
+    }
+
+    public void testSynthEvents()
+    {
+        final String text = "Hello world. This is a test.";
+        final EventRecorder callback = new EventRecorder(text);
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), callback);
+        synth.setVoice(getVoice("en-gb"), VoiceVariant.parseVoiceVariant(VoiceVariant.MALE));
+
+        synth.synthesize(text, false);
+        assertThat(callback.words.toString(), is("[Hello, world, This, is, a, test]"));
+        assertThat(callback.sentences, is(2));
+
+        // The events are passed with the same audio chunks when pipelining.
+        callback.words.clear();
+        callback.sentences = 0;
+        callback.framesReceived = 0;
+        synth.setPipelineLength(1000);
+        synth.synthesize(text, false);
+        assertThat(callback.words.toString(), is("[Hello, world, This, is, a, test]"));
+        assertThat(callback.sentences, is(2));
+    }
+
+    public void testPhonemeEvents()
+    {
+        final EventRecorder callback = new EventRecorder("test");
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), callback);
+        synth.setVoice(getVoice("en-gb"), VoiceVariant.parseVoiceVariant(VoiceVariant.MALE));
+
+        synth.synthesize("test", false);
+        assertThat(callback.phonemes.size(), is(0)); // not generated unless enabled
+
+        callback.words.clear();
+        synth.setPhonemeEvents(SpeechSynthesis.PHONEME_EVENTS_MNEMONICS);
+        synth.synthesize("test", false);
+        assertThat(callback.phonemes.subList(0, 4).toString(), is("[t, E, s, t]"));
+        assertThat(callback.words.toString(), is("[test]"));
+
+        callback.phonemes.clear();
+        synth.setPhonemeEvents(SpeechSynthesis.PHONEME_EVENTS_IPA);
+        synth.setPipelineLength(1000);
+        synth.synthesize("test", false);
+        assertThat(callback.phonemes.subList(0, 4).toString(), is("[t, \u025b, s, t]"));
+
+        callback.phonemes.clear();
+        synth.setPhonemeEvents(SpeechSynthesis.PHONEME_EVENTS_NONE);
+        synth.synthesize("test", false);
+        assertThat(callback.phonemes.size(), is(0));
+    }
+
+    public void testGetPhonemeName()
+    {
+        final int[] events = new int[SpeechSynthesis.EVENT_SIZE * 2];
+        final int offset = SpeechSynthesis.EVENT_SIZE;
+        assertThat(SpeechSynthesis.getPhonemeName(events, offset), is(""));
+
+        events[offset + SpeechSynthesis.EVENT_PHONEME_NAME] = 'o' | ('U' << 8);
+        assertThat(SpeechSynthesis.getPhonemeName(events, offset), is("oU"));
+
+        // "\u0259\u028a" in UTF-8, which is 4 bytes
+        events[offset + SpeechSynthesis.EVENT_PHONEME_NAME] = 0xC9 | (0x99 << 8) | (0xCA << 16) | (0x8A << 24);
+        assertThat(SpeechSynthesis.getPhonemeName(events, offset), is("\u0259\u028a"));
+
+        // All 8 bytes are used, with no terminating zero.
+        events[offset + SpeechSynthesis.EVENT_PHONEME_NAME] = 'a' | ('b' << 8) | ('c' << 16) | ('d' << 24);
+        events[offset + SpeechSynthesis.EVENT_PHONEME_NAME + 1] = 'e' | ('f' << 8) | ('g' << 16) | ('h' << 24);
+        assertThat(SpeechSynthesis.getPhonemeName(events, offset), is("abcdefgh"));
+    }
+
+    public void testSynthEventsInIncrementalSynthesis()
+    {
+        final StringBuilder builder = new StringBuilder();
+        while (builder.length() <= SpeechSynthesis.SEGMENT_LENGTH * 2)
+        {
+            builder.append("This is one of the sentences in a long text. ");
+        }
+        final String text = builder.toString();
+        final EventRecorder callback = new EventRecorder(text);
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), callback);
+        synth.setVoice(getVoice("en-gb"), VoiceVariant.parseVoiceVariant(VoiceVariant.MALE));
+        synth.setIncrementalSynthesis(true);
+
+        // The events of each segment are relative to the whole text.
+        synth.synthesize(text, false);
+        assertThat(callback.words.get(callback.words.size() - 1), is("text"));
+        assertThat(callback.sentences, is(text.length() / "This is one of the sentences in a long text. ".length()));
+    }
+
+    public void testTextToPhonemes()
+    {
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), mCallback);
+        synth.setVoice(getVoice("en-gb"), VoiceVariant.parseVoiceVariant(VoiceVariant.MALE));
+
+        final String[] texts = { "test", "Hello world. This is a test.", "", "test" };
+        final String[] phonemes = synth.textToPhonemes(texts, false);
+        assertThat(phonemes.length, is(texts.length));
+        assertThat(phonemes[0], is("t'Est"));
+        assertThat(phonemes[1], is("h@l'oU w'3:ld DIs Iz a# t'Est"));
+        assertThat(phonemes[2], is(""));
+        assertThat(phonemes[3], is("t'Est"));
+
+        // The cached words are the same as when they are converted.
+        assertThat(synth.textToPhonemes(texts, false), is(phonemes));
+
+        final String[] ipa = synth.textToPhonemes(new String[] { "test" }, true);
+        assertThat(ipa[0], is("t\u02c8\u025bst"));
+    }
+
+    private static String[] createWords(int count)
+    {
+        final String[] vocabulary = "the of and to a in is you that it he was for on are as with his they at be this have from or one had by word but not what all were we when your can said there use an each which she do how their if will up other about out many then them these so some her would make like him into time has look two more write go see number no way could people my than first water been call who oil its now find long down day did get come made may part".split(" ");
+        final Random random = new Random(count);
+        final String[] words = new String[count];
+        for (int i = 0; i < count; ++i)
+        {
+            // Common words are used more often, as in a real text.
+            final double rank = Math.pow(random.nextDouble(), 3);
+            words[i] = vocabulary[(int)(rank * vocabulary.length)];
+        }
+        return words;
+    }
+
+    public void testBenchmarkTextToPhonemes()
+    {
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), mCallback);
+        final String[] words = createWords(20000);
+
+        // Sentences of 10 words, which are converted every time.
+        final String[] sentences = new String[words.length / 10];
+        for (int i = 0; i < sentences.length; ++i)
+        {
+            final StringBuilder sentence = new StringBuilder();
+            for (int j = 0; j < 10; ++j)
+            {
+                sentence.append(words[i * 10 + j]).append(' ');
+            }
+            sentences[i] = sentence.toString();
+        }
+
+        synth.setVoice(getVoice("en-gb"), VoiceVariant.parseVoiceVariant(VoiceVariant.MALE));
+        long start = System.nanoTime();
+        synth.textToPhonemes(sentences, false);
+        final long sentenceTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        final String[] cold = synth.textToPhonemes(words, false);
+        final long coldTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        final String[] warm = synth.textToPhonemes(words, false);
+        final long warmTime = System.nanoTime() - start;
+        assertThat(warm, is(cold));
+
+        Log.i("SpeechSynthesisTest", "Text to phonemes: sentences " + (words.length * 1000000000L / sentenceTime) +
+                " words/s, words " + (words.length * 1000000000L / coldTime) +
+                " words/s, cached words " + (words.length * 1000000000L / warmTime) + " words/s");
+    }
+
+    public void testRenderToFile() throws IOException
+    {
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), mCallback);
+        final VoiceSettings settings = new VoiceSettings(getContext().getSharedPreferences("render-test", Context.MODE_PRIVATE), synth);
+        final File directory = new File(getContext().getCacheDir(), "render-test");
+        directory.mkdirs();
+        final File wav = new File(directory, "test.wav");
+        final File pcm = new File(directory, "test.pcm");
+
+        final List<SpeechSynthesis.RenderRequest> requests = new ArrayList<SpeechSynthesis.RenderRequest>();
+        requests.add(new SpeechSynthesis.RenderRequest("This is a test.", getVoice("en-gb"), settings, wav, SpeechSynthesis.RENDER_FORMAT_WAV));
+        requests.add(new SpeechSynthesis.RenderRequest("Hello world.", getVoice("en-us"), settings, pcm, SpeechSynthesis.RENDER_FORMAT_PCM));
+        requests.add(new SpeechSynthesis.RenderRequest("Missing", getVoice("en-gb"), settings, new File(directory, "missing/test.wav"), SpeechSynthesis.RENDER_FORMAT_WAV));
+
+        final List<Integer> indices = new ArrayList<Integer>();
+        final List<SpeechSynthesis.RenderResult> results = new ArrayList<SpeechSynthesis.RenderResult>();
+        final SpeechSynthesis.RenderResult total = synth.render(requests, null, new SpeechSynthesis.RenderListener()
+        {
+            @Override
+            public void onRendered(int index, SpeechSynthesis.RenderResult result)
+            {
+                indices.add(index);
+                results.add(result);
+            }
+        });
+
+        assertThat(indices.toString(), is("[0, 1, 2]"));
+        assertThat(results.get(0).frames, is(greaterThan(0L)));
+        assertThat(results.get(1).frames, is(greaterThan(0L)));
+        assertThat(results.get(2).frames, is(-1L));
+        assertThat(wav.length(), is(44 + results.get(0).frames * 2));
+        assertThat(pcm.length(), is(results.get(1).frames * 2));
+        assertThat(total.frames, is(results.get(0).frames + results.get(1).frames));
+        assertThat(total.getRealTimeFactor(), is(greaterThan(0.0)));
+
+        final byte[] header = new byte[44];
+        final FileInputStream input = new FileInputStream(wav);
+        try
+        {
+            assertThat(input.read(header), is(44));
+        }
+        finally
+        {
+            input.close();
+        }
+        final ByteBuffer fields = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+        assertThat(new String(header, 0, 4, "US-ASCII"), is("RIFF"));
+        assertThat(fields.getInt(4), is((int)(36 + results.get(0).frames * 2)));
+        assertThat(new String(header, 8, 8, "US-ASCII"), is("WAVEfmt "));
+        assertThat(fields.getShort(22), is((short)1));
+        assertThat(fields.getInt(24), is(synth.getSampleRate()));
+        assertThat(fields.getShort(34), is((short)16));
+        assertThat(new String(header, 36, 4, "US-ASCII"), is("data"));
+        assertThat(fields.getInt(40), is((int)(results.get(0).frames * 2)));
+
+        wav.delete();
+        pcm.delete();
+    }
+
+    public void testParameterState()
+    {
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), mCallback);
+        final int defaultRate = synth.Rate.getDefaultValue();
+        synth.setVoice(getVoice("en-gb"), VoiceVariant.parseVoiceVariant(VoiceVariant.MALE));
+
+        synth.Rate.setValue(defaultRate * 2);
+        assertThat(synth.Rate.getValue(), is(defaultRate * 2));
+        synth.synthesize("This is a test.", false);
+        assertThat(synth.Rate.getValue(), is(defaultRate * 2));
+
+        // Changing the voice applies the parameters again.
+        synth.setVoice(getVoice("de"), VoiceVariant.parseVoiceVariant(VoiceVariant.FEMALE));
+        synth.synthesize("This is a test.", false);
+        assertThat(synth.Rate.getValue(), is(defaultRate * 2));
+
+        synth.Rate.setValue(defaultRate);
+        synth.synthesize("This is a test.", false);
+        assertThat(synth.Rate.getValue(), is(defaultRate));
+        assertThat(synth.Rate.getDefaultValue(), is(defaultRate));
+    }
+
+    public void testMappedDataFiles() throws IOException
+    {
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), mCallback);
+        synth.setVoice(getVoice("en-gb"), VoiceVariant.parseVoiceVariant(VoiceVariant.MALE));
+        synth.synthesize("This is a test.", false);
+
+        final DataMemoryUsage usage = DataMemoryUsage.read(getContext());
+        assertThat(usage.mappings, is(greaterThan(0)));
+        assertThat(usage.size, is(greaterThan(0L)));
+        assertThat(usage.rss, is(lessThanOrEqualTo(usage.size)));
+        assertThat(usage.pss, is(lessThanOrEqualTo(usage.rss)));
+        assertThat(usage.getSavedMemory(), is(greaterThanOrEqualTo(0L)));
+    }
+
     public void testJavaToIanaLanguageCode()
     {
         for (VoiceData.Voice data : VoiceData.voices)
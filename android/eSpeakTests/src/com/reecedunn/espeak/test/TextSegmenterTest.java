@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak.test;
+
+import android.test.AndroidTestCase;
+
+import com.reecedunn.espeak.TextSegmenter;
+
+import java.util.Locale;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class TextSegmenterTest extends AndroidTestCase
+{
+    public void testShortText()
+    {
+        TextSegmenter segmenter = new TextSegmenter("Hello world.", Locale.ENGLISH, 100);
+        assertThat(segmenter.hasNext(), is(true));
+        assertThat(segmenter.next(), is("Hello world."));
+        assertThat(segmenter.getSegmentStart(), is(0));
+        assertThat(segmenter.hasNext(), is(false));
+    }
+
+    public void testFirstSegmentIsOneSentence()
+    {
+        TextSegmenter segmenter = new TextSegmenter("One. Two. Three.", Locale.ENGLISH, 100);
+        assertThat(segmenter.next(), is("One. "));
+        assertThat(segmenter.next(), is("Two. Three."));
+        assertThat(segmenter.getSegmentStart(), is(5));
+        assertThat(segmenter.hasNext(), is(false));
+    }
+
+    public void testSentencesAreGroupedUpToMaxLength()
+    {
+        TextSegmenter segmenter = new TextSegmenter("One. Two. Three. Four.", Locale.ENGLISH, 12);
+        assertThat(segmenter.next(), is("One. "));
+        assertThat(segmenter.next(), is("Two. Three. "));
+        assertThat(segmenter.next(), is("Four."));
+        assertThat(segmenter.getSegmentStart(), is(17));
+        assertThat(segmenter.hasNext(), is(false));
+    }
+
+    public void testLongSentenceIsSplitAtClause()
+    {
+        TextSegmenter segmenter = new TextSegmenter("First clause, second clause; third clause.", Locale.ENGLISH, 30);
+        assertThat(segmenter.next(), is("First clause, second clause;"));
+        assertThat(segmenter.next(), is(" third clause."));
+        assertThat(segmenter.hasNext(), is(false));
+    }
+
+    public void testLongSentenceIsSplitAtSpace()
+    {
+        TextSegmenter segmenter = new TextSegmenter("one two three four", Locale.ENGLISH, 10);
+        assertThat(segmenter.next(), is("one two"));
+        assertThat(segmenter.next(), is(" three"));
+        assertThat(segmenter.next(), is(" four"));
+        assertThat(segmenter.hasNext(), is(false));
+    }
+
+    public void testLongWordIsSplitAtMaxLength()
+    {
+        TextSegmenter segmenter = new TextSegmenter("abcdefghij", Locale.ENGLISH, 4);
+        assertThat(segmenter.next(), is("abcd"));
+        assertThat(segmenter.next(), is("efgh"));
+        assertThat(segmenter.next(), is("ij"));
+        assertThat(segmenter.hasNext(), is(false));
+    }
+}
@@ -98,6 +98,20 @@ public class TextToSpeechServiceTest extends AndroidTestCase
         assertThat(locale[2], is(variant));
     }
 
+    public void testRequestsDuringInitialization() {
+        // onCreate starts initializing the engine in the background, so these
+        // requests arrive before (or while) the engine is ready.
+        final TtsServiceTest service = new TtsServiceTest(getContext());
+        service.onCreate();
+        try {
+            assertThat(service.onIsLanguageAvailable("eng", "USA", ""), isTtsLangCode(TextToSpeech.LANG_COUNTRY_VAR_AVAILABLE));
+            assertThat(service.onLoadLanguage("eng", "GBR", "scotland"), isTtsLangCode(TextToSpeech.LANG_COUNTRY_VAR_AVAILABLE));
+            assertThat(service.getActiveVoice().name, is("en-gb-scotland"));
+        } finally {
+            service.onDestroy();
+        }
+    }
+
     public void testOnLoadLanguage() {
         assertThat(mService.onLoadLanguage("eng", "", ""), isTtsLangCode(TextToSpeech.LANG_AVAILABLE));
         checkLanguage(mService.onGetLanguage(), "eng", "GBR", "");
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak.test;
+
+import android.test.AndroidTestCase;
+
+import com.reecedunn.espeak.FileUtils;
+import com.reecedunn.espeak.SpeechSynthesis;
+import com.reecedunn.espeak.Voice;
+import com.reecedunn.espeak.VoiceCatalog;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class VoiceCatalogTest extends AndroidTestCase
+{
+    private static final String VERSION = "2b5ea0c5d5b2ad2c9ee1a4cb1f3f0e4ee95c1a3c0d62a1b95e2f0ad12d4ba1b9";
+
+    private File mFile;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        mFile = new File(getContext().getCacheDir(), VoiceCatalog.FILE_NAME);
+        mFile.delete();
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        mFile.delete();
+        super.tearDown();
+    }
+
+    public void testReadWrite() throws IOException
+    {
+        final List<Voice> voices = Arrays.asList(
+                new Voice("en-gb-scotland", "gmw/en-GB-scotland", 1, 0, new Locale("en", "GB", "scotland")),
+                new Voice("cmn", "sit/cmn", 2, 30, new Locale("zh")));
+        new VoiceCatalog(VERSION, 3, voices).write(mFile);
+
+        final VoiceCatalog catalog = VoiceCatalog.read(mFile, VERSION);
+        assertThat(catalog, is(notNullValue()));
+        assertThat(catalog.version, is(VERSION));
+        assertThat(catalog.voiceCount, is(3));
+        assertThat(catalog.voices.size(), is(2));
+        for (int i = 0; i < voices.size(); ++i)
+        {
+            final Voice expected = voices.get(i);
+            final Voice actual = catalog.voices.get(i);
+            assertThat(actual.name, is(expected.name));
+            assertThat(actual.identifier, is(expected.identifier));
+            assertThat(actual.gender, is(expected.gender));
+            assertThat(actual.age, is(expected.age));
+            assertThat(actual.locale, is(expected.locale));
+        }
+    }
+
+    public void testDifferentVersion() throws IOException
+    {
+        new VoiceCatalog(VERSION, 0, Arrays.<Voice>asList()).write(mFile);
+        assertThat(VoiceCatalog.read(mFile, VERSION), is(notNullValue()));
+        assertThat(VoiceCatalog.read(mFile, "0000"), is(nullValue()));
+    }
+
+    public void testInvalidFile() throws IOException
+    {
+        assertThat(VoiceCatalog.read(mFile, VERSION), is(nullValue()));
+
+        FileUtils.write(mFile, "not a voice catalog");
+        assertThat(VoiceCatalog.read(mFile, VERSION), is(nullValue()));
+    }
+
+    public void testInvalidVoiceCount() throws IOException
+    {
+        new VoiceCatalog(VERSION, 1, Arrays.asList(new Voice("en", "gmw/en", 1, 0, new Locale("en")))).write(mFile);
+        final byte[] data = FileUtils.readBinary(mFile);
+        // The number of voices is after the magic, format version, data version and voice count.
+        final int offset = 4 + 4 + 2 + VERSION.length() + 4;
+
+        writeInt(data, offset, Integer.MAX_VALUE);
+        FileUtils.write(mFile, data);
+        assertThat(VoiceCatalog.read(mFile, VERSION), is(nullValue()));
+
+        writeInt(data, offset, -1);
+        FileUtils.write(mFile, data);
+        assertThat(VoiceCatalog.read(mFile, VERSION), is(nullValue()));
+    }
+
+    private static void writeInt(byte[] data, int offset, int value)
+    {
+        data[offset] = (byte)(value >> 24);
+        data[offset + 1] = (byte)(value >> 16);
+        data[offset + 2] = (byte)(value >> 8);
+        data[offset + 3] = (byte)value;
+    }
+
+    public void testAvailableVoicesUseCatalog()
+    {
+        final SpeechSynthesis synth = new SpeechSynthesis(getContext(), null);
+        final List<Voice> listed = synth.getAvailableVoices();
+        final int voiceCount = SpeechSynthesis.getVoiceCount();
+
+        final List<Voice> cached = synth.getAvailableVoices();
+        assertThat(SpeechSynthesis.getVoiceCount(), is(voiceCount));
+        assertThat(cached.size(), is(listed.size()));
+        for (int i = 0; i < listed.size(); ++i)
+        {
+            assertThat(cached.get(i).name, is(listed.get(i).name));
+            assertThat(cached.get(i).locale, is(listed.get(i).locale));
+        }
+    }
+}
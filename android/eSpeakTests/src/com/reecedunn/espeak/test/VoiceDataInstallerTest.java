@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak.test;
+
+import android.test.AndroidTestCase;
+
+import com.reecedunn.espeak.DataExtractor;
+import com.reecedunn.espeak.DataManifest;
+import com.reecedunn.espeak.FileUtils;
+import com.reecedunn.espeak.LanguagePacks;
+import com.reecedunn.espeak.R;
+import com.reecedunn.espeak.SpeechSynthesis;
+import com.reecedunn.espeak.Voice;
+import com.reecedunn.espeak.VoiceDataInstaller;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class VoiceDataInstallerTest extends AndroidTestCase
+{
+    private static final Voice GERMAN = new Voice("de", "gmw/de", SpeechSynthesis.GENDER_MALE, 0, new Locale("de"));
+
+    private File mTree;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        mTree = new File(getContext().getCacheDir(), "installer-test");
+        FileUtils.rmdir(mTree);
+        new DataExtractor(getContext(), R.raw.espeakdata, mTree).extract(DataExtractor.Listener.NONE);
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        FileUtils.rmdir(mTree);
+        mTree.delete();
+        super.tearDown();
+    }
+
+    private boolean isValid() throws Exception
+    {
+        final ArrayList<String> missing = new ArrayList<String>();
+        final boolean valid = DataManifest.read(mTree).verify(mTree, missing).isEmpty();
+        for (String path : missing)
+        {
+            if (path.equals("espeak-ng-data/en_dict") || path.equals("espeak-ng-data/phondata") || path.equals("espeak-ng-data/de_dict"))
+            {
+                return false;
+            }
+        }
+        return valid;
+    }
+
+    public void testRepairValidData() throws Exception
+    {
+        final LanguagePacks packs = new LanguagePacks(getContext(), mTree, false);
+        assertThat(VoiceDataInstaller.repair(getContext(), packs), is(false));
+    }
+
+    public void testRepair() throws Exception
+    {
+        final LanguagePacks packs = new LanguagePacks(getContext(), mTree, false);
+        packs.install(GERMAN, Executors.newSingleThreadExecutor()).get();
+
+        final File phondata = new File(mTree, "espeak-ng-data/phondata");
+        final byte[] data = FileUtils.readBinary(phondata);
+        data[data.length / 2] ^= 0xFF;
+        FileUtils.write(phondata, data);
+        new File(mTree, "espeak-ng-data/en_dict").delete();
+        FileUtils.write(new File(mTree, "espeak-ng-data/de_dict"), "corrupt");
+        assertThat(isValid(), is(false));
+
+        assertThat(VoiceDataInstaller.repair(getContext(), packs), is(true));
+        assertThat(isValid(), is(true));
+        assertThat(VoiceDataInstaller.repair(getContext(), packs), is(false));
+    }
+
+    public void testRepairOncePerVersion() throws Exception
+    {
+        final LanguagePacks packs = new LanguagePacks(getContext(), mTree, false);
+        final File version = new File(mTree, "espeak-ng-data/version");
+        FileUtils.write(version, "1");
+        assertThat(VoiceDataInstaller.repair(getContext(), packs), is(false));
+
+        new File(mTree, "espeak-ng-data/en_dict").delete();
+        assertThat(VoiceDataInstaller.repair(getContext(), packs), is(false));
+        assertThat(isValid(), is(false));
+
+        FileUtils.write(version, "2");
+        assertThat(VoiceDataInstaller.repair(getContext(), packs), is(true));
+        assertThat(isValid(), is(true));
+    }
+}
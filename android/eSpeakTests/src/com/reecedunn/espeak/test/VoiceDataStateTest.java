@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak.test;
+
+import android.test.AndroidTestCase;
+
+import com.reecedunn.espeak.CheckVoiceData;
+import com.reecedunn.espeak.VoiceDataState;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class VoiceDataStateTest extends AndroidTestCase
+{
+    public void testSameInstance()
+    {
+        assertThat(VoiceDataState.get(getContext()), is(sameInstance(VoiceDataState.get(getContext()))));
+    }
+
+    public void testStatus()
+    {
+        final VoiceDataState state = VoiceDataState.get(getContext());
+        assertThat(state.getDataPath(), is(CheckVoiceData.getDataPath(getContext())));
+        assertThat(state.hasBaseResources(), is(CheckVoiceData.hasBaseResources(getContext())));
+        assertThat(state.canUpgradeResources(), is(CheckVoiceData.canUpgradeResources(getContext())));
+
+        // The status is checked again after it is invalidated.
+        state.invalidate();
+        assertThat(state.hasBaseResources(), is(CheckVoiceData.hasBaseResources(getContext())));
+        assertThat(state.canUpgradeResources(), is(CheckVoiceData.canUpgradeResources(getContext())));
+    }
+
+    public void testVersion()
+    {
+        final String version = CheckVoiceData.getVersion(getContext());
+        assertThat(version, is(notNullValue()));
+        assertThat(CheckVoiceData.canUpgradeResources(getContext(), version), is(CheckVoiceData.canUpgradeResources(getContext())));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak.test;
+
+import android.speech.tts.TextToSpeech;
+import android.test.AndroidTestCase;
+import android.util.Pair;
+
+import com.reecedunn.espeak.Voice;
+import com.reecedunn.espeak.VoiceIndex;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import static com.reecedunn.espeak.test.TtsMatcher.isTtsLangCode;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class VoiceIndexTest extends AndroidTestCase
+{
+    private static final Voice EN_GB = new Voice("en-gb", "gmw/en", 0, 0, new Locale("en", "GB"));
+    private static final Voice EN_SCOTLAND = new Voice("en-gb-scotland", "gmw/en-GB-scotland", 0, 0, new Locale("en", "GB", "scotland"));
+    private static final Voice EN_US = new Voice("en-us", "gmw/en-US", 0, 0, new Locale("en", "US"));
+    private static final Voice VI_NORTH = new Voice("vi", "aav/vi", 0, 0, new Locale("vi", "VN"));
+    private static final Voice VI_HUE = new Voice("vi-vn-x-central", "aav/vi-VN-x-central", 0, 0, new Locale("vi", "VN", "hue"));
+
+    private final VoiceIndex mIndex = new VoiceIndex(Arrays.asList(EN_GB, EN_SCOTLAND, EN_US, VI_NORTH, VI_HUE));
+
+    private void checkMatch(Pair<Voice, Integer> match, Voice voice, int result)
+    {
+        assertThat(match.first, is(voice));
+        assertThat(match.second, isTtsLangCode(result));
+    }
+
+    public void testGetVoice()
+    {
+        assertThat(mIndex.getVoice("en-us"), is(EN_US));
+        assertThat(mIndex.getVoice("xx"), is(nullValue()));
+        assertThat(mIndex.getVoices().size(), is(5));
+    }
+
+    public void testFind()
+    {
+        checkMatch(mIndex.find("eng", "USA", ""), EN_US, TextToSpeech.LANG_COUNTRY_VAR_AVAILABLE);
+        checkMatch(mIndex.find("en", "US", ""), EN_US, TextToSpeech.LANG_COUNTRY_VAR_AVAILABLE);
+        checkMatch(mIndex.find("eng", "GBR", "scotland"), EN_SCOTLAND, TextToSpeech.LANG_COUNTRY_VAR_AVAILABLE);
+        checkMatch(mIndex.find("ine", "", ""), null, TextToSpeech.LANG_NOT_SUPPORTED);
+        assertThat(mIndex.find("eng", "USA", "rp").second, isTtsLangCode(TextToSpeech.LANG_COUNTRY_AVAILABLE));
+        assertThat(mIndex.find("eng", "FRA", "").second, isTtsLangCode(TextToSpeech.LANG_AVAILABLE));
+        assertThat(mIndex.find("eng", "", "").second, isTtsLangCode(TextToSpeech.LANG_AVAILABLE));
+    }
+
+    public void testFindNormalizesCodes()
+    {
+        checkMatch(mIndex.find("ENG", "usa", ""), EN_US, TextToSpeech.LANG_COUNTRY_VAR_AVAILABLE);
+        checkMatch(mIndex.find("En", "Gb", "scotland"), EN_SCOTLAND, TextToSpeech.LANG_COUNTRY_VAR_AVAILABLE);
+    }
+
+    public void testFindDefault()
+    {
+        checkMatch(mIndex.findDefault("eng", "USA", "rp"), EN_US, TextToSpeech.LANG_COUNTRY_AVAILABLE);
+        checkMatch(mIndex.findDefault("eng", "GBR", "rp"), EN_GB, TextToSpeech.LANG_COUNTRY_AVAILABLE);
+        checkMatch(mIndex.findDefault("vie", "VNM", ""), VI_NORTH, TextToSpeech.LANG_COUNTRY_VAR_AVAILABLE);
+        checkMatch(mIndex.findDefault("vie", "VNM", "south"), VI_HUE, TextToSpeech.LANG_COUNTRY_AVAILABLE);
+        checkMatch(mIndex.findDefault("ine", "", ""), null, TextToSpeech.LANG_NOT_SUPPORTED);
+        assertThat(mIndex.findDefault("eng", "FRA", "").second, isTtsLangCode(TextToSpeech.LANG_AVAILABLE));
+    }
+
+    public void testEmptyIndex()
+    {
+        checkMatch(VoiceIndex.EMPTY.find("eng", "GBR", ""), null, TextToSpeech.LANG_NOT_SUPPORTED);
+        assertThat(VoiceIndex.EMPTY.getVoices().size(), is(0));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * A bounded single-producer, single-consumer ring of PCM data.
+ *
+ * The read and write positions are lock-free. The mutex and condition are
+ * only used to sleep when the ring is full (producer) or empty (consumer).
+ */
+
+#ifndef AUDIO_RING_H_
+#define AUDIO_RING_H_
+
+#include <pthread.h>
+#include <stdatomic.h>
+#include <stddef.h>
+
+enum audio_ring_state {
+  AUDIO_RING_ACTIVE = 0,
+  AUDIO_RING_FINISHED = 1, // the producer has written all of its data
+  AUDIO_RING_ABORTED = 2,  // the data is no longer wanted
+};
+
+typedef struct {
+  char *data;
+  size_t capacity;
+  atomic_size_t head; // total number of bytes written
+  atomic_size_t tail; // total number of bytes read
+  atomic_int state;
+  atomic_int waiters;
+  pthread_mutex_t lock;
+  pthread_cond_t cond;
+} audio_ring;
+
+int audio_ring_init(audio_ring *ring, size_t capacity);
+
+void audio_ring_destroy(audio_ring *ring);
+
+/* Empties the ring ready for the next producer. Neither side may be active. */
+void audio_ring_reset(audio_ring *ring);
+
+/* Writes all of the data, waiting for space as needed.
+ *
+ * Returns 0 on success, or -1 if the ring was aborted.
+ */
+int audio_ring_write(audio_ring *ring, const void *data, size_t length);
+
+/* Reads up to length bytes, waiting until some data is available.
+ *
+ * Returns the number of bytes read, or 0 once the ring is finished and
+ * empty, or has been aborted.
+ */
+size_t audio_ring_read(audio_ring *ring, void *data, size_t length);
+
+void audio_ring_finish(audio_ring *ring);
+
+void audio_ring_abort(audio_ring *ring);
+
+int audio_ring_is_aborted(audio_ring *ring);
+
+#endif /* AUDIO_RING_H_ */
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * A single-producer, single-consumer ring of PCM data in memory shared with
+ * another process, used by SharedAudioRing.java.
+ *
+ * The memory starts with a SHARED_AUDIO_RING_HEADER_SIZE byte header holding
+ * the total number of bytes written and read as 64-bit atomics, followed by
+ * the data. The positions are stored with release and loaded with acquire
+ * ordering, so the data written before a position is visible to the process
+ * that loads it.
+ *
+ * The reader does not wait for the writer. A writer that finds the ring full
+ * can block on a futex in the header until the reader frees some space. The
+ * futex is not private to the process, so the reader wakes it from the other
+ * process.
+ */
+
+#ifndef SHARED_AUDIO_RING_H_
+#define SHARED_AUDIO_RING_H_
+
+#include <stdatomic.h>
+#include <stddef.h>
+#include <stdint.h>
+
+#define SHARED_AUDIO_RING_HEADER_SIZE 64
+
+typedef struct {
+  _Atomic uint64_t write_position; // total number of bytes written
+  _Atomic uint64_t read_position;  // total number of bytes read
+  _Atomic uint32_t writer_waiting; // the futex the writer waits on for space
+} shared_audio_ring_header;
+
+typedef struct {
+  shared_audio_ring_header *header;
+  char *data;
+  size_t capacity;
+} shared_audio_ring;
+
+/* Uses the memory, which is size bytes including the header. The header is
+ * zero for a new ring.
+ *
+ * Returns 0 on success, or -1 if the memory is too small or the positions
+ * cannot be shared between processes without a lock.
+ */
+int shared_audio_ring_attach(shared_audio_ring *ring, void *memory, size_t size);
+
+uint64_t shared_audio_ring_write_position(shared_audio_ring *ring);
+
+uint64_t shared_audio_ring_read_position(shared_audio_ring *ring);
+
+/* Writes as much of the data as there is space for.
+ *
+ * Returns the number of bytes written.
+ */
+size_t shared_audio_ring_write(shared_audio_ring *ring, const void *data, size_t length);
+
+/* Waits until the reader frees some space in the ring, the ring is woken, or
+ * aborted is set. This returns straight away if the ring is not full.
+ *
+ * Returns 0 if there is space, or -1 if aborted is set.
+ */
+int shared_audio_ring_wait_for_space(shared_audio_ring *ring, atomic_int *aborted);
+
+/* Wakes a writer waiting for space. This is called after setting the abort
+ * flag the writer waits with.
+ */
+void shared_audio_ring_wake(shared_audio_ring *ring);
+
+/* Reads the data that has been written, up to length bytes, waking a writer
+ * waiting for space.
+ *
+ * Returns the number of bytes read.
+ */
+size_t shared_audio_ring_read(shared_audio_ring *ring, void *data, size_t length);
+
+#endif /* SHARED_AUDIO_RING_H_ */
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/*
+ * This file contains the JNI bindings to the shared audio ring used by
+ * SharedAudioRing.java. The memory is passed as a direct ByteBuffer.
+ */
+
+#include <stdbool.h>
+#include <jni.h>
+
+#include <shared_audio_ring.h>
+
+static bool Attach(JNIEnv *env, jobject memory, shared_audio_ring *ring) {
+  return shared_audio_ring_attach(ring, (*env)->GetDirectBufferAddress(env, memory),
+                                  (size_t)(*env)->GetDirectBufferCapacity(env, memory)) == 0;
+}
+
+JNIEXPORT jint
+JNICALL Java_com_reecedunn_espeak_SharedAudioRing_nativeGetCapacity(
+    JNIEnv *env, jclass clazz, jobject memory) {
+  shared_audio_ring ring;
+  if (!Attach(env, memory, &ring)) return -1;
+  return (jint)ring.capacity;
+}
+
+JNIEXPORT jlong
+JNICALL Java_com_reecedunn_espeak_SharedAudioRing_nativeGetWritePosition(
+    JNIEnv *env, jclass clazz, jobject memory) {
+  shared_audio_ring ring;
+  if (!Attach(env, memory, &ring)) return 0;
+  return (jlong)shared_audio_ring_write_position(&ring);
+}
+
+JNIEXPORT jlong
+JNICALL Java_com_reecedunn_espeak_SharedAudioRing_nativeGetReadPosition(
+    JNIEnv *env, jclass clazz, jobject memory) {
+  shared_audio_ring ring;
+  if (!Attach(env, memory, &ring)) return 0;
+  return (jlong)shared_audio_ring_read_position(&ring);
+}
+
+JNIEXPORT jint
+JNICALL Java_com_reecedunn_espeak_SharedAudioRing_nativeWrite(
+    JNIEnv *env, jclass clazz, jobject memory, jbyteArray audio, jint offset, jint length) {
+  shared_audio_ring ring;
+  if (!Attach(env, memory, &ring)) return 0;
+
+  jbyte *data = (jbyte *)(*env)->GetPrimitiveArrayCritical(env, audio, NULL);
+  const size_t written = shared_audio_ring_write(&ring, data + offset, (size_t)length);
+  (*env)->ReleasePrimitiveArrayCritical(env, audio, data, JNI_ABORT);
+  return (jint)written;
+}
+
+JNIEXPORT jint
+JNICALL Java_com_reecedunn_espeak_SharedAudioRing_nativeWriteDirect(
+    JNIEnv *env, jclass clazz, jobject memory, jobject audio, jint offset, jint length) {
+  shared_audio_ring ring;
+  if (!Attach(env, memory, &ring)) return 0;
+
+  const char *data = (const char *)(*env)->GetDirectBufferAddress(env, audio);
+  return (jint)shared_audio_ring_write(&ring, data + offset, (size_t)length);
+}
+
+JNIEXPORT jint
+JNICALL Java_com_reecedunn_espeak_SharedAudioRing_nativeRead(
+    JNIEnv *env, jclass clazz, jobject memory, jbyteArray audio, jint offset, jint length) {
+  shared_audio_ring ring;
+  if (!Attach(env, memory, &ring)) return 0;
+
+  jbyte *data = (jbyte *)(*env)->GetPrimitiveArrayCritical(env, audio, NULL);
+  const size_t read = shared_audio_ring_read(&ring, data + offset, (size_t)length);
+  (*env)->ReleasePrimitiveArrayCritical(env, audio, data, 0);
+  return (jint)read;
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <stdlib.h>
+#include <string.h>
+
+#include <audio_ring.h>
+
+int audio_ring_init(audio_ring *ring, size_t capacity)
+{
+  ring->data = (char *)malloc(capacity);
+  if (ring->data == NULL)
+    return -1;
+
+  ring->capacity = capacity;
+  atomic_init(&ring->head, 0);
+  atomic_init(&ring->tail, 0);
+  atomic_init(&ring->state, AUDIO_RING_ACTIVE);
+  atomic_init(&ring->waiters, 0);
+  pthread_mutex_init(&ring->lock, NULL);
+  pthread_cond_init(&ring->cond, NULL);
+  return 0;
+}
+
+void audio_ring_destroy(audio_ring *ring)
+{
+  pthread_cond_destroy(&ring->cond);
+  pthread_mutex_destroy(&ring->lock);
+  free(ring->data);
+  ring->data = NULL;
+  ring->capacity = 0;
+}
+
+void audio_ring_reset(audio_ring *ring)
+{
+  atomic_store(&ring->head, 0);
+  atomic_store(&ring->tail, 0);
+  atomic_store(&ring->state, AUDIO_RING_ACTIVE);
+}
+
+/* Wake up the other side if it is sleeping on the ring. */
+static void audio_ring_notify(audio_ring *ring)
+{
+  if (atomic_load(&ring->waiters) == 0)
+    return;
+
+  pthread_mutex_lock(&ring->lock);
+  pthread_cond_broadcast(&ring->cond);
+  pthread_mutex_unlock(&ring->lock);
+}
+
+static size_t audio_ring_free_space(audio_ring *ring)
+{
+  return ring->capacity - (atomic_load(&ring->head) - atomic_load(&ring->tail));
+}
+
+static size_t audio_ring_used_space(audio_ring *ring)
+{
+  return atomic_load(&ring->head) - atomic_load(&ring->tail);
+}
+
+/* Sleep until the ring is no longer full (producer) or empty (consumer).
+ *
+ * The waiter count is raised before the final check so that a notify from
+ * the other side cannot be missed between the check and the wait.
+ */
+static void audio_ring_wait(audio_ring *ring, size_t (*available)(audio_ring *))
+{
+  pthread_mutex_lock(&ring->lock);
+  atomic_fetch_add(&ring->waiters, 1);
+  while (available(ring) == 0 && atomic_load(&ring->state) == AUDIO_RING_ACTIVE)
+    pthread_cond_wait(&ring->cond, &ring->lock);
+  atomic_fetch_sub(&ring->waiters, 1);
+  pthread_mutex_unlock(&ring->lock);
+}
+
+int audio_ring_write(audio_ring *ring, const void *data, size_t length)
+{
+  const char *in = (const char *)data;
+  while (length > 0) {
+    if (atomic_load(&ring->state) == AUDIO_RING_ABORTED)
+      return -1;
+
+    size_t space = audio_ring_free_space(ring);
+    if (space == 0) {
+      audio_ring_wait(ring, audio_ring_free_space);
+      continue;
+    }
+
+    const size_t head = atomic_load(&ring->head);
+    const size_t offset = head % ring->capacity;
+    size_t count = length < space ? length : space;
+    if (count > ring->capacity - offset)
+      count = ring->capacity - offset;
+
+    memcpy(ring->data + offset, in, count);
+    atomic_store(&ring->head, head + count);
+    audio_ring_notify(ring);
+
+    in += count;
+    length -= count;
+  }
+  return 0;
+}
+
+size_t audio_ring_read(audio_ring *ring, void *data, size_t length)
+{
+  for (;;) {
+    if (atomic_load(&ring->state) == AUDIO_RING_ABORTED)
+      return 0;
+
+    const size_t used = audio_ring_used_space(ring);
+    if (used == 0) {
+      if (atomic_load(&ring->state) == AUDIO_RING_FINISHED && audio_ring_used_space(ring) == 0)
+        return 0;
+      audio_ring_wait(ring, audio_ring_used_space);
+      continue;
+    }
+
+    const size_t tail = atomic_load(&ring->tail);
+    const size_t offset = tail % ring->capacity;
+    const size_t count = length < used ? length : used;
+    if (count > ring->capacity - offset) { // the data wraps around the end of the ring
+      const size_t first = ring->capacity - offset;
+      memcpy(data, ring->data + offset, first);
+      memcpy((char *)data + first, ring->data, count - first);
+    } else
+      memcpy(data, ring->data + offset, count);
+    atomic_store(&ring->tail, tail + count);
+    audio_ring_notify(ring);
+    return count;
+  }
+}
+
+void audio_ring_finish(audio_ring *ring)
+{
+  pthread_mutex_lock(&ring->lock);
+  if (atomic_load(&ring->state) == AUDIO_RING_ACTIVE)
+    atomic_store(&ring->state, AUDIO_RING_FINISHED);
+  pthread_cond_broadcast(&ring->cond);
+  pthread_mutex_unlock(&ring->lock);
+}
+
+void audio_ring_abort(audio_ring *ring)
+{
+  pthread_mutex_lock(&ring->lock);
+  atomic_store(&ring->state, AUDIO_RING_ABORTED);
+  pthread_cond_broadcast(&ring->cond);
+  pthread_mutex_unlock(&ring->lock);
+}
+
+int audio_ring_is_aborted(audio_ring *ring)
+{
+  return atomic_load(&ring->state) == AUDIO_RING_ABORTED;
+}
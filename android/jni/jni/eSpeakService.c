@@ -22,17 +22,40 @@
  * API Version:     14
  */
 
+#include <errno.h>
+#include <limits.h>
 #include <stdio.h>
+#include <pthread.h>
 #include <unistd.h>
+#include <stdint.h>
 #include <stdlib.h>
 #include <stdbool.h>
 #include <string.h>
 #include <jni.h>
 
+#include <espeak-ng/espeak_ng.h>
 #include <espeak-ng/speak_lib.h>
 #include <Log.h>
+#include <audio_ring.h>
+#include <shared_audio_ring.h>
 
-#define BUFFER_SIZE_IN_MILLISECONDS 300
+#define MAX_AUDIO_BUFFERS 8
+
+/* The number of espeak_PARAMETER values that can be passed to nativeApplyState. */
+#define MAX_PARAMETERS 16
+
+#define PIPELINE_SCRATCH_SIZE 16384
+
+/* The events are passed to Java as EVENT_SIZE ints each: the event type, the
+ * text position, the text length, the sample the event occurs at and the 8
+ * bytes of the phoneme name, least significant byte first.
+ */
+#define EVENT_SIZE 6
+
+/* The number of events that can be waiting for their audio to be passed to
+ * Java. Events past this are dropped.
+ */
+#define MAX_QUEUED_EVENTS 1024
 
 /* These are helpers for converting a jstring to wchar_t*.
  *
@@ -97,6 +120,153 @@ enum synthesis_result {
 
 static JavaVM *jvm = NULL;
 jmethodID METHOD_nativeSynthCallback;
+jmethodID METHOD_nativeSynthBufferCallback;
+jmethodID METHOD_nativeStreamCallback;
+
+/* The direct ByteBuffers registered by SpeechSynthesis. When these are set,
+ * the audio is copied into the next buffer in turn instead of a new byte[].
+ */
+static jobjectArray audio_buffers = NULL;
+static void *audio_buffer_data[MAX_AUDIO_BUFFERS];
+static jint audio_buffer_capacity = 0;
+static int audio_buffer_count = 0;
+static int audio_buffer_index = 0;
+
+/* Pipelined synthesis: eSpeak runs on its own thread, writing the audio into
+ * a bounded ring that is drained on the thread that called nativeSynthesize.
+ * The ring capacity is the high-water mark for how far the synthesis can get
+ * ahead of the consumer.
+ *
+ * The synthesis thread is started when the pipeline is enabled, and waits on
+ * the condition for the text to synthesize. It is stopped and joined when the
+ * pipeline is resized or disabled.
+ */
+static struct {
+  audio_ring ring;
+  int enabled;
+  pthread_t thread;
+  pthread_mutex_t lock;
+  pthread_cond_t cond;
+  int pending; // the text has been passed to the synthesis thread
+  int busy;    // the text is waiting for or being synthesized
+  int quit;
+  const char *text;
+  unsigned int flags;
+  espeak_ERROR result;
+  char scratch[PIPELINE_SCRATCH_SIZE];
+} pipeline = { .lock = PTHREAD_MUTEX_INITIALIZER, .cond = PTHREAD_COND_INITIALIZER };
+
+/* The word, sentence, mark and phoneme events that have been generated, but
+ * not yet passed to Java. They are passed with the chunk of audio they occur
+ * in, in the int[] registered by SpeechSynthesis, so there is one array copy
+ * per chunk instead of a JNI call or object per event.
+ *
+ * Events are added on the synthesis thread and taken on the thread that
+ * calls into Java, which are different threads when pipelining.
+ */
+static pthread_mutex_t event_lock = PTHREAD_MUTEX_INITIALIZER;
+static struct {
+  jint data[MAX_QUEUED_EVENTS * EVENT_SIZE];
+  jint taken[MAX_QUEUED_EVENTS * EVENT_SIZE]; // only used by the thread calling into Java
+  int count;
+  jintArray buffer;
+  jint capacity;
+  long samples; // the samples passed to Java by SynthCallback
+} event_queue;
+
+/* Rendering to a file: the audio is written to the file descriptor from the
+ * synthesis callback, without calling into Java.
+ */
+static struct {
+  int fd;
+  int error; // the errno of the write that failed, or 0
+  volatile int aborted;
+  long samples;
+} render = { -1, 0, 0, 0 };
+
+/* Streaming into a shared audio ring: the audio is written to the ring from
+ * the synthesis callback, and Java is only told the position it has been
+ * written up to.
+ */
+static struct {
+  shared_audio_ring ring;
+  atomic_int aborted;
+  pthread_mutex_t lock; // held while the ring is attached or woken
+  int attached;
+} stream = { .lock = PTHREAD_MUTEX_INITIALIZER };
+
+static jint PackPhonemeName(const char *name) {
+  const unsigned char *bytes = (const unsigned char *)name;
+  return bytes[0] | (bytes[1] << 8) | (bytes[2] << 16) | ((jint)bytes[3] << 24);
+}
+
+static void QueueEvents(const espeak_EVENT *events) {
+  if (event_queue.buffer == NULL) {
+    return;
+  }
+
+  pthread_mutex_lock(&event_lock);
+  for (; events->type != espeakEVENT_LIST_TERMINATED; ++events) {
+    switch (events->type) {
+    case espeakEVENT_WORD:
+    case espeakEVENT_SENTENCE:
+    case espeakEVENT_MARK:
+    case espeakEVENT_PHONEME:
+      if (event_queue.count < MAX_QUEUED_EVENTS) {
+        jint *event = &event_queue.data[event_queue.count++ * EVENT_SIZE];
+        event[0] = events->type;
+        event[1] = events->text_position;
+        event[2] = events->length;
+        event[3] = events->sample;
+        if (events->type == espeakEVENT_PHONEME) {
+          event[4] = PackPhonemeName(events->id.string);
+          event[5] = PackPhonemeName(events->id.string + 4);
+        } else {
+          event[4] = 0;
+          event[5] = 0;
+        }
+      }
+      break;
+    default:
+      break;
+    }
+  }
+  pthread_mutex_unlock(&event_lock);
+}
+
+/* Copies the queued events that occur before the end sample to the Java event
+ * buffer, up to its capacity.
+ *
+ * Returns the number of events copied.
+ */
+static jint TakeEvents(JNIEnv *env, long end_sample) {
+  jint count = 0;
+
+  pthread_mutex_lock(&event_lock);
+  while (count < event_queue.count && count < event_queue.capacity &&
+         event_queue.data[count * EVENT_SIZE + 3] < end_sample) {
+    ++count;
+  }
+  if (count > 0) {
+    memcpy(event_queue.taken, event_queue.data, count * EVENT_SIZE * sizeof(jint));
+    event_queue.count -= count;
+    memmove(event_queue.data, &event_queue.data[count * EVENT_SIZE],
+            event_queue.count * EVENT_SIZE * sizeof(jint));
+  }
+  pthread_mutex_unlock(&event_lock);
+
+  if (count > 0) {
+    (*env)->SetIntArrayRegion(env, event_queue.buffer, 0, count * EVENT_SIZE, event_queue.taken);
+  }
+  return count;
+}
+
+static void ResetEvents() {
+  pthread_mutex_lock(&event_lock);
+  event_queue.count = 0;
+  event_queue.samples = 0;
+  pthread_mutex_unlock(&event_lock);
+}
 
 static JNIEnv *getJniEnv() {
   JNIEnv *env = NULL;
@@ -110,17 +280,197 @@ static int SynthCallback(short *audioData, int numSamples,
   JNIEnv *env = getJniEnv();
   jobject object = (jobject)events->user_data;
 
+  QueueEvents(events);
   if (numSamples < 1) {
-    (*env)->CallVoidMethod(env, object, METHOD_nativeSynthCallback, NULL);
+    (*env)->CallVoidMethod(env, object, METHOD_nativeSynthCallback, NULL, TakeEvents(env, LONG_MAX));
     return SYNTH_ABORT;
+  } else if (audio_buffer_count > 0) {
+    const char *data = (const char *)audioData;
+    jint remaining = numSamples * 2;
+    while (remaining > 0) {
+      const jint length = remaining < audio_buffer_capacity ? remaining : audio_buffer_capacity;
+      memcpy(audio_buffer_data[audio_buffer_index], data, length);
+      event_queue.samples += length / 2;
+      (*env)->CallVoidMethod(env, object, METHOD_nativeSynthBufferCallback, audio_buffer_index, length,
+                             TakeEvents(env, event_queue.samples));
+      audio_buffer_index = (audio_buffer_index + 1) % audio_buffer_count;
+      data += length;
+      remaining -= length;
+    }
+    return SYNTH_CONTINUE;
   } else {
     jbyteArray arrayAudioData = (*env)->NewByteArray(env, numSamples * 2);
     (*env)->SetByteArrayRegion(env, arrayAudioData, 0, (numSamples * 2), (jbyte *) audioData);
-    (*env)->CallVoidMethod(env, object, METHOD_nativeSynthCallback, arrayAudioData);
+    event_queue.samples += numSamples;
+    (*env)->CallVoidMethod(env, object, METHOD_nativeSynthCallback, arrayAudioData,
+                           TakeEvents(env, event_queue.samples));
     return SYNTH_CONTINUE;
   }
 }
 
+/* Callback from espeak on the pipeline thread. This does not call into Java. */
+static int PipelineSynthCallback(short *audioData, int numSamples,
+                                 espeak_EVENT *events) {
+  // The events are queued before their audio, so they are there when it is read.
+  QueueEvents(events);
+  if (audioData != NULL && numSamples > 0) {
+    if (audio_ring_write(&pipeline.ring, audioData, numSamples * 2) != 0)
+      return SYNTH_ABORT;
+  }
+  return audio_ring_is_aborted(&pipeline.ring) ? SYNTH_ABORT : SYNTH_CONTINUE;
+}
+
+static void *PipelineSynthThread(void *arg) {
+  unsigned int unique_identifier;
+
+  pthread_mutex_lock(&pipeline.lock);
+  for (;;) {
+    while (!pipeline.pending && !pipeline.quit) {
+      pthread_cond_wait(&pipeline.cond, &pipeline.lock);
+    }
+    if (pipeline.quit) {
+      break;
+    }
+    pipeline.pending = 0;
+    pthread_mutex_unlock(&pipeline.lock);
+
+    pipeline.result = espeak_Synth(pipeline.text, strlen(pipeline.text), 0,  // position
+                                   POS_CHARACTER, 0, // end position (0 means no end position)
+                                   pipeline.flags, &unique_identifier, NULL);
+    espeak_Synchronize();
+
+    if (audio_ring_is_aborted(&pipeline.ring)) {
+      espeak_Cancel(); // restore any parameters changed by SSML markup
+    }
+    audio_ring_finish(&pipeline.ring);
+
+    pthread_mutex_lock(&pipeline.lock);
+    pipeline.busy = 0;
+    pthread_cond_broadcast(&pipeline.cond);
+  }
+  pthread_mutex_unlock(&pipeline.lock);
+  return NULL;
+}
+
+/* Starts the synthesis thread of the pipeline. Returns false on an error. */
+static bool PipelineStart() {
+  pipeline.quit = 0;
+  if (pthread_create(&pipeline.thread, NULL, PipelineSynthThread, NULL) != 0) {
+    LOGE("Failed to start the synthesis thread.");
+    return false;
+  }
+  return true;
+}
+
+/* Stops the synthesis thread of the pipeline, once it is idle. */
+static void PipelineStop() {
+  pthread_mutex_lock(&pipeline.lock);
+  pipeline.quit = 1;
+  pthread_cond_broadcast(&pipeline.cond);
+  pthread_mutex_unlock(&pipeline.lock);
+  pthread_join(pipeline.thread, NULL);
+}
+
+/* Pass the audio in the pipeline to Java until the synthesis thread is done. */
+static void PipelineDrain(JNIEnv *env, jobject object) {
+  size_t length;
+  long samples = 0;
+  if (audio_buffer_count > 0) {
+    while ((length = audio_ring_read(&pipeline.ring, audio_buffer_data[audio_buffer_index], audio_buffer_capacity)) > 0) {
+      samples += length / 2;
+      (*env)->CallVoidMethod(env, object, METHOD_nativeSynthBufferCallback, audio_buffer_index, (jint)length,
+                             TakeEvents(env, samples));
+      audio_buffer_index = (audio_buffer_index + 1) % audio_buffer_count;
+    }
+  } else {
+    while ((length = audio_ring_read(&pipeline.ring, pipeline.scratch, PIPELINE_SCRATCH_SIZE)) > 0) {
+      jbyteArray arrayAudioData = (*env)->NewByteArray(env, length);
+      (*env)->SetByteArrayRegion(env, arrayAudioData, 0, length, (jbyte *) pipeline.scratch);
+      samples += length / 2;
+      (*env)->CallVoidMethod(env, object, METHOD_nativeSynthCallback, arrayAudioData, TakeEvents(env, samples));
+      (*env)->DeleteLocalRef(env, arrayAudioData);
+    }
+  }
+}
+
+static espeak_ERROR PipelineSynthesize(JNIEnv *env, jobject object,
+                                       const char *text, unsigned int flags) {
+  pipeline.text = text;
+  pipeline.flags = flags;
+  pipeline.result = EE_OK;
+  audio_ring_reset(&pipeline.ring);
+
+  espeak_SetSynthCallback(PipelineSynthCallback);
+  pthread_mutex_lock(&pipeline.lock);
+  pipeline.pending = 1;
+  pipeline.busy = 1;
+  pthread_cond_broadcast(&pipeline.cond);
+  pthread_mutex_unlock(&pipeline.lock);
+
+  PipelineDrain(env, object);
+
+  // An aborted ring stops the drain before eSpeak has stopped using the text.
+  pthread_mutex_lock(&pipeline.lock);
+  while (pipeline.busy) {
+    pthread_cond_wait(&pipeline.cond, &pipeline.lock);
+  }
+  pthread_mutex_unlock(&pipeline.lock);
+  pipeline.text = NULL;
+
+  // The events at the end of the audio are passed with the end of the synthesis.
+  (*env)->CallVoidMethod(env, object, METHOD_nativeSynthCallback, NULL, TakeEvents(env, LONG_MAX));
+  return pipeline.result;
+}
+
+/* Writes all of the data, returning false on an error. */
+static bool WriteAll(int fd, const void *data, size_t length) {
+  const char *next = (const char *)data;
+  while (length > 0) {
+    const ssize_t written = write(fd, next, length);
+    if (written < 0) {
+      if (errno == EINTR) continue;
+      return false;
+    }
+    next += written;
+    length -= (size_t)written;
+  }
+  return true;
+}
+
+static void PutLE(unsigned char *data, uint32_t value, int bytes) {
+  for (int i = 0; i < bytes; i++) {
+    data[i] = (unsigned char)(value >> (i * 8));
+  }
+}
+
+/* Fills in the 44 byte header of a WAV file of 16-bit mono audio. */
+static void WavHeader(unsigned char *header, int sample_rate, uint32_t data_size) {
+  memcpy(header, "RIFF", 4);
+  PutLE(header + 4, data_size > UINT32_MAX - 36 ? UINT32_MAX : data_size + 36, 4);
+  memcpy(header + 8, "WAVEfmt ", 8);
+  PutLE(header + 16, 16, 4); // fmt chunk size
+  PutLE(header + 20, 1, 2);  // PCM
+  PutLE(header + 22, 1, 2);  // mono
+  PutLE(header + 24, (uint32_t)sample_rate, 4);
+  PutLE(header + 28, (uint32_t)sample_rate * 2, 4); // bytes per second
+  PutLE(header + 32, 2, 2);  // bytes per frame
+  PutLE(header + 34, 16, 2); // bits per sample
+  memcpy(header + 36, "data", 4);
+  PutLE(header + 40, data_size, 4);
+}
+
+static int RenderSynthCallback(short *audioData, int numSamples,
+                               espeak_EVENT *events) {
+  if (audioData != NULL && numSamples > 0) {
+    if (!WriteAll(render.fd, audioData, numSamples * 2)) {
+      render.error = errno;
+      return SYNTH_ABORT;
+    }
+    render.samples += numSamples;
+  }
+  return render.aborted ? SYNTH_ABORT : SYNTH_CONTINUE;
+}
+
 #ifdef __cplusplus
 extern "C" {
 #endif /* __cplusplus */
@@ -142,20 +492,79 @@ JNIEXPORT jboolean
 JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeClassInit(
     JNIEnv* env, jclass clazz) {
   if (DEBUG) LOGV("%s", __FUNCTION__);
-  METHOD_nativeSynthCallback = (*env)->GetMethodID(env, clazz, "nativeSynthCallback", "([B)V");
+  METHOD_nativeSynthCallback = (*env)->GetMethodID(env, clazz, "nativeSynthCallback", "([BI)V");
+  METHOD_nativeSynthBufferCallback = (*env)->GetMethodID(env, clazz, "nativeSynthBufferCallback", "(III)V");
+  METHOD_nativeStreamCallback = (*env)->GetMethodID(env, clazz, "nativeStreamCallback", "(J)Z");
 
   return JNI_TRUE;
 }
 
+/* Reads the files that are not in the data directory from the archive. The
+ * files are in the archive file descriptor at the given offsets, with names
+ * relative to the data path.
+ */
+static bool SetDataArchive(JNIEnv *env, const char *path, jint fd, jobjectArray names,
+                           jlongArray offsets, jlongArray lengths) {
+  if (fd < 0 || names == NULL || path == NULL) {
+    espeak_ng_SetDataArchive(-1, NULL, NULL, 0);
+    return true;
+  }
+
+  const int count = (*env)->GetArrayLength(env, names);
+  espeak_ng_DATA_FILE *files = calloc(count > 0 ? count : 1, sizeof(espeak_ng_DATA_FILE));
+  jstring *nameRefs = calloc(count > 0 ? count : 1, sizeof(jstring));
+  jlong *c_offsets = (*env)->GetLongArrayElements(env, offsets, NULL);
+  jlong *c_lengths = (*env)->GetLongArrayElements(env, lengths, NULL);
+
+  espeak_ng_STATUS status = ENOMEM;
+  if (files && nameRefs) {
+    for (int i = 0; i < count; i++) {
+      nameRefs[i] = (jstring) (*env)->GetObjectArrayElement(env, names, i);
+      files[i].name = (*env)->GetStringUTFChars(env, nameRefs[i], NULL);
+      files[i].offset = c_offsets[i];
+      files[i].length = c_lengths[i];
+    }
+
+    status = espeak_ng_SetDataArchive(fd, path, files, count);
+
+    for (int i = 0; i < count; i++) {
+      (*env)->ReleaseStringUTFChars(env, nameRefs[i], files[i].name);
+      (*env)->DeleteLocalRef(env, nameRefs[i]);
+    }
+  }
+
+  (*env)->ReleaseLongArrayElements(env, offsets, c_offsets, JNI_ABORT);
+  (*env)->ReleaseLongArrayElements(env, lengths, c_lengths, JNI_ABORT);
+  free(nameRefs);
+  free(files);
+
+  if (status != ENS_OK) {
+    LOGE("espeak_ng_SetDataArchive: failed with status %d.", status);
+    return false;
+  }
+  return true;
+}
+
 JNIEXPORT jint
 JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeCreate(
-    JNIEnv *env, jobject object, jstring path) {
+    JNIEnv *env, jobject object, jstring path, jint bufferSizeInMilliseconds,
+    jboolean mappedDataFiles, jint archiveFd, jobjectArray archiveNames,
+    jlongArray archiveOffsets, jlongArray archiveLengths) {
   if (DEBUG) LOGV("%s [env=%p, object=%p]", __FUNCTION__, env, object);
 
   const char *c_path = path ? (*env)->GetStringUTFChars(env, path, NULL) : NULL;
 
+  if (espeak_ng_SetMappedDataFiles(mappedDataFiles) != ENS_OK) {
+    LOGE("espeak_ng_SetMappedDataFiles: not supported.");
+  }
+
+  if (!SetDataArchive(env, c_path, archiveFd, archiveNames, archiveOffsets, archiveLengths)) {
+    if (c_path) (*env)->ReleaseStringUTFChars(env, path, c_path);
+    return 0;
+  }
+
   if (DEBUG) LOGV("Initializing with path %s", c_path);
-  int sampleRate = espeak_Initialize(AUDIO_OUTPUT_SYNCHRONOUS, BUFFER_SIZE_IN_MILLISECONDS, c_path, 0);
+  int sampleRate = espeak_Initialize(AUDIO_OUTPUT_SYNCHRONOUS, bufferSizeInMilliseconds, c_path, 0);
 
   if (c_path) (*env)->ReleaseStringUTFChars(env, path, c_path);
 
@@ -213,16 +622,14 @@ JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeGetAvailableVoices(
   return voicesArray;
 }
 
-JNIEXPORT jboolean
-JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetVoiceByName(
-    JNIEnv *env, jobject object, jstring name) {
-  const char *c_name = name ? (*env)->GetStringUTFChars(env, name, NULL) : NULL;
+static jboolean SetVoiceByName(JNIEnv *env, jstring name) {
+  const char *c_name = (*env)->GetStringUTFChars(env, name, NULL);
 
   if (DEBUG) LOGV("%s(name=%s)", __FUNCTION__, c_name);
 
   const espeak_ERROR result = espeak_SetVoiceByName(c_name);
 
-  if (c_name) (*env)->ReleaseStringUTFChars(env, name, c_name);
+  (*env)->ReleaseStringUTFChars(env, name, c_name);
 
   switch (result) {
     case EE_OK:             return JNI_TRUE;
@@ -234,10 +641,8 @@ JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetVoiceByName(
   return JNI_FALSE;
 }
 
-JNIEXPORT jboolean
-JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetVoiceByProperties(
-    JNIEnv *env, jobject object, jstring language, jint gender, jint age) {
-  const char *c_language = language ? (*env)->GetStringUTFChars(env, language, NULL) : NULL;
+static jboolean SetVoiceByProperties(JNIEnv *env, jstring language, jint gender, jint age) {
+  const char *c_language = (*env)->GetStringUTFChars(env, language, NULL);
 
   if (DEBUG) LOGV("%s(language=%s, gender=%d, age=%d)", __FUNCTION__, c_language, gender, age);
 
@@ -249,7 +654,7 @@ JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetVoiceByProperties(
 
   const espeak_ERROR result = espeak_SetVoiceByProperties(&voice_select);
 
-  if (c_language) (*env)->ReleaseStringUTFChars(env, language, c_language);
+  (*env)->ReleaseStringUTFChars(env, language, c_language);
 
   switch (result) {
     case EE_OK:             return JNI_TRUE;
@@ -261,9 +666,7 @@ JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetVoiceByProperties(
   return JNI_FALSE;
 }
 
-JNIEXPORT jboolean
-JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetParameter(
-    JNIEnv *env, jobject object, jint parameter, jint value) {
+static jboolean SetParameter(jint parameter, jint value) {
   if (DEBUG) LOGV("%s(parameter=%d, value=%d)", __FUNCTION__, parameter, value);
   const espeak_ERROR result = espeak_SetParameter((espeak_PARAMETER)parameter, (int)value, 0);
 
@@ -277,16 +680,7 @@ JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetParameter(
   return JNI_FALSE;
 }
 
-JNIEXPORT jint
-JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeGetParameter(
-    JNIEnv *env, jobject object, jint parameter, jint current) {
-  if (DEBUG) LOGV("%s(parameter=%d, pitch=%d)", __FUNCTION__, parameter, current);
-  return espeak_GetParameter((espeak_PARAMETER)parameter, (int)current);
-}
-
-JNIEXPORT jboolean
-JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetPunctuationCharacters(
-    JNIEnv *env, jobject object, jstring characters) {
+static jboolean SetPunctuationCharacters(JNIEnv *env, jstring characters) {
   if (DEBUG) LOGV("%s)", __FUNCTION__);
 
   wchar_t *list = unicode_string(env, characters);
@@ -302,20 +696,81 @@ JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetPunctuationCharacters
   return JNI_FALSE;
 }
 
+/* Applies the changes to the voice and parameters in a single call. Null
+ * arguments, and parameters set to MIN_INT, are left unchanged.
+ */
+JNIEXPORT jboolean
+JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeApplyState(
+    JNIEnv *env, jobject object, jstring voiceName, jstring language, jint gender, jint age,
+    jintArray parameters, jstring punctuationCharacters) {
+  jboolean result = JNI_TRUE;
+
+  if (voiceName) {
+    result &= SetVoiceByName(env, voiceName);
+  } else if (language) {
+    result &= SetVoiceByProperties(env, language, gender, age);
+  }
+
+  if (parameters) {
+    jint values[MAX_PARAMETERS];
+    jsize count = (*env)->GetArrayLength(env, parameters);
+    if (count > MAX_PARAMETERS) {
+      count = MAX_PARAMETERS;
+    }
+    (*env)->GetIntArrayRegion(env, parameters, 0, count, values);
+    for (jsize parameter = 0; parameter < count; ++parameter) {
+      if (values[parameter] != INT_MIN) {
+        result &= SetParameter(parameter, values[parameter]);
+      }
+    }
+  }
+
+  if (punctuationCharacters) {
+    result &= SetPunctuationCharacters(env, punctuationCharacters);
+  }
+
+  return result;
+}
+
+JNIEXPORT jboolean
+JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetDictionaryCacheSize(
+    JNIEnv *env, jobject object, jint size) {
+  if (DEBUG) LOGV("%s(size=%d)", __FUNCTION__, size);
+  return espeak_ng_SetDictionaryCacheSize(size) == ENS_OK ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jint
+JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeGetParameter(
+    JNIEnv *env, jobject object, jint parameter, jint current) {
+  if (DEBUG) LOGV("%s(parameter=%d, pitch=%d)", __FUNCTION__, parameter, current);
+  return espeak_GetParameter((espeak_PARAMETER)parameter, (int)current);
+}
+
 JNIEXPORT jboolean
 JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSynthesize(
-    JNIEnv *env, jobject object, jstring text, jboolean isSsml) {
-  if (DEBUG) LOGV("%s", __FUNCTION__);
+    JNIEnv *env, jobject object, jstring text, jboolean isSsml, jint initialBufferLength,
+    jboolean endPause) {
+  if (DEBUG) LOGV("%s(initialBufferLength=%d)", __FUNCTION__, initialBufferLength);
   const char *c_text = text ? (*env)->GetStringUTFChars(env, text, NULL) : NULL;
   unsigned int unique_identifier;
+  unsigned int flags = isSsml ? espeakCHARS_UTF8 | espeakSSML // UTF-8 encoded SSML
+                              : espeakCHARS_UTF8;             // UTF-8 encoded text
+  if (endPause) {
+    flags |= espeakENDPAUSE; // keep the pause after the last sentence
+  }
+  espeak_ERROR result;
 
-  espeak_SetSynthCallback(SynthCallback);
-  const espeak_ERROR result = espeak_Synth(c_text, strlen(c_text), 0,  // position
-               POS_CHARACTER, 0, // end position (0 means no end position)
-               isSsml ? espeakCHARS_UTF8 | espeakSSML // UTF-8 encoded SSML
-                      : espeakCHARS_UTF8,             // UTF-8 encoded text
-               &unique_identifier, object);
-  espeak_Synchronize();
+  espeak_ng_SetInitialBufferLength(initialBufferLength);
+  ResetEvents();
+  if (pipeline.enabled) {
+    result = PipelineSynthesize(env, object, c_text, flags);
+  } else {
+    espeak_SetSynthCallback(SynthCallback);
+    result = espeak_Synth(c_text, strlen(c_text), 0,  // position
+                 POS_CHARACTER, 0, // end position (0 means no end position)
+                 flags, &unique_identifier, object);
+    espeak_Synchronize();
+  }
 
   if (c_text) (*env)->ReleaseStringUTFChars(env, text, c_text);
 
@@ -329,12 +784,333 @@ JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSynthesize(
   return JNI_TRUE;
 }
 
+/* Synthesizes the text into the file descriptor from its current position,
+ * as a WAV file or as raw 16-bit PCM. The WAV header is written with an
+ * unknown length first, and then with the length of the audio if the file
+ * can be written at that position again, which a pipe or socket cannot.
+ *
+ * Returns the number of samples written, or -1 if the file could not be
+ * written to or eSpeak could not synthesize the text.
+ */
+JNIEXPORT jlong
+JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeRenderToFile(
+    JNIEnv *env, jobject object, jstring text, jboolean isSsml, jint fd, jint sampleRate, jboolean wav) {
+  if (DEBUG) LOGV("%s(fd=%d, wav=%d)", __FUNCTION__, fd, wav);
+  unsigned char header[44];
+  const off_t start = wav ? lseek(fd, 0, SEEK_CUR) : -1;
+  if (wav) {
+    WavHeader(header, sampleRate, UINT32_MAX);
+    if (!WriteAll(fd, header, sizeof(header))) return -1;
+  }
+
+  const char *c_text = (*env)->GetStringUTFChars(env, text, NULL);
+  unsigned int unique_identifier;
+  const unsigned int flags = isSsml ? espeakCHARS_UTF8 | espeakSSML : espeakCHARS_UTF8;
+
+  render.fd = fd;
+  render.error = 0;
+  render.aborted = 0;
+  render.samples = 0;
+  espeak_ng_SetInitialBufferLength(0);
+  espeak_SetSynthCallback(RenderSynthCallback);
+  const espeak_ERROR result = espeak_Synth(c_text, strlen(c_text), 0,  // position
+                                           POS_CHARACTER, 0, // end position (0 means no end position)
+                                           flags, &unique_identifier, NULL);
+  espeak_Synchronize();
+  render.fd = -1;
+  (*env)->ReleaseStringUTFChars(env, text, c_text);
+
+  if (result != EE_OK) {
+    LOGE("espeak_Synth: error %d.", result);
+    return -1;
+  }
+  if (render.error != 0) {
+    LOGE("nativeRenderToFile: %s", strerror(render.error));
+    return -1;
+  }
+
+  if (wav && start >= 0) {
+    const uint64_t data_size = (uint64_t)render.samples * 2;
+    WavHeader(header, sampleRate, data_size > UINT32_MAX ? UINT32_MAX : (uint32_t)data_size);
+    ssize_t written;
+    do {
+      written = pwrite(fd, header, sizeof(header), start);
+    } while (written < 0 && errno == EINTR);
+    if (written != (ssize_t)sizeof(header)) {
+      LOGE("nativeRenderToFile: unable to write the WAV header: %s",
+           written < 0 ? strerror(errno) : "short write");
+      return -1;
+    }
+  }
+  return render.samples;
+}
+
+/* Callback from espeak when streaming. This writes the audio into the shared
+ * ring, waiting for the reader when the ring is full, and tells Java the new
+ * write position.
+ */
+static int StreamSynthCallback(short *audioData, int numSamples,
+                               espeak_EVENT *events) {
+  const char *data = (const char *)audioData;
+  size_t remaining = audioData != NULL && numSamples > 0 ? numSamples * 2 : 0;
+  while (remaining > 0) {
+    if (stream.aborted)
+      return SYNTH_ABORT;
+
+    const size_t written = shared_audio_ring_write(&stream.ring, data, remaining);
+    if (written == 0) {
+      // The reader wakes this when it reads, and nativeStop when it aborts.
+      shared_audio_ring_wait_for_space(&stream.ring, &stream.aborted);
+      continue;
+    }
+    data += written;
+    remaining -= written;
+
+    JNIEnv *env = getJniEnv();
+    const jboolean more = (*env)->CallBooleanMethod(env, (jobject)events->user_data, METHOD_nativeStreamCallback,
+                                                    (jlong)shared_audio_ring_write_position(&stream.ring));
+    if (!more || (*env)->ExceptionCheck(env)) {
+      stream.aborted = 1;
+      return SYNTH_ABORT;
+    }
+  }
+  return stream.aborted ? SYNTH_ABORT : SYNTH_CONTINUE;
+}
+
+/* Synthesizes the text into the shared audio ring in the direct buffer,
+ * after the audio already in it. This does not use the pipeline, so the
+ * audio is only copied from eSpeak into the ring.
+ *
+ * Returns false if the memory is not an audio ring, or eSpeak could not
+ * synthesize the text.
+ */
+JNIEXPORT jboolean
+JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeStream(
+    JNIEnv *env, jobject object, jstring text, jboolean isSsml, jobject memory,
+    jint initialBufferLength, jboolean endPause) {
+  if (DEBUG) LOGV("%s(initialBufferLength=%d)", __FUNCTION__, initialBufferLength);
+  pthread_mutex_lock(&stream.lock);
+  stream.attached = shared_audio_ring_attach(&stream.ring, (*env)->GetDirectBufferAddress(env, memory),
+                                             (size_t)(*env)->GetDirectBufferCapacity(env, memory)) == 0;
+  pthread_mutex_unlock(&stream.lock);
+  if (!stream.attached) {
+    LOGE("nativeStream: the memory is not an audio ring.");
+    return JNI_FALSE;
+  }
+
+  const char *c_text = (*env)->GetStringUTFChars(env, text, NULL);
+  unsigned int unique_identifier;
+  unsigned int flags = isSsml ? espeakCHARS_UTF8 | espeakSSML : espeakCHARS_UTF8;
+  if (endPause) {
+    flags |= espeakENDPAUSE; // keep the pause after the last sentence
+  }
+
+  stream.aborted = 0;
+  espeak_ng_SetInitialBufferLength(initialBufferLength);
+  espeak_SetSynthCallback(StreamSynthCallback);
+  const espeak_ERROR result = espeak_Synth(c_text, strlen(c_text), 0,  // position
+                                           POS_CHARACTER, 0, // end position (0 means no end position)
+                                           flags, &unique_identifier, object);
+  espeak_Synchronize();
+  if (stream.aborted) {
+    espeak_Cancel(); // restore any parameters changed by SSML markup
+  }
+  (*env)->ReleaseStringUTFChars(env, text, c_text);
+
+  // The memory can be unmapped once this returns, so it is no longer woken.
+  pthread_mutex_lock(&stream.lock);
+  stream.attached = 0;
+  pthread_mutex_unlock(&stream.lock);
+
+  if (result != EE_OK) {
+    LOGE("espeak_Synth: error %d.", result);
+    return JNI_FALSE;
+  }
+  return JNI_TRUE;
+}
+
+/* Appends the phonemes of each clause of the text to the buffer, separated
+ * by spaces. Returns the length of the phonemes, or -1 if out of memory.
+ */
+static int TextToPhonemes(const char *text, int phonememode, char **buffer, size_t *capacity) {
+  const void *ptr = text;
+  size_t length = 0;
+  while (ptr != NULL) {
+    const char *phonemes = espeak_TextToPhonemes(&ptr, espeakCHARS_UTF8, phonememode);
+    if (phonemes == NULL) break;
+
+    const size_t phonemes_length = strlen(phonemes);
+    if (phonemes_length == 0) continue;
+
+    if (length + phonemes_length + 2 > *capacity) {
+      const size_t new_capacity = (length + phonemes_length + 2) * 2;
+      char *new_buffer = realloc(*buffer, new_capacity);
+      if (new_buffer == NULL) return -1;
+      *buffer = new_buffer;
+      *capacity = new_capacity;
+    }
+    if (length > 0) (*buffer)[length++] = ' ';
+    memcpy(*buffer + length, phonemes, phonemes_length);
+    length += phonemes_length;
+  }
+  if (*buffer) (*buffer)[length] = 0;
+  return (int)length;
+}
+
+JNIEXPORT jobjectArray
+JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeTextToPhonemes(
+    JNIEnv *env, jobject object, jobjectArray texts, jboolean ipa) {
+  if (DEBUG) LOGV("%s", __FUNCTION__);
+
+  const jsize count = (*env)->GetArrayLength(env, texts);
+  jobjectArray results = (jobjectArray) (*env)->NewObjectArray(
+      env, count, (*env)->FindClass(env, "java/lang/String"), NULL);
+  const int phonememode = ipa ? espeakPHONEMES_IPA : 0;
+  char *buffer = NULL;
+  size_t capacity = 0;
+
+  for (jsize i = 0; i < count; i++) {
+    jstring text = (jstring) (*env)->GetObjectArrayElement(env, texts, i);
+    if (text == NULL) continue;
+
+    const char *c_text = (*env)->GetStringUTFChars(env, text, NULL);
+    const int length = TextToPhonemes(c_text, phonememode, &buffer, &capacity);
+    (*env)->ReleaseStringUTFChars(env, text, c_text);
+    (*env)->DeleteLocalRef(env, text);
+    if (length < 0) {
+      LOGE("nativeTextToPhonemes: out of memory.");
+      break;
+    }
+
+    jstring phonemes = (*env)->NewStringUTF(env, length == 0 ? "" : buffer);
+    (*env)->SetObjectArrayElement(env, results, i, phonemes);
+    (*env)->DeleteLocalRef(env, phonemes);
+  }
+
+  free(buffer);
+  return results;
+}
+
 JNIEXPORT jboolean
 JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeStop(
     JNIEnv *env, jobject object) {
   if (DEBUG) LOGV("%s", __FUNCTION__);
-  espeak_Cancel();
+  render.aborted = 1;
+  stream.aborted = 1;
+  pthread_mutex_lock(&stream.lock);
+  if (stream.attached) {
+    shared_audio_ring_wake(&stream.ring);
+  }
+  pthread_mutex_unlock(&stream.lock);
+  if (pipeline.enabled) {
+    // The synthesis thread cancels once it sees that the ring is aborted.
+    audio_ring_abort(&pipeline.ring);
+  } else {
+    espeak_Cancel();
+  }
+
+  return JNI_TRUE;
+}
+
+JNIEXPORT jboolean
+JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetAudioBuffers(
+    JNIEnv *env, jobject object, jobjectArray buffers) {
+  if (DEBUG) LOGV("%s", __FUNCTION__);
+
+  if (audio_buffers) {
+    (*env)->DeleteGlobalRef(env, audio_buffers);
+    audio_buffers = NULL;
+  }
+  audio_buffer_count = 0;
+  audio_buffer_index = 0;
+
+  if (buffers == NULL) {
+    return JNI_TRUE;
+  }
+
+  const jsize count = (*env)->GetArrayLength(env, buffers);
+  if (count > MAX_AUDIO_BUFFERS) {
+    LOGE("nativeSetAudioBuffers: too many buffers (%d).", count);
+    return JNI_FALSE;
+  }
+
+  jint capacity = 0;
+  for (jsize i = 0; i < count; i++) {
+    jobject buffer = (*env)->GetObjectArrayElement(env, buffers, i);
+    audio_buffer_data[i] = (*env)->GetDirectBufferAddress(env, buffer);
+    const jlong buffer_capacity = (*env)->GetDirectBufferCapacity(env, buffer);
+    (*env)->DeleteLocalRef(env, buffer);
+
+    if (audio_buffer_data[i] == NULL || buffer_capacity < 2) {
+      LOGE("nativeSetAudioBuffers: buffer %d is not a direct buffer.", i);
+      return JNI_FALSE;
+    }
+    if (i == 0 || buffer_capacity < capacity) {
+      capacity = (jint)buffer_capacity;
+    }
+  }
+
+  audio_buffers = (jobjectArray)(*env)->NewGlobalRef(env, buffers);
+  audio_buffer_capacity = capacity & ~1; // whole 16-bit samples
+  audio_buffer_count = count;
+  return JNI_TRUE;
+}
+
+JNIEXPORT jboolean
+JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetEventBuffer(
+    JNIEnv *env, jobject object, jintArray buffer) {
+  if (DEBUG) LOGV("%s", __FUNCTION__);
+
+  pthread_mutex_lock(&event_lock);
+  if (event_queue.buffer) {
+    (*env)->DeleteGlobalRef(env, event_queue.buffer);
+    event_queue.buffer = NULL;
+  }
+  event_queue.capacity = 0;
+  event_queue.count = 0;
 
+  if (buffer) {
+    event_queue.buffer = (jintArray)(*env)->NewGlobalRef(env, buffer);
+    event_queue.capacity = (*env)->GetArrayLength(env, buffer) / EVENT_SIZE;
+  }
+  pthread_mutex_unlock(&event_lock);
+  return JNI_TRUE;
+}
+
+JNIEXPORT jboolean
+JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetPhonemeEvents(
+    JNIEnv *env, jobject object, jboolean enable, jboolean ipa) {
+  if (DEBUG) LOGV("%s(enable=%d, ipa=%d)", __FUNCTION__, enable, ipa);
+  return espeak_ng_SetPhonemeEvents(enable, ipa) == ENS_OK ? JNI_TRUE : JNI_FALSE;
+}
+
+JNIEXPORT jboolean
+JNICALL Java_com_reecedunn_espeak_SpeechSynthesis_nativeSetPipelineSize(
+    JNIEnv *env, jobject object, jint size) {
+  if (DEBUG) LOGV("%s(size=%d)", __FUNCTION__, size);
+
+  if (pipeline.enabled) {
+    if (pipeline.ring.capacity == (size_t)size) {
+      return JNI_TRUE;
+    }
+    PipelineStop();
+    audio_ring_destroy(&pipeline.ring);
+    pipeline.enabled = 0;
+  }
+
+  if (size <= 0) {
+    return JNI_TRUE;
+  }
+
+  if (audio_ring_init(&pipeline.ring, (size_t)size) != 0) {
+    LOGE("nativeSetPipelineSize: out of memory.");
+    return JNI_FALSE;
+  }
+  if (!PipelineStart()) {
+    audio_ring_destroy(&pipeline.ring);
+    return JNI_FALSE;
+  }
+  pipeline.enabled = 1;
   return JNI_TRUE;
 }
 
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+#include <limits.h>
+#include <string.h>
+#include <unistd.h>
+#include <linux/futex.h>
+#include <sys/syscall.h>
+
+#include <shared_audio_ring.h>
+
+_Static_assert(sizeof(shared_audio_ring_header) <= SHARED_AUDIO_RING_HEADER_SIZE,
+               "The positions do not fit in the header.");
+
+// The futex is in memory shared with another process, so FUTEX_PRIVATE_FLAG
+// is not used.
+static void futex_wait(_Atomic uint32_t *word, uint32_t value)
+{
+  syscall(SYS_futex, word, FUTEX_WAIT, value, NULL, NULL, 0);
+}
+
+static void futex_wake(_Atomic uint32_t *word)
+{
+  syscall(SYS_futex, word, FUTEX_WAKE, INT_MAX, NULL, NULL, 0);
+}
+
+int shared_audio_ring_attach(shared_audio_ring *ring, void *memory, size_t size)
+{
+  if (memory == NULL || size <= SHARED_AUDIO_RING_HEADER_SIZE)
+    return -1;
+
+  ring->header = (shared_audio_ring_header *)memory;
+  // An atomic implemented with a lock in this process is not atomic for the other one.
+  if (!atomic_is_lock_free(&ring->header->write_position))
+    return -1;
+
+  ring->data = (char *)memory + SHARED_AUDIO_RING_HEADER_SIZE;
+  ring->capacity = size - SHARED_AUDIO_RING_HEADER_SIZE;
+  return 0;
+}
+
+uint64_t shared_audio_ring_write_position(shared_audio_ring *ring)
+{
+  return atomic_load_explicit(&ring->header->write_position, memory_order_acquire);
+}
+
+uint64_t shared_audio_ring_read_position(shared_audio_ring *ring)
+{
+  return atomic_load_explicit(&ring->header->read_position, memory_order_acquire);
+}
+
+size_t shared_audio_ring_write(shared_audio_ring *ring, const void *data, size_t length)
+{
+  // The write position is only changed by this side, and the data is only
+  // overwritten once the reader has released it with the read position.
+  const uint64_t position = atomic_load_explicit(&ring->header->write_position, memory_order_relaxed);
+  const size_t space = ring->capacity - (size_t)(position - shared_audio_ring_read_position(ring));
+  const size_t count = length < space ? length : space;
+  if (count == 0)
+    return 0;
+
+  const size_t offset = (size_t)(position % ring->capacity);
+  if (count > ring->capacity - offset) { // the data wraps around the end of the ring
+    const size_t first = ring->capacity - offset;
+    memcpy(ring->data + offset, data, first);
+    memcpy(ring->data, (const char *)data + first, count - first);
+  } else
+    memcpy(ring->data + offset, data, count);
+  atomic_store_explicit(&ring->header->write_position, position + count, memory_order_release);
+  return count;
+}
+
+size_t shared_audio_ring_read(shared_audio_ring *ring, void *data, size_t length)
+{
+  const uint64_t position = atomic_load_explicit(&ring->header->read_position, memory_order_relaxed);
+  const size_t used = (size_t)(shared_audio_ring_write_position(ring) - position);
+  const size_t count = length < used ? length : used;
+  if (count == 0)
+    return 0;
+
+  const size_t offset = (size_t)(position % ring->capacity);
+  if (count > ring->capacity - offset) { // the data wraps around the end of the ring
+    const size_t first = ring->capacity - offset;
+    memcpy(data, ring->data + offset, first);
+    memcpy((char *)data + first, ring->data, count - first);
+  } else
+    memcpy(data, ring->data + offset, count);
+  // This is sequentially consistent with the writer setting writer_waiting
+  // before it checks the read position, so either the writer sees the space
+  // or the reader sees that it is waiting.
+  atomic_store(&ring->header->read_position, position + count);
+  shared_audio_ring_wake(ring);
+  return count;
+}
+
+int shared_audio_ring_wait_for_space(shared_audio_ring *ring, atomic_int *aborted)
+{
+  shared_audio_ring_header *header = ring->header;
+  for (;;) {
+    atomic_store(&header->writer_waiting, 1);
+    if (atomic_load(aborted)) {
+      atomic_store(&header->writer_waiting, 0);
+      return -1;
+    }
+    if (atomic_load(&header->write_position) - atomic_load(&header->read_position) < ring->capacity) {
+      atomic_store(&header->writer_waiting, 0);
+      return 0;
+    }
+    // This returns straight away if the reader has cleared writer_waiting.
+    futex_wait(&header->writer_waiting, 1);
+  }
+}
+
+void shared_audio_ring_wake(shared_audio_ring *ring)
+{
+  if (atomic_exchange(&ring->header->writer_waiting, 0))
+    futex_wake(&ring->header->writer_waiting);
+}
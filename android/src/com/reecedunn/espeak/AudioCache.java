@@ -0,0 +1,456 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of the audio of short utterances, such as the labels and letters
+ * that a screen reader speaks again and again.
+ *
+ * The audio is kept in memory, with the least recently used entries removed
+ * when the cache is full. The entries can also be kept on disk, where they
+ * are memory mapped when they are read, so they are kept when the service is
+ * restarted.
+ *
+ * An entry is keyed by the text and every setting that changes the audio. The
+ * cache is cleared when the version of the voice data changes.
+ *
+ * The word events of the audio are kept with it, so that the words can be
+ * reported when the audio is used. The texts of an entry can differ in their
+ * whitespace, so the events are kept relative to the text with its whitespace
+ * collapsed, and are returned relative to the text they are requested for.
+ */
+public class AudioCache {
+    /** The longest text that is cached, in characters. */
+    public static final int MAX_TEXT_LENGTH = 100;
+
+    /** The most audio that is cached for one utterance, in bytes. */
+    public static final int MAX_ENTRY_SIZE = 256 * 1024;
+
+    private static final String VERSION_FILE_NAME = "version";
+    private static final String ENTRY_SUFFIX = ".entry";
+
+    // Changed when the format of the entries on disk changes, so that the
+    // entries in the old format are removed.
+    private static final String ENTRY_FORMAT = "2";
+
+    /**
+     * The audio of a text, and the events in it.
+     */
+    public static class Entry {
+        public final ByteBuffer audio;
+
+        /**
+         * The events, as {@link SpeechSynthesis#EVENT_SIZE} ints for each event,
+         * relative to the text the entry was requested for.
+         */
+        public final int[] events;
+
+        public Entry(ByteBuffer audio, int[] events) {
+            this.audio = audio;
+            this.events = events;
+        }
+    }
+
+    private static class CachedAudio {
+        public final byte[] audio;
+        public final int[] events;
+
+        public CachedAudio(byte[] audio, int[] events) {
+            this.audio = audio;
+            this.events = events;
+        }
+
+        public int getSize() {
+            return audio.length + events.length * 4;
+        }
+    }
+
+    private final LinkedHashMap<String, CachedAudio> mEntries = new LinkedHashMap<String, CachedAudio>(16, 0.75f, true);
+    private final int mMaxSize;
+    private int mSize = 0;
+
+    private final File mDirectory;
+    private final long mMaxDiskSize;
+    private long mDiskSize = 0;
+
+    private String mDataVersion = null;
+
+    private long mHits = 0;
+    private long mMisses = 0;
+    private long mBytesSaved = 0;
+
+    /**
+     * @param maxSize The memory used for the audio, in bytes.
+     * @param directory The directory to keep the audio in on disk, or null
+     *        to only keep the audio in memory.
+     * @param maxDiskSize The disk space used for the audio, in bytes.
+     */
+    public AudioCache(int maxSize, File directory, long maxDiskSize) {
+        mMaxSize = maxSize;
+        mDirectory = directory;
+        mMaxDiskSize = maxDiskSize;
+    }
+
+    /**
+     * Returns the key for the audio of the text with the given settings.
+     *
+     * @return The key, or null if the text is not cached.
+     */
+    public static String getKey(String text, Voice voice, VoiceVariant variant, int rate, int pitch, int pitchRange,
+                                int volume, int punctuationLevel, String punctuationCharacters, int sampleRate) {
+        final String normalized = normalize(text);
+        if (normalized.isEmpty() || normalized.length() > MAX_TEXT_LENGTH || normalized.startsWith("<")) {
+            return null;
+        }
+        return normalized + '\0' + voice.name + '\0' + voice.identifier + '\0' + variant + '\0' +
+                rate + '\0' + pitch + '\0' + pitchRange + '\0' + volume + '\0' +
+                punctuationLevel + '\0' + (punctuationCharacters == null ? "" : punctuationCharacters) + '\0' +
+                sampleRate;
+    }
+
+    /**
+     * Returns the offsets in the text of the characters of the text with the
+     * whitespace at the start and end removed and the other whitespace
+     * collapsed to a single space. The offset after the last of these
+     * characters is at the end of the array.
+     */
+    private static int[] getTextOffsets(String text) {
+        final int[] offsets = new int[text.length() + 1];
+        int length = 0;
+        int space = -1;
+        int end = 0;
+        for (int i = 0; i < text.length(); ++i) {
+            if (text.charAt(i) <= ' ') {
+                if (space == -1) {
+                    space = i;
+                }
+                continue;
+            }
+            if (space != -1 && length > 0) {
+                offsets[length++] = space;
+            }
+            space = -1;
+            offsets[length++] = i;
+            end = i + 1;
+        }
+        offsets[length] = end;
+        return Arrays.copyOf(offsets, length + 1);
+    }
+
+    private static String normalize(String text) {
+        final int[] offsets = getTextOffsets(text);
+        final StringBuilder normalized = new StringBuilder(offsets.length - 1);
+        for (int i = 0; i < offsets.length - 1; ++i) {
+            final char c = text.charAt(offsets[i]);
+            normalized.append(c <= ' ' ? ' ' : c);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Moves the text ranges of the events from the text to the normalized
+     * text, or back from the normalized text to the text.
+     */
+    private static int[] moveEvents(int[] events, String text, boolean toNormalized) {
+        final int[] offsets = getTextOffsets(text);
+        final int length = offsets.length - 1;
+        final int[] moved = events.clone();
+        for (int i = 0; i < moved.length; i += SpeechSynthesis.EVENT_SIZE) {
+            final int start = events[i + SpeechSynthesis.EVENT_TEXT_START];
+            final int end = start + events[i + SpeechSynthesis.EVENT_TEXT_LENGTH];
+            int movedStart;
+            int movedEnd;
+            if (toNormalized) {
+                movedStart = 0;
+                while (movedStart < length && offsets[movedStart] < start) {
+                    ++movedStart;
+                }
+                movedEnd = movedStart;
+                while (movedEnd < length && offsets[movedEnd] < end) {
+                    ++movedEnd;
+                }
+            } else {
+                movedStart = offsets[Math.min(start, length)];
+                movedEnd = end <= 0 ? offsets[0] : offsets[Math.min(end, length) - 1] + 1;
+            }
+            moved[i + SpeechSynthesis.EVENT_TEXT_START] = movedStart;
+            moved[i + SpeechSynthesis.EVENT_TEXT_LENGTH] = Math.max(movedEnd - movedStart, 0);
+        }
+        return moved;
+    }
+
+    /**
+     * Clears the cache if the voice data has changed since the audio was
+     * cached, including the audio on disk from when the service last ran.
+     *
+     * @param version Identifies the installed voice data.
+     */
+    public synchronized void setDataVersion(String version) {
+        if (version.equals(mDataVersion)) {
+            return;
+        }
+        mDataVersion = version;
+        mEntries.clear();
+        mSize = 0;
+
+        if (mDirectory == null) {
+            return;
+        }
+        final File versionFile = new File(mDirectory, VERSION_FILE_NAME);
+        try {
+            if (versionFile.exists() && FileUtils.read(versionFile).equals(ENTRY_FORMAT + ':' + version)) {
+                mDiskSize = 0;
+                for (File file : listEntries()) {
+                    mDiskSize += file.length();
+                }
+                return;
+            }
+        } catch (IOException e) {
+            // The audio on disk is removed below.
+        }
+
+        FileUtils.rmdir(mDirectory);
+        mDirectory.mkdirs();
+        mDiskSize = 0;
+        try {
+            FileUtils.write(versionFile, ENTRY_FORMAT + ':' + version);
+        } catch (IOException e) {
+            // The audio is written again the next time the service runs.
+        }
+    }
+
+    /**
+     * @param key The key of the text, from {@link #getKey}.
+     * @param text The text the audio is for.
+     * @return The audio and events, or null if they are not cached.
+     */
+    public synchronized Entry get(String key, String text) {
+        CachedAudio entry = mEntries.get(key);
+        if (entry == null && mDirectory != null && mDataVersion != null) {
+            entry = readEntry(getEntryFile(key));
+            if (entry != null) {
+                putEntry(key, entry);
+            }
+        }
+
+        if (entry == null) {
+            ++mMisses;
+            return null;
+        }
+        ++mHits;
+        mBytesSaved += entry.audio.length;
+        return new Entry(ByteBuffer.wrap(entry.audio).asReadOnlyBuffer(), moveEvents(entry.events, text, false));
+    }
+
+    /**
+     * @param key The key of the text, from {@link #getKey}.
+     * @param text The text the audio is for.
+     * @param audio The audio.
+     * @param events The events in the audio, as {@link SpeechSynthesis#EVENT_SIZE}
+     *        ints for each event, relative to the text.
+     */
+    public synchronized void put(String key, String text, byte[] audio, int[] events) {
+        if (audio.length == 0 || audio.length > MAX_ENTRY_SIZE) {
+            return;
+        }
+        final CachedAudio entry = new CachedAudio(audio, moveEvents(events, text, true));
+        putEntry(key, entry);
+        if (mDirectory != null && mDataVersion != null) {
+            writeEntry(getEntryFile(key), entry);
+        }
+    }
+
+    private void putEntry(String key, CachedAudio entry) {
+        final CachedAudio previous = mEntries.put(key, entry);
+        if (previous != null) {
+            mSize -= previous.getSize();
+        }
+        mSize += entry.getSize();
+
+        final Iterator<Map.Entry<String, CachedAudio>> entries = mEntries.entrySet().iterator();
+        while (mSize > mMaxSize && entries.hasNext()) {
+            mSize -= entries.next().getValue().getSize();
+            entries.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+        mSize = 0;
+        if (mDirectory != null) {
+            for (File file : listEntries()) {
+                file.delete();
+            }
+            mDiskSize = 0;
+        }
+    }
+
+    /**
+     * @return The number of requests that were answered from the cache.
+     */
+    public synchronized long getHits() {
+        return mHits;
+    }
+
+    public synchronized long getMisses() {
+        return mMisses;
+    }
+
+    /**
+     * @return The proportion of requests that were answered from the cache, from 0 to 1.
+     */
+    public synchronized float getHitRate() {
+        final long requests = mHits + mMisses;
+        return requests == 0 ? 0 : (float)mHits / requests;
+    }
+
+    /**
+     * @return The number of bytes of audio that did not need to be synthesized.
+     */
+    public synchronized long getBytesSaved() {
+        return mBytesSaved;
+    }
+
+    /**
+     * @return The memory used by the cached audio and events, in bytes.
+     */
+    public synchronized int getSize() {
+        return mSize;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return mHits + " hits, " + mMisses + " misses (" + Math.round(getHitRate() * 100) + "%), " +
+                mBytesSaved + " bytes saved, " + mEntries.size() + " entries in " + mSize + " bytes";
+    }
+
+    private File getEntryFile(String key) {
+        final MessageDigest digest = DataManifest.createDigest();
+        try {
+            return new File(mDirectory, DataManifest.toHex(digest.digest(key.getBytes("UTF-8"))) + ENTRY_SUFFIX);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private File[] listEntries() {
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(ENTRY_SUFFIX)) {
+                files[count++] = file;
+            }
+        }
+        return Arrays.copyOf(files, count);
+    }
+
+    /**
+     * Reads an entry from disk. The file holds the number of events, the
+     * events and then the audio.
+     */
+    private static CachedAudio readEntry(File file) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final FileInputStream stream = new FileInputStream(file);
+            try {
+                final FileChannel channel = stream.getChannel();
+                final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                final int count = mapped.remaining() < 4 ? -1 : mapped.getInt();
+                if (count < 0 || count > (mapped.remaining() / 4) / SpeechSynthesis.EVENT_SIZE) {
+                    throw new IOException("Invalid audio cache entry: " + file);
+                }
+                final int[] events = new int[count * SpeechSynthesis.EVENT_SIZE];
+                mapped.asIntBuffer().get(events);
+                mapped.position(mapped.position() + events.length * 4);
+                final byte[] audio = new byte[mapped.remaining()];
+                mapped.get(audio);
+                // The file was used, so it is removed after the other files.
+                file.setLastModified(System.currentTimeMillis());
+                return new CachedAudio(audio, events);
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Writes the audio to disk, removing the least recently used files if the
+     * disk cache is full. The files are not synced, as a file that is lost is
+     * synthesized again.
+     */
+    private void writeEntry(File file, CachedAudio entry) {
+        if (file.exists()) {
+            return;
+        }
+        final ByteBuffer data = ByteBuffer.allocate(4 + entry.getSize());
+        data.putInt(entry.events.length / SpeechSynthesis.EVENT_SIZE);
+        data.asIntBuffer().put(entry.events);
+        data.position(data.position() + entry.events.length * 4);
+        data.put(entry.audio);
+        final byte[] content = data.array();
+
+        if (mDiskSize + content.length > mMaxDiskSize) {
+            final File[] files = listEntries();
+            Arrays.sort(files, new Comparator<File>() {
+                @Override
+                public int compare(File a, File b) {
+                    return Long.compare(a.lastModified(), b.lastModified());
+                }
+            });
+            for (File old : files) {
+                if (mDiskSize + content.length <= mMaxDiskSize) {
+                    break;
+                }
+                mDiskSize -= old.length();
+                old.delete();
+            }
+        }
+
+        final File temp = new File(file.getPath() + ".tmp");
+        try {
+            FileUtils.write(temp, content);
+            if (temp.renameTo(file)) {
+                mDiskSize += content.length;
+            } else {
+                temp.delete();
+            }
+        } catch (IOException e) {
+            temp.delete();
+        }
+    }
+}
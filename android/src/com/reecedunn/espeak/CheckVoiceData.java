@@ -34,6 +34,7 @@ import android.util.Log;
 import com.reecedunn.espeak.SpeechSynthesis.SynthReadyCallback;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
@@ -51,17 +52,105 @@ public class CheckVoiceData extends Activity {
         "en_dict",
     };
 
+    /** The file naming the data tree that is currently installed. */
+    private static final String CURRENT_DATA_TREE = "current";
+
+    private static final String DATA_TREE_PREFIX = "data-";
+
+    /**
+     * Each version of the data is installed into its own tree in the voices
+     * directory. The current tree is named by a pointer file that is replaced
+     * atomically once a new tree is complete, so the data is never missing
+     * while it is being upgraded. The data from before trees were used is in
+     * the voices directory itself.
+     *
+     * When the data can be read from the APK, the data path is the directory
+     * of the {@link DataArchive} and nothing is extracted.
+     */
     public static File getDataPath(Context context) {
-        return new File(context.getDir("voices", MODE_PRIVATE), "espeak-ng-data");
+        return new File(getCurrentDataTree(context), "espeak-ng-data");
+    }
+
+    private static File getCurrentDataTree(Context context) {
+        final DataArchive archive = DataArchive.get(context);
+        if (archive != null) {
+            return archive.getDirectory();
+        }
+
+        final File voicesPath = context.getDir("voices", MODE_PRIVATE);
+        try {
+            final File tree = new File(voicesPath, FileUtils.read(new File(voicesPath, CURRENT_DATA_TREE)).trim());
+            if (tree.isDirectory()) {
+                return tree;
+            }
+        } catch (IOException e) {
+            // No data tree has been installed.
+        }
+        return voicesPath;
+    }
+
+    /**
+     * @param version The SHA-256 of the data archive.
+     * @return The tree to install that version of the data into.
+     */
+    public static File getDataTree(Context context, String version) {
+        final String name = version.trim();
+        return new File(context.getDir("voices", MODE_PRIVATE), DATA_TREE_PREFIX + name.substring(0, Math.min(name.length(), 16)));
+    }
+
+    /**
+     * Makes the tree the current data tree. The files in the tree must have
+     * been synced to disk before it is made current.
+     */
+    public static void setCurrentDataTree(Context context, File tree) throws IOException {
+        final File voicesPath = context.getDir("voices", MODE_PRIVATE);
+        FileUtils.replace(new File(voicesPath, CURRENT_DATA_TREE), tree.getName().getBytes());
+    }
+
+    /**
+     * Removes the data that is not in the current data tree. This must only
+     * be called when no engine is using the old data. The tree for the data
+     * in the APK is kept, as it may be being installed.
+     */
+    public static void removeOldDataTrees(Context context) {
+        final File voicesPath = context.getDir("voices", MODE_PRIVATE);
+        final File current = getCurrentDataTree(context);
+        if (current.equals(voicesPath)) {
+            return;
+        }
+
+        final String version = getVersion(context);
+        final File installing = version == null ? null : getDataTree(context, version);
+
+        final File[] files = voicesPath.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            final boolean isDataTree = file.getName().startsWith(DATA_TREE_PREFIX) || file.getName().equals(DataArchive.DIRECTORY_NAME);
+            if (isDataTree && !file.equals(current) && !file.equals(installing)) {
+                Log.i(TAG, "Removing old data tree: " + file.getPath());
+                FileUtils.rmdir(file);
+                file.delete();
+            } else if (file.getName().equals("espeak-ng-data")) {
+                Log.i(TAG, "Removing old data: " + file.getPath());
+                FileUtils.rmdir(file);
+                file.delete();
+            } else if (file.getName().equals(VoiceCatalog.FILE_NAME) || file.getName().equals(LanguagePacks.FILE_NAME) ||
+                    file.getName().equals(LanguagePacks.LOCK_FILE_NAME)) {
+                file.delete();
+            }
+        }
     }
 
     public static boolean hasBaseResources(Context context) {
         final File dataPath = getDataPath(context);
+        final DataArchive archive = DataArchive.get(context);
 
         for (String resource : BASE_RESOURCES) {
             final File resourceFile = new File(dataPath, resource);
 
-            if (!resourceFile.exists()) {
+            if (!resourceFile.exists() && (archive == null || !archive.contains("espeak-ng-data/" + resource))) {
                 Log.e(TAG, "Missing base resource: " + resourceFile.getPath());
                 return false;
             }
@@ -71,15 +160,32 @@ public class CheckVoiceData extends Activity {
     }
 
     public static boolean canUpgradeResources(Context context) {
+        return canUpgradeResources(context, getVersion(context));
+    }
+
+    /**
+     * @param version The version of the data in the APK.
+     */
+    public static boolean canUpgradeResources(Context context, String version) {
         try {
-            final String version = FileUtils.read(context.getResources().openRawResource(R.raw.espeakdata_version));
             final String installedVersion = FileUtils.read(new File(getDataPath(context), "version"));
-            return !version.equals(installedVersion);
+            return version != null && !version.equals(installedVersion);
         } catch (Exception e) {
             return false;
         }
     }
 
+    /**
+     * @return The version of the data in the APK, or null if it cannot be read.
+     */
+    public static String getVersion(Context context) {
+        try {
+            return FileUtils.read(context.getResources().openRawResource(R.raw.espeakdata_version));
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.util.Log;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The voice data archive, read from the APK without extracting it.
+ *
+ * Raw zip resources are stored uncompressed in the APK and the
+ * createDataArchive build step stores the files in the archive rather than
+ * deflating them, so each file is a region of the APK. eSpeak is given the
+ * offset and length of each file and maps or reads them from the APK. The
+ * language packs are raw zip resources built in the same way, so the files
+ * in them are read from the APK along with the files in the data archive.
+ *
+ * eSpeak uses the archive directory as its data path. Files in that
+ * directory, such as the data version and imported dictionaries, are used
+ * instead of the files in the archive.
+ */
+public class DataArchive {
+    private static final String TAG = "eSpeakTTS";
+
+    public static final String DIRECTORY_NAME = "apk";
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_DIRECTORY_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int STORED = 0;
+
+    private static DataArchive mArchive = null;
+    private static boolean mArchiveOpened = false;
+
+    private final AssetFileDescriptor mDescriptor;
+    private final File mDirectory;
+    private final String[] mNames;
+    private final long[] mOffsets;
+    private final long[] mLengths;
+    private final Set<String> mFiles;
+
+    private DataArchive(AssetFileDescriptor descriptor, File directory, List<String> names, List<Long> offsets, List<Long> lengths) {
+        mDescriptor = descriptor;
+        mDirectory = directory;
+        mNames = names.toArray(new String[names.size()]);
+        mOffsets = new long[offsets.size()];
+        mLengths = new long[lengths.size()];
+        for (int i = 0; i < mOffsets.length; ++i) {
+            mOffsets[i] = offsets.get(i);
+            mLengths[i] = lengths.get(i);
+        }
+        mFiles = new HashSet<String>(names);
+    }
+
+    /**
+     * @return The directory eSpeak uses as its data path.
+     */
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * @return The file descriptor of the APK, which stays open for the life of the process.
+     */
+    public int getFd() {
+        return mDescriptor.getParcelFileDescriptor().getFd();
+    }
+
+    /**
+     * @return The path of each file, relative to the archive directory.
+     */
+    public String[] getNames() {
+        return mNames;
+    }
+
+    /**
+     * @return The offset of each file in the APK.
+     */
+    public long[] getOffsets() {
+        return mOffsets;
+    }
+
+    /**
+     * @return The length of each file.
+     */
+    public long[] getLengths() {
+        return mLengths;
+    }
+
+    public boolean contains(String name) {
+        return mFiles.contains(name);
+    }
+
+    /**
+     * @return The data archive in the APK, or null if the data needs to be
+     *         extracted because the archive is compressed.
+     */
+    public static synchronized DataArchive get(Context context) {
+        if (!mArchiveOpened) {
+            final List<String> packs = LanguagePacks.getAvailablePacks(context);
+            final int[] packResIds = new int[packs.size()];
+            for (int i = 0; i < packResIds.length; ++i) {
+                packResIds[i] = LanguagePacks.getResourceId(context, packs.get(i));
+            }
+            mArchive = open(context, R.raw.espeakdata, packResIds, new File(context.getDir("voices", Context.MODE_PRIVATE), DIRECTORY_NAME));
+            mArchiveOpened = true;
+        }
+        return mArchive;
+    }
+
+    public static DataArchive open(Context context, int rawResId, File directory) {
+        return open(context, rawResId, new int[0], directory);
+    }
+
+    /**
+     * Opens the archive and sets up the archive directory, which holds the
+     * version of the data.
+     *
+     * @param packResIds The language packs to read with the archive.
+     * @return The archive, or null if the files in it cannot be read in place.
+     */
+    public static DataArchive open(Context context, int rawResId, int[] packResIds, File directory) {
+        final Resources resources = context.getResources();
+        final AssetFileDescriptor descriptor;
+        try {
+            descriptor = resources.openRawResourceFd(rawResId);
+        } catch (Resources.NotFoundException e) {
+            Log.i(TAG, "The voice data archive is compressed, so it will be extracted.");
+            return null;
+        }
+
+        try {
+            final List<String> names = new ArrayList<String>();
+            final List<Long> offsets = new ArrayList<Long>();
+            final List<Long> lengths = new ArrayList<Long>();
+            boolean inPlace = read(descriptor, names, offsets, lengths);
+            for (int i = 0; i < packResIds.length && inPlace; ++i) {
+                inPlace = readPack(resources, packResIds[i], names, offsets, lengths);
+            }
+            if (!inPlace) {
+                descriptor.close();
+                return null;
+            }
+            final DataArchive archive = new DataArchive(descriptor, directory, names, offsets, lengths);
+
+            final File dataPath = new File(directory, "espeak-ng-data");
+            final File versionFile = new File(dataPath, "version");
+            final String version = FileUtils.read(resources.openRawResource(R.raw.espeakdata_version));
+            if (!versionFile.exists() || !version.equals(FileUtils.read(versionFile))) {
+                dataPath.mkdirs();
+                FileUtils.replace(versionFile, version.getBytes());
+            }
+            return archive;
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read the voice data archive: " + e.getMessage());
+            try {
+                descriptor.close();
+            } catch (IOException ignored) {
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Adds the files in a language pack. The pack is in the same APK as the
+     * archive, so the offsets of its files are used with the archive's file
+     * descriptor.
+     *
+     * @return false if the pack is compressed.
+     */
+    private static boolean readPack(Resources resources, int rawResId, List<String> names, List<Long> offsets, List<Long> lengths) throws IOException {
+        final AssetFileDescriptor descriptor;
+        try {
+            descriptor = resources.openRawResourceFd(rawResId);
+        } catch (Resources.NotFoundException e) {
+            Log.i(TAG, "The language packs are compressed, so they will be extracted.");
+            return false;
+        }
+
+        try {
+            return read(descriptor, names, offsets, lengths);
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    /**
+     * Reads the location of the files from the zip central directory.
+     *
+     * @return false if any of the files are compressed.
+     */
+    private static boolean read(AssetFileDescriptor descriptor, List<String> names, List<Long> offsets, List<Long> lengths) throws IOException {
+        final FileChannel channel = new FileInputStream(descriptor.getFileDescriptor()).getChannel();
+        final long start = descriptor.getStartOffset();
+        final long length = descriptor.getLength();
+
+        // The end of central directory record is followed by a comment of up to 64 KB.
+        final int tailSize = (int)Math.min(length, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+        final ByteBuffer tail = read(channel, start + length - tailSize, tailSize);
+        int end = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE;
+        while (end >= 0 && tail.getInt(end) != END_OF_CENTRAL_DIRECTORY) {
+            --end;
+        }
+        if (end < 0) {
+            throw new IOException("Missing the zip end of central directory record.");
+        }
+        final int count = tail.getShort(end + 10) & 0xFFFF;
+        final long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        final long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+
+        final ByteBuffer entries = read(channel, start + directoryOffset, (int)directorySize);
+        final ByteBuffer localHeader = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+        int position = 0;
+        for (int i = 0; i < count; ++i) {
+            if (entries.getInt(position) != CENTRAL_DIRECTORY_HEADER) {
+                throw new IOException("Invalid zip central directory entry.");
+            }
+            final int method = entries.getShort(position + 10) & 0xFFFF;
+            final long size = entries.getInt(position + 24) & 0xFFFFFFFFL;
+            final int nameLength = entries.getShort(position + 28) & 0xFFFF;
+            final int extraLength = entries.getShort(position + 30) & 0xFFFF;
+            final int commentLength = entries.getShort(position + 32) & 0xFFFF;
+            final long headerOffset = entries.getInt(position + 42) & 0xFFFFFFFFL;
+            final byte[] name = new byte[nameLength];
+            entries.position(position + 46);
+            entries.get(name);
+            position += 46 + nameLength + extraLength + commentLength;
+
+            final String path = new String(name, "UTF-8");
+            if (path.endsWith("/")) {
+                continue; // A directory.
+            }
+            if (method != STORED) {
+                Log.i(TAG, "The voice data archive has compressed files, so it will be extracted.");
+                return false;
+            }
+
+            // The extra field in the local header can differ from the central directory.
+            localHeader.clear();
+            readFully(channel, localHeader, start + headerOffset);
+            if (localHeader.getInt(0) != LOCAL_HEADER) {
+                throw new IOException("Invalid zip local header for " + path);
+            }
+            final long dataOffset = headerOffset + 30 + (localHeader.getShort(26) & 0xFFFF) + (localHeader.getShort(28) & 0xFFFF);
+            if (dataOffset + size > length) {
+                throw new IOException("Invalid zip entry for " + path);
+            }
+
+            names.add(path);
+            offsets.add(start + dataOffset);
+            lengths.add(size);
+        }
+        return true;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int size) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, buffer, position);
+        return buffer;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            position += read;
+        }
+    }
+}
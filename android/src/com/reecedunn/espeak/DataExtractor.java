@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
+import android.system.ErrnoException;
+import android.system.Os;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts a zip archive from a raw resource, inflating the files in parallel.
+ *
+ * The resource is copied to a temporary file so that it can be opened as a
+ * {@link ZipFile}, which allows each worker to read a different entry.
+ *
+ * When both the archive and the installed data have a {@link DataManifest},
+ * only the files whose hashes differ are written and the files that are no
+ * longer in the archive are deleted. Otherwise, the directories in the
+ * archive are removed and everything is extracted.
+ *
+ * The installed data can be in a different base directory, such as the
+ * previous data tree. The unchanged files are then hard linked into the
+ * output directory and the base directory is not modified.
+ *
+ * A language pack only has some of the files of the data, so it is extracted
+ * into the installed data without removing anything. The manifest of the
+ * data the pack is part of is used to find the unchanged files.
+ *
+ * The extracted files are synced to disk before they are renamed into place.
+ * The hash of each file is computed as it is written and checked against the
+ * manifest, so a file that does not match is never renamed into place.
+ */
+public class DataExtractor {
+    public interface Listener {
+        /**
+         * Called before any of the files are extracted.
+         *
+         * @param totalSize The uncompressed size of the files, in bytes.
+         */
+        void onStart(long totalSize);
+
+        /**
+         * Called on a worker thread after each file has been extracted.
+         *
+         * @param file The extracted file.
+         * @param size The size of the file, in bytes.
+         * @param elapsedNanos The time taken to extract the file.
+         * @param extracted The number of bytes extracted so far.
+         */
+        void onFileExtracted(File file, long size, long elapsedNanos, long extracted);
+
+        /** A listener that ignores the progress. */
+        Listener NONE = new Listener() {
+            @Override
+            public void onStart(long totalSize) {
+            }
+
+            @Override
+            public void onFileExtracted(File file, long size, long elapsedNanos, long extracted) {
+            }
+        };
+    }
+
+    public static class Result {
+        public final int files;
+        public final int unchangedFiles;
+        public final int removedFiles;
+        public final long bytes;
+        public final long elapsedMillis;
+
+        public Result(int files, int unchangedFiles, int removedFiles, long bytes, long elapsedMillis) {
+            this.files = files;
+            this.unchangedFiles = unchangedFiles;
+            this.removedFiles = removedFiles;
+            this.bytes = bytes;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * @return The overall throughput, in kilobytes per second.
+         */
+        public long getThroughput() {
+            return elapsedMillis == 0 ? 0 : (bytes * 1000 / 1024) / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return files + " files (" + unchangedFiles + " unchanged, " + removedFiles + " removed), " +
+                    bytes + " bytes in " + elapsedMillis + " ms (" + getThroughput() + " kB/s)";
+        }
+    }
+
+    private static final int MAX_THREADS = 4;
+
+    private final Context mContext;
+    private final int mRawResId;
+    private final File mOutput;
+    private final File mBase;
+    private final int mThreads;
+    private final boolean mLanguagePack;
+    private final DataManifest mManifest;
+    private boolean mResume = false;
+
+    public DataExtractor(Context context, int rawResId, File output) {
+        this(context, rawResId, output, output);
+    }
+
+    public DataExtractor(Context context, int rawResId, File output, int threads) {
+        this(context, rawResId, output, output, threads);
+    }
+
+    public DataExtractor(Context context, int rawResId, File output, File base) {
+        this(context, rawResId, output, base, Math.min(Runtime.getRuntime().availableProcessors(), MAX_THREADS));
+    }
+
+    public DataExtractor(Context context, int rawResId, File output, File base, int threads) {
+        this(context, rawResId, output, base, threads, false, null);
+    }
+
+    /**
+     * Creates an extractor for a language pack.
+     *
+     * @param manifest The manifest of the data the pack is part of, or null
+     *        to extract all of the files in the pack.
+     */
+    public DataExtractor(Context context, int rawResId, File output, File base, DataManifest manifest) {
+        this(context, rawResId, output, base, 1, true, manifest);
+    }
+
+    private DataExtractor(Context context, int rawResId, File output, File base, int threads, boolean languagePack, DataManifest manifest) {
+        mContext = context;
+        mRawResId = rawResId;
+        mOutput = output;
+        mBase = base;
+        mThreads = Math.max(threads, 1);
+        mLanguagePack = languagePack;
+        mManifest = manifest;
+    }
+
+    /**
+     * Keeps the files that are already in the output directory, so an
+     * extraction that did not complete can carry on from where it stopped.
+     * The files are renamed into place once they have been written, so a
+     * file is either complete or missing. This must only be used when the
+     * output directory is not used for any other version of the data.
+     */
+    public void setResume(boolean resume) {
+        mResume = resume;
+    }
+
+    /**
+     * Extracts the archive. If the calling thread is interrupted, the workers
+     * are stopped and an {@link InterruptedIOException} is thrown.
+     */
+    public Result extract(final Listener listener) throws IOException {
+        final long start = System.nanoTime();
+        final File archive = File.createTempFile("espeakdata", ".zip", mContext.getCacheDir());
+        try {
+            copyResource(archive);
+
+            final ZipFile zip = new ZipFile(archive);
+            final ExecutorService workers = Executors.newFixedThreadPool(mThreads);
+            try {
+                final DataManifest manifest = mLanguagePack ? mManifest : DataManifest.read(zip);
+                final DataManifest installed = manifest == null ? null : DataManifest.read(mBase);
+                if (!mLanguagePack && !mResume && (installed == null || !mBase.equals(mOutput))) {
+                    removeDirectories(zip);
+                }
+
+                final List<ZipEntry> entries = new ArrayList<ZipEntry>();
+                int unchangedFiles = 0;
+                long totalSize = 0;
+                final Enumeration<? extends ZipEntry> e = zip.entries();
+                while (e.hasMoreElements()) {
+                    final ZipEntry entry = e.nextElement();
+                    final File file = new File(mOutput, entry.getName());
+                    if (entry.isDirectory()) {
+                        file.mkdirs();
+                    } else if (entry.getName().equals(DataManifest.FILE_NAME)) {
+                        // This is written last, so it only lists the new files once they are all written.
+                    } else if (mResume && file.isFile() && file.length() == entry.getSize()) {
+                        ++unchangedFiles;
+                    } else if (installed != null && isUnchanged(entry.getName(), manifest, installed) && link(entry.getName())) {
+                        ++unchangedFiles;
+                    } else {
+                        entries.add(entry);
+                        totalSize += Math.max(entry.getSize(), 0);
+                    }
+                }
+                listener.onStart(totalSize);
+
+                final AtomicLong extracted = new AtomicLong();
+                final List<Future<?>> tasks = new ArrayList<Future<?>>(entries.size());
+                for (final ZipEntry entry : entries) {
+                    tasks.add(workers.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws IOException {
+                            final long fileStart = System.nanoTime();
+                            final File file = new File(mOutput, entry.getName());
+                            final long size = extractEntry(zip, entry, file, manifest);
+                            listener.onFileExtracted(file, size, System.nanoTime() - fileStart, extracted.addAndGet(size));
+                            return null;
+                        }
+                    }));
+                }
+
+                for (Future<?> task : tasks) {
+                    task.get();
+                }
+
+                int removedFiles = 0;
+                if (installed != null && !mLanguagePack) {
+                    for (String path : installed.getRemovedPaths(manifest)) {
+                        // The removed files are not linked into a different output directory.
+                        if (!mBase.equals(mOutput) || new File(mOutput, path).delete()) {
+                            ++removedFiles;
+                        }
+                    }
+                }
+
+                final ZipEntry manifestEntry = zip.getEntry(DataManifest.FILE_NAME);
+                if (manifestEntry != null) {
+                    extractEntry(zip, manifestEntry, new File(mOutput, DataManifest.FILE_NAME), null);
+                }
+
+                return new Result(entries.size(), unchangedFiles, removedFiles, extracted.get(), (System.nanoTime() - start) / 1000000);
+            } finally {
+                // Wait for the workers to stop before closing the archive.
+                workers.shutdownNow();
+                while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                    // A worker is finishing a write.
+                }
+                zip.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Extracting the voice data was cancelled.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException(e.getCause());
+        } finally {
+            archive.delete();
+        }
+    }
+
+    /**
+     * Copies the resource to a file. Raw zip resources are stored uncompressed
+     * in the APK, so this is normally a single channel transfer.
+     */
+    private void copyResource(File archive) throws IOException {
+        final Resources resources = mContext.getResources();
+        AssetFileDescriptor descriptor = null;
+        try {
+            descriptor = resources.openRawResourceFd(mRawResId);
+        } catch (Resources.NotFoundException e) {
+            // The resource is compressed, so it needs to be read as a stream.
+        }
+
+        final FileOutputStream output = new FileOutputStream(archive);
+        try {
+            if (descriptor != null) {
+                final FileInputStream input = descriptor.createInputStream();
+                try {
+                    FileUtils.transfer(input.getChannel(), descriptor.getStartOffset(), descriptor.getLength(), output.getChannel());
+                } finally {
+                    input.close();
+                    descriptor.close();
+                }
+            } else {
+                copy(resources.openRawResource(mRawResId), output);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    private static boolean isUnchanged(String path, DataManifest manifest, DataManifest installed) {
+        final String hash = manifest.getHash(path);
+        return hash != null && hash.equals(installed.getHash(path));
+    }
+
+    /**
+     * Makes the installed copy of the file available in the output directory.
+     *
+     * @return false if the file needs to be extracted.
+     */
+    private boolean link(String path) {
+        final File installed = new File(mBase, path);
+        if (!installed.exists()) {
+            return false;
+        }
+        if (mBase.equals(mOutput)) {
+            return true;
+        }
+
+        final File file = new File(mOutput, path);
+        file.getParentFile().mkdirs();
+        file.delete();
+        try {
+            Os.link(installed.getPath(), file.getPath());
+            return true;
+        } catch (ErrnoException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Removes the top-level directories of the archive from the output, so
+     * no files from the previous data are left behind.
+     */
+    private void removeDirectories(ZipFile zip) {
+        final Set<String> directories = new HashSet<String>();
+        final Enumeration<? extends ZipEntry> e = zip.entries();
+        while (e.hasMoreElements()) {
+            final String name = e.nextElement().getName();
+            final int separator = name.indexOf('/');
+            if (separator > 0 && directories.add(name.substring(0, separator))) {
+                FileUtils.rmdir(new File(mOutput, name.substring(0, separator)));
+            }
+        }
+    }
+
+    /**
+     * Writes the file to a temporary file that replaces it, rather than
+     * overwriting it. A running engine can have the old file mapped, and
+     * that mapping stays valid when the file is replaced.
+     *
+     * @param manifest The manifest to check the file against, or null.
+     */
+    private static long extractEntry(ZipFile zip, ZipEntry entry, File file, DataManifest manifest) throws IOException {
+        // Ensure the target path exists.
+        file.getParentFile().mkdirs();
+
+        final String expectedHash = manifest == null ? null : manifest.getHash(entry.getName());
+        final MessageDigest digest = expectedHash == null ? null : DataManifest.createDigest();
+        InputStream input = zip.getInputStream(entry);
+        if (digest != null) {
+            input = new DigestInputStream(input, digest);
+        }
+
+        final File temp = new File(file.getPath() + ".tmp");
+        final long size = copy(input, new FileOutputStream(temp));
+        if (digest != null && !expectedHash.equals(DataManifest.toHex(digest.digest()))) {
+            temp.delete();
+            throw new IOException("The extracted data does not match the manifest: " + entry.getName());
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to rename " + temp + " to " + file);
+        }
+        return size;
+    }
+
+    private static long copy(InputStream input, FileOutputStream output) throws IOException {
+        final long total;
+        try {
+            total = FileUtils.copy(input, output);
+            output.getFD().sync();
+        } finally {
+            input.close();
+            output.close();
+        }
+        return total;
+    }
+}
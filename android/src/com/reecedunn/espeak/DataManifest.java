@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The SHA-256 of each file in the voice data, as written by the
+ * createDataManifest build step.
+ *
+ * Each line has the format used by sha256sum: the hash, two spaces and the
+ * path of the file relative to the root of the data archive.
+ */
+public class DataManifest {
+    public static final String FILE_NAME = "espeak-ng-data/sha256sums";
+
+    /** The version file is written by the installer, so it does not match the manifest. */
+    private static final String VERSION_FILE_NAME = "espeak-ng-data/version";
+
+    private final Map<String, String> mHashes;
+
+    private DataManifest(Map<String, String> hashes) {
+        mHashes = hashes;
+    }
+
+    public Set<String> getPaths() {
+        return Collections.unmodifiableSet(mHashes.keySet());
+    }
+
+    public String getHash(String path) {
+        return mHashes.get(path);
+    }
+
+    /**
+     * @return The paths in this manifest that are not in the other manifest.
+     */
+    public List<String> getRemovedPaths(DataManifest other) {
+        final List<String> removed = new ArrayList<String>();
+        for (String path : mHashes.keySet()) {
+            if (!other.mHashes.containsKey(path)) {
+                removed.add(path);
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Checks the installed files against their hashes. Only the files that
+     * are installed are read, so this takes about as long as reading them.
+     *
+     * @param directory The root of the installed data.
+     * @param missingPaths The paths of the files that are not installed are added to this.
+     * @return The paths of the installed files that have a different hash.
+     */
+    public List<String> verify(File directory, List<String> missingPaths) throws IOException {
+        final List<String> corrupt = new ArrayList<String>();
+        final MessageDigest digest = createDigest();
+        final ByteBuffer buffer = ByteBuffer.allocate(FileUtils.BUFFER_SIZE);
+        for (Map.Entry<String, String> entry : mHashes.entrySet()) {
+            if (entry.getKey().equals(VERSION_FILE_NAME)) {
+                continue;
+            }
+
+            final File file = new File(directory, entry.getKey());
+            if (!file.isFile()) {
+                missingPaths.add(entry.getKey());
+            } else if (!entry.getValue().equals(hash(file, digest, buffer))) {
+                corrupt.add(entry.getKey());
+            }
+        }
+        return corrupt;
+    }
+
+    private static String hash(File file, MessageDigest digest, ByteBuffer buffer) throws IOException {
+        final FileInputStream stream = new FileInputStream(file);
+        try {
+            final FileChannel channel = stream.getChannel();
+            digest.reset();
+            buffer.clear();
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return toHex(digest.digest());
+        } finally {
+            stream.close();
+        }
+    }
+
+    public static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // All Java platforms are required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String toHex(byte[] digest) {
+        final char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; ++i) {
+            hex[i * 2] = Character.forDigit((digest[i] >> 4) & 0xF, 16);
+            hex[i * 2 + 1] = Character.forDigit(digest[i] & 0xF, 16);
+        }
+        return new String(hex);
+    }
+
+    public static DataManifest parse(InputStream stream) throws IOException {
+        final Map<String, String> hashes = new HashMap<String, String>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int separator = line.indexOf("  ");
+                if (separator < 0) {
+                    throw new IOException("Invalid manifest entry: " + line);
+                }
+                hashes.put(line.substring(separator + 2), line.substring(0, separator));
+            }
+        } finally {
+            reader.close();
+        }
+        return new DataManifest(hashes);
+    }
+
+    /**
+     * @return The manifest of the installed data in the directory, or null if
+     *         there is no valid manifest.
+     */
+    public static DataManifest read(File directory) {
+        final File file = new File(directory, FILE_NAME);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            return parse(new FileInputStream(file));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return The manifest in the archive, or null if there is no valid manifest.
+     */
+    public static DataManifest read(ZipFile zip) {
+        final ZipEntry entry = zip.getEntry(FILE_NAME);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            return parse(zip.getInputStream(entry));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
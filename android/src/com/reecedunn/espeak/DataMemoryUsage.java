@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import android.content.Context;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * The memory used by the eSpeak data files that are mapped into this process.
+ *
+ * The values are read from /proc/self/smaps and are in kilobytes. Size is the
+ * amount of the files that is mapped, Rss the amount of that which is resident
+ * and Pss the resident amount divided between the processes sharing it.
+ */
+public class DataMemoryUsage {
+    public final int mappings;
+    public final long size;
+    public final long rss;
+    public final long pss;
+
+    private DataMemoryUsage(int mappings, long size, long rss, long pss) {
+        this.mappings = mappings;
+        this.size = size;
+        this.rss = rss;
+        this.pss = pss;
+    }
+
+    /**
+     * @return The memory that mapping the data files saves this process
+     *         compared to reading them onto the heap, in kilobytes.
+     */
+    public long getSavedMemory() {
+        return size - pss;
+    }
+
+    @Override
+    public String toString() {
+        return mappings + " mappings, size=" + size + " kB, rss=" + rss + " kB, pss=" + pss + " kB";
+    }
+
+    /**
+     * Reads the memory used by the data files eSpeak is using. When they are
+     * read from the {@link DataArchive}, this is all of the APK that is mapped.
+     */
+    public static DataMemoryUsage read(Context context) throws IOException {
+        if (DataArchive.get(context) != null) {
+            return read(new File(context.getPackageCodePath()));
+        }
+        return read(CheckVoiceData.getDataPath(context));
+    }
+
+    public static DataMemoryUsage read(File dataPath) throws IOException {
+        return read(new File("/proc/self/smaps"), dataPath.getAbsolutePath());
+    }
+
+    static DataMemoryUsage read(File smaps, String dataPath) throws IOException {
+        int mappings = 0;
+        long size = 0;
+        long rss = 0;
+        long pss = 0;
+        boolean matched = false;
+
+        final BufferedReader reader = new BufferedReader(new FileReader(smaps));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int colon = line.indexOf(':');
+                if (colon < 0 || line.indexOf(' ') < colon) {
+                    // A mapping header: "start-end perms offset dev inode path".
+                    final int path = line.indexOf('/');
+                    matched = path >= 0 && line.startsWith(dataPath, path);
+                    if (matched) {
+                        ++mappings;
+                    }
+                } else if (matched) {
+                    final String field = line.substring(0, colon);
+                    if (field.equals("Size")) {
+                        size += parseKilobytes(line, colon);
+                    } else if (field.equals("Rss")) {
+                        rss += parseKilobytes(line, colon);
+                    } else if (field.equals("Pss")) {
+                        pss += parseKilobytes(line, colon);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return new DataMemoryUsage(mappings, size, rss, pss);
+    }
+
+    private static long parseKilobytes(String line, int colon) {
+        String value = line.substring(colon + 1).trim();
+        if (value.endsWith(" kB")) {
+            value = value.substring(0, value.length() - 3).trim();
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -18,46 +18,155 @@
 package com.reecedunn.espeak;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 public class FileUtils {
+    /** The size of the buffer used to copy a stream. */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
     public static String read(File file) throws IOException {
-        return readByteArray(new FileInputStream(file), (int)file.length()).toString();
+        return new String(readBinary(file));
     }
 
+    /**
+     * Reads the rest of the stream and closes it.
+     */
     public static String read(InputStream stream) throws IOException {
-        return readByteArray(stream, stream.available()).toString();
+        return new String(readBinary(stream));
     }
 
     public static String read(InputStream stream, int length) throws IOException {
-        return readByteArray(stream, length).toString();
+        return new String(readBinary(stream, length));
     }
 
+    /**
+     * Reads the file with a single channel read of its length.
+     */
     public static byte[] readBinary(File file) throws IOException {
-        return readByteArray(new FileInputStream(file), (int)file.length()).toByteArray();
+        final FileInputStream stream = new FileInputStream(file);
+        try {
+            final FileChannel channel = stream.getChannel();
+            final long length = channel.size();
+            if (length == 0) {
+                // Special files, such as those in /proc, have a length of 0.
+                return readBinary(stream, 0);
+            }
+
+            final ByteBuffer buffer = ByteBuffer.allocate((int)length);
+            while (buffer.hasRemaining() && channel.read(buffer) != -1) {
+                // The file can be read in more than one call.
+            }
+            if (buffer.hasRemaining()) {
+                // The file was truncated while it was being read.
+                return Arrays.copyOf(buffer.array(), buffer.position());
+            }
+            return buffer.array();
+        } finally {
+            stream.close();
+        }
     }
 
+    /**
+     * Reads the rest of the stream and closes it.
+     */
     public static byte[] readBinary(InputStream stream) throws IOException {
-        return readByteArray(stream, stream.available()).toByteArray();
+        return readBinary(stream, stream.available());
     }
 
+    /**
+     * Reads the rest of the stream and closes it.
+     *
+     * @param length The expected length of the data, used to size the buffer.
+     */
     public static byte[] readBinary(InputStream stream, int length) throws IOException {
-        return readByteArray(stream, length).toByteArray();
+        final ByteArrayOutputStream content = new ByteArrayOutputStream(Math.max(length, 32));
+        try {
+            copy(stream, content);
+        } finally {
+            stream.close();
+        }
+        return content.toByteArray();
     }
 
-    private static ByteArrayOutputStream readByteArray(InputStream stream, int length) throws IOException {
-        ByteArrayOutputStream content = new ByteArrayOutputStream(length);
-        int c = stream.read();
-        while (c != -1)
-        {
-            content.write((byte)c);
-            c = stream.read();
+    /**
+     * Copies the rest of the input to the output, a buffer at a time. Neither
+     * stream is closed.
+     *
+     * @return The number of bytes copied.
+     * @throws InterruptedIOException The thread was interrupted.
+     */
+    public static long copy(InputStream input, OutputStream output) throws IOException {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int bytesRead;
+        while ((bytesRead = input.read(buffer)) != -1) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException();
+            }
+            output.write(buffer, 0, bytesRead);
+            total += bytesRead;
+        }
+        return total;
+    }
+
+    /**
+     * Copies part of a file to the current position of the target, using
+     * {@link FileChannel#transferTo} so the data does not pass through the
+     * Java heap.
+     */
+    public static void transfer(FileChannel source, long position, long length, FileChannel target) throws IOException {
+        long transferred = 0;
+        while (transferred < length) {
+            final long count = source.transferTo(position + transferred, length - transferred, target);
+            if (count <= 0) {
+                throw new EOFException();
+            }
+            transferred += count;
+        }
+    }
+
+    /**
+     * Copies the file with {@link FileChannel#transferFrom}.
+     *
+     * @return The number of bytes copied.
+     */
+    public static long copy(File source, File destination) throws IOException {
+        final FileOutputStream output = new FileOutputStream(destination);
+        try {
+            return copy(source, output);
+        } finally {
+            output.close();
+        }
+    }
+
+    private static long copy(File source, FileOutputStream output) throws IOException {
+        final FileInputStream input = new FileInputStream(source);
+        try {
+            final FileChannel channel = input.getChannel();
+            final FileChannel target = output.getChannel();
+            final long length = channel.size();
+            long transferred = 0;
+            while (transferred < length) {
+                final long count = target.transferFrom(channel, transferred, length - transferred);
+                if (count <= 0) {
+                    throw new EOFException();
+                }
+                transferred += count;
+            }
+            return transferred;
+        } finally {
+            input.close();
         }
-        return content;
     }
 
     public static void write(File outputFile, String contents) throws IOException {
@@ -73,6 +182,47 @@ public class FileUtils {
         }
     }
 
+    /**
+     * Writes the contents to a temporary file that is synced to disk and then
+     * renamed over the output file. Readers see either the old or the new
+     * file, and the old file stays valid for anything that has it open or
+     * mapped.
+     */
+    public static void replace(File outputFile, byte[] contents) throws IOException {
+        final File temp = new File(outputFile.getPath() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(temp);
+        try {
+            outputStream.write(contents, 0, contents.length);
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+        rename(temp, outputFile);
+    }
+
+    /**
+     * Copies the source file to a temporary file that replaces the output
+     * file, in the same way as {@link #replace(File, byte[])}.
+     */
+    public static void replace(File outputFile, File source) throws IOException {
+        final File temp = new File(outputFile.getPath() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(temp);
+        try {
+            copy(source, outputStream);
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+        rename(temp, outputFile);
+    }
+
+    private static void rename(File temp, File outputFile) throws IOException {
+        if (!temp.renameTo(outputFile)) {
+            temp.delete();
+            throw new IOException("Unable to rename " + temp + " to " + outputFile);
+        }
+    }
+
     public static void rmdir(File directory) {
         if (!directory.exists() || !directory.isDirectory()) {
             return;
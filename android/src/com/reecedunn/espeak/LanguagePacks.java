@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The language packs of a data tree.
+ *
+ * The base data only has the English dictionary. The dictionary of each other
+ * language is in a language pack, a raw resource named espeakpack_[language]
+ * that is listed in espeakdata_packs. A pack is installed the first time one
+ * of its voices is used.
+ *
+ * The packs that have been used are listed in the packs file of the data tree,
+ * so an upgrade only installs those packs. When the data is read from the APK,
+ * the packs are read in place with the rest of the data and are not installed.
+ *
+ * The TTS service and the streaming service run in separate processes and
+ * install the packs into the same data tree, so a pack is installed while
+ * holding a lock on the packs lock file of the tree.
+ */
+public class LanguagePacks {
+    private static final String TAG = "eSpeakTTS";
+
+    public static final String FILE_NAME = "packs";
+
+    public static final String LOCK_FILE_NAME = "packs.lock";
+
+    // This is only present while a pack is being installed, so it is left
+    // behind by an install that was interrupted.
+    private static final String INSTALLING_FILE_NAME = "packs.installing";
+
+    private static final String RESOURCE_PREFIX = "espeakpack_";
+
+    private final Context mContext;
+    private final File mTree;
+    private final boolean mInPlace;
+    private final Set<String> mAvailable;
+    private final Set<String> mUsed;
+    private final Map<String, Future<Void>> mInstalls = new HashMap<String, Future<Void>>();
+    private final Map<String, String> mPacks = new ConcurrentHashMap<String, String>();
+
+    /**
+     * @param tree The data tree the packs are installed in.
+     * @param inPlace The packs are read from the APK, so do not need to be installed.
+     */
+    public LanguagePacks(Context context, File tree, boolean inPlace) {
+        mContext = context;
+        mTree = tree;
+        mInPlace = inPlace;
+        mAvailable = new HashSet<String>(getAvailablePacks(context));
+        mUsed = new LinkedHashSet<String>(readUsedPacks(tree));
+    }
+
+    /**
+     * @return The language packs of the current data tree.
+     */
+    public static LanguagePacks get(Context context) {
+        final boolean inPlace = DataArchive.get(context) != null;
+        return new LanguagePacks(context, CheckVoiceData.getDataPath(context).getParentFile(), inPlace);
+    }
+
+    /**
+     * @return The names of the language packs in the APK.
+     */
+    public static List<String> getAvailablePacks(Context context) {
+        try {
+            return readLines(context.getResources().openRawResource(R.raw.espeakdata_packs));
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to read the language packs: " + e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    public static int getResourceId(Context context, String pack) {
+        return context.getResources().getIdentifier(RESOURCE_PREFIX + pack, "raw", context.getPackageName());
+    }
+
+    /**
+     * @return The language pack of the voice, or null if the voice only uses the base data.
+     */
+    public String getPack(Voice voice) {
+        String pack = mPacks.get(voice.identifier);
+        if (pack == null) {
+            final String dictionary = readDictionary(new File(mTree, "espeak-ng-data"), voice.identifier);
+            pack = (dictionary != null && mAvailable.contains(dictionary)) ? dictionary : "";
+            mPacks.put(voice.identifier, pack);
+        }
+        return pack.isEmpty() ? null : pack;
+    }
+
+    public synchronized boolean isInstalled(Voice voice) {
+        final String pack = getPack(voice);
+        return mInPlace || pack == null || mUsed.contains(pack) || getDictionaryFile(pack).exists();
+    }
+
+    /**
+     * Installs the language pack of the voice on a background thread, if it
+     * has not been used before. A pack that is already installed is only
+     * added to the packs that have been used.
+     *
+     * @return The install, or null if the pack can be used now.
+     */
+    public synchronized Future<Void> install(Voice voice, ExecutorService executor) {
+        final String pack = getPack(voice);
+        if (mInPlace || pack == null || mUsed.contains(pack)) {
+            return null;
+        }
+
+        final Future<Void> current = mInstalls.get(pack);
+        if (current != null && !hasFailed(current)) {
+            return current;
+        }
+
+        final Future<Void> install = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                install(pack, mTree, false);
+                return null;
+            }
+        });
+        mInstalls.put(pack, install);
+        return install;
+    }
+
+    /**
+     * @return The data tree the packs are installed in.
+     */
+    public File getTree() {
+        return mTree;
+    }
+
+    public boolean isInPlace() {
+        return mInPlace;
+    }
+
+    /**
+     * @param path The path of a file in the data tree.
+     * @return The language pack the file is in, or null if it is in the base data.
+     */
+    public String getPackOfFile(String path) {
+        for (String pack : mAvailable) {
+            if (path.equals("espeak-ng-data/" + pack + "_dict")) {
+                return pack;
+            }
+        }
+        return null;
+    }
+
+    public synchronized boolean isUsed(String pack) {
+        return mUsed.contains(pack);
+    }
+
+    /**
+     * Installs the files of a pack that has been used again, such as when
+     * they are missing or corrupt. This does not return until the pack has
+     * been installed.
+     */
+    public void repair(String pack) throws IOException {
+        // The files are deleted with the lock held, as the pack may be being
+        // installed by another thread or process.
+        install(pack, mTree, true);
+    }
+
+    /**
+     * @return Whether the install of a pack was interrupted, such as by the
+     *         process being killed, so its files may be incomplete.
+     */
+    public boolean isInstallInterrupted() {
+        return new File(mTree, INSTALLING_FILE_NAME).exists();
+    }
+
+    /**
+     * Called once the files of the packs have been checked after an install
+     * was interrupted.
+     */
+    public void clearInstallInterrupted() {
+        new File(mTree, INSTALLING_FILE_NAME).delete();
+    }
+
+    private static boolean hasFailed(Future<Void> install) {
+        if (!install.isDone()) {
+            return false;
+        }
+        try {
+            install.get();
+            return false;
+        } catch (Exception e) {
+            return true;
+        }
+    }
+
+    /**
+     * Installs the packs used with the current data tree into a new data tree.
+     *
+     * @param current The current data tree, which is used for the unchanged files.
+     * @param output The new data tree, with the base data installed.
+     */
+    public static void upgrade(Context context, File current, File output) throws IOException {
+        final LanguagePacks packs = new LanguagePacks(context, output, false);
+        for (String pack : readUsedPacks(current)) {
+            if (packs.mAvailable.contains(pack)) {
+                packs.install(pack, current, false);
+            }
+        }
+    }
+
+    private void install(String pack, File base, boolean reinstall) throws IOException {
+        final RandomAccessFile lockFile = new RandomAccessFile(new File(mTree, LOCK_FILE_NAME), "rw");
+        try {
+            final FileLock lock = lockFile.getChannel().lock();
+            try {
+                if (reinstall) {
+                    getDictionaryFile(pack).delete();
+                }
+                installLocked(pack, base);
+            } finally {
+                lock.release();
+            }
+        } finally {
+            lockFile.close();
+        }
+    }
+
+    private void installLocked(String pack, File base) throws IOException {
+        if (!getDictionaryFile(pack).exists() || !mTree.equals(base)) {
+            final long start = System.currentTimeMillis();
+            final File installing = new File(mTree, INSTALLING_FILE_NAME);
+            installing.createNewFile();
+            final DataExtractor extractor = new DataExtractor(mContext, getResourceId(mContext, pack), mTree, base, DataManifest.read(mTree));
+            extractor.extract(DataExtractor.Listener.NONE);
+            installing.delete();
+            Log.i(TAG, "Installed the " + pack + " language pack in " + (System.currentTimeMillis() - start) + " ms");
+        }
+
+        synchronized (this) {
+            // Keep the packs used by the other process.
+            mUsed.addAll(readUsedPacks(mTree));
+            mUsed.add(pack);
+            final StringBuilder used = new StringBuilder();
+            for (String name : mUsed) {
+                used.append(name).append('\n');
+            }
+            FileUtils.replace(new File(mTree, FILE_NAME), used.toString().getBytes());
+        }
+    }
+
+    private File getDictionaryFile(String pack) {
+        return new File(mTree, "espeak-ng-data/" + pack + "_dict");
+    }
+
+    private static List<String> readUsedPacks(File tree) {
+        final File file = new File(tree, FILE_NAME);
+        if (!file.exists()) {
+            return Collections.emptyList();
+        }
+        try {
+            return readLines(new FileInputStream(file));
+        } catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Reads the dictionary used by a voice in the same way as eSpeak: the
+     * dictionary line if there is one after the first language line,
+     * otherwise the language of the first language line without the country.
+     *
+     * @return The dictionary, or null if the voice file cannot be read.
+     */
+    private static String readDictionary(File dataPath, String identifier) {
+        File file = new File(dataPath, "lang/" + identifier);
+        if (!file.exists()) {
+            file = new File(dataPath, "voices/" + identifier);
+        }
+
+        final List<String> lines;
+        try {
+            lines = readLines(new FileInputStream(file));
+        } catch (IOException e) {
+            return null;
+        }
+
+        String dictionary = null;
+        boolean hasLanguage = false;
+        for (String line : lines) {
+            final String[] fields = line.split("\\s+");
+            if (fields.length < 2) {
+                continue;
+            }
+            if (fields[0].equals("language") && !hasLanguage && !fields[1].equals("variant")) {
+                hasLanguage = true;
+                dictionary = fields[1].split("-")[0];
+            } else if (fields[0].equals("dictionary")) {
+                dictionary = fields[1];
+            }
+        }
+        return dictionary;
+    }
+
+    private static List<String> readLines(InputStream stream) throws IOException {
+        final List<String> lines = new ArrayList<String>();
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    lines.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+
+/**
+ * Hands out the items of a list of render requests, one at a time, to the
+ * processes rendering them, so several processes can work through the same
+ * list in parallel. Each process renders with its own engine, as eSpeak is a
+ * single native instance per process.
+ *
+ * The next item to render is kept in a file that is locked while an item is
+ * claimed. The lock is held by the process, so the queue is only used by one
+ * thread in each process.
+ */
+public class RenderQueue {
+    private final File mFile;
+
+    /**
+     * @param file The file holding the position in the queue, which is
+     *        shared by the processes rendering the list.
+     */
+    public RenderQueue(File file) {
+        mFile = file;
+    }
+
+    /**
+     * Claims the next item in the list.
+     *
+     * @param count The number of items in the list.
+     * @return The index of the item, or -1 if all the items have been claimed.
+     */
+    public int claim(int count) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(mFile, "rw");
+        try {
+            final FileLock lock = file.getChannel().lock();
+            try {
+                final int next = file.length() < 4 ? 0 : file.readInt();
+                if (next >= count) {
+                    return -1;
+                }
+                file.seek(0);
+                file.writeInt(next + 1);
+                return next;
+            } finally {
+                lock.release();
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Starts the queue again from the first item.
+     */
+    public void reset() {
+        mFile.delete();
+    }
+}
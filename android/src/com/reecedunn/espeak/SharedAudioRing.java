@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A ring of audio in shared memory, written by {@link StreamingTtsService}
+ * and read by its client, which can be in another process.
+ *
+ * The memory starts with a header holding the positions that the audio has
+ * been written and read up to, as the number of bytes from the start of the
+ * stream, followed by the audio. The writer only writes to the part of the
+ * ring that has been read, so the reader needs to read the audio as it is
+ * written.
+ *
+ * The positions are 64-bit atomics managed by the native code, which stores
+ * them after the audio they cover is copied and loads them before copying,
+ * so a position is never seen half written, even on 32-bit devices, and the
+ * audio before it is visible to the other process. The reader is told about
+ * the audio through {@link IStreamingTtsCallback}, but can also poll the
+ * write position.
+ */
+public class SharedAudioRing {
+    /** The size of the header before the audio, in bytes. */
+    public static final int HEADER_SIZE = 64;
+
+    static {
+        System.loadLibrary("ttsespeak");
+    }
+
+    private final ByteBuffer mMemory;
+    private final int mCapacity;
+
+    /**
+     * @param memory The shared memory, mapped read-write as a direct buffer.
+     */
+    public SharedAudioRing(ByteBuffer memory) {
+        if (!memory.isDirect()) {
+            throw new IllegalArgumentException("The memory is not a direct buffer.");
+        }
+        mMemory = memory;
+        mCapacity = nativeGetCapacity(memory);
+        if (mCapacity < 0) {
+            throw new IllegalArgumentException("The memory cannot hold an audio ring.");
+        }
+    }
+
+    /**
+     * @return The memory holding the ring, for writing to it from the native code.
+     */
+    ByteBuffer getMemory() {
+        return mMemory;
+    }
+
+    /**
+     * @return The amount of audio the ring can hold, in bytes.
+     */
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    public long getWritePosition() {
+        return nativeGetWritePosition(mMemory);
+    }
+
+    public long getReadPosition() {
+        return nativeGetReadPosition(mMemory);
+    }
+
+    /**
+     * @return The number of bytes written that have not been read.
+     */
+    public int available() {
+        final long read = getReadPosition();
+        return (int)(getWritePosition() - read);
+    }
+
+    /**
+     * Writes as much of the audio as there is space for in the ring.
+     *
+     * @return The number of bytes written.
+     */
+    public int write(ByteBuffer audio) {
+        final int written;
+        if (audio.isDirect()) {
+            written = nativeWriteDirect(mMemory, audio, audio.position(), audio.remaining());
+        } else {
+            written = nativeWrite(mMemory, audio.array(), audio.arrayOffset() + audio.position(), audio.remaining());
+        }
+        audio.position(audio.position() + written);
+        return written;
+    }
+
+    /**
+     * Reads the audio that has been written, up to the given length. This
+     * frees the space in the ring for the writer, waking it if it is waiting
+     * for the ring to have space.
+     *
+     * @return The number of bytes read.
+     */
+    public int read(byte[] audio, int offset, int length) {
+        if (offset < 0 || length < 0 || length > audio.length - offset) {
+            throw new IndexOutOfBoundsException();
+        }
+        return nativeRead(mMemory, audio, offset, length);
+    }
+
+    private native final static int nativeGetCapacity(ByteBuffer memory);
+
+    private native final static long nativeGetWritePosition(ByteBuffer memory);
+
+    private native final static long nativeGetReadPosition(ByteBuffer memory);
+
+    private native final static int nativeWrite(ByteBuffer memory, byte[] audio, int offset, int length);
+
+    private native final static int nativeWriteDirect(ByteBuffer memory, ByteBuffer audio, int offset, int length);
+
+    private native final static int nativeRead(ByteBuffer memory, byte[] audio, int offset, int length);
+}
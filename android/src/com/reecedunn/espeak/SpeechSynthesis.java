@@ -27,11 +27,19 @@ package com.reecedunn.espeak;
 import android.content.Context;
 import android.content.res.Configuration;
 import android.content.res.Resources;
+import android.os.ParcelFileDescriptor;
 import android.util.DisplayMetrics;
 import android.util.Log;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
@@ -52,6 +60,89 @@ public class SpeechSynthesis {
     public static final int CHANNEL_COUNT_MONO = 1;
     public static final int FORMAT_PCM_S16 = 2;
 
+    /** The length of audio generated by eSpeak before it is passed to the callback. */
+    public static final int BUFFER_SIZE_IN_MILLISECONDS = 300;
+
+    /** Generate the audio in chunks of {@link #BUFFER_SIZE_IN_MILLISECONDS}. */
+    public static final int OUTPUT_MODE_THROUGHPUT = 0;
+
+    /** Start with a short chunk of audio, then double the chunk length up to {@link #BUFFER_SIZE_IN_MILLISECONDS}. */
+    public static final int OUTPUT_MODE_LATENCY = 1;
+
+    /** The length of the first chunk of audio in {@link #OUTPUT_MODE_LATENCY}. */
+    public static final int INITIAL_BUFFER_SIZE_IN_MILLISECONDS = 30;
+
+    /** The maximum number of characters passed to eSpeak at a time in incremental synthesis. */
+    public static final int SEGMENT_LENGTH = 1000;
+
+    /** The number of espeak_PARAMETER values tracked by {@link Parameter}, indexed by id. */
+    private static final int PARAMETER_COUNT = 6;
+
+    /** A parameter value that has not been set, or is not known. */
+    private static final int UNKNOWN_VALUE = Integer.MIN_VALUE;
+
+    /** A word is about to be spoken. */
+    public static final int EVENT_WORD = 1;
+
+    /** A sentence is about to be spoken. */
+    public static final int EVENT_SENTENCE = 2;
+
+    /** An SSML mark has been reached. */
+    public static final int EVENT_MARK = 3;
+
+    /** A phoneme is about to be spoken. See {@link #setPhonemeEvents(int)}. */
+    public static final int EVENT_PHONEME = 7;
+
+    /**
+     * The number of ints for each event passed to a {@link SynthEventCallback}:
+     * {@link #EVENT_TYPE}, {@link #EVENT_TEXT_START}, {@link #EVENT_TEXT_LENGTH},
+     * {@link #EVENT_FRAME} and the two ints of {@link #EVENT_PHONEME_NAME}.
+     */
+    public static final int EVENT_SIZE = 6;
+
+    /** The type of the event, e.g. {@link #EVENT_WORD}. */
+    public static final int EVENT_TYPE = 0;
+
+    /** The offset of the start of the event in the text, in chars. */
+    public static final int EVENT_TEXT_START = 1;
+
+    /** The length of the text of the event, in chars. */
+    public static final int EVENT_TEXT_LENGTH = 2;
+
+    /** The audio frame the event occurs at, from the start of the synthesis. */
+    public static final int EVENT_FRAME = 3;
+
+    /**
+     * The name of the phoneme of an {@link #EVENT_PHONEME}, as up to 8 bytes
+     * of UTF-8 in this and the next int, least significant byte first. See
+     * {@link #getPhonemeName(int[], int)}.
+     */
+    public static final int EVENT_PHONEME_NAME = 4;
+
+    /** Don't generate phoneme events. */
+    public static final int PHONEME_EVENTS_NONE = 0;
+
+    /** Generate phoneme events named with the eSpeak phoneme mnemonics. */
+    public static final int PHONEME_EVENTS_MNEMONICS = 1;
+
+    /** Generate phoneme events named with IPA symbols. */
+    public static final int PHONEME_EVENTS_IPA = 2;
+
+    /** The number of events that can be passed with a chunk of audio. */
+    private static final int MAX_EVENTS_PER_CHUNK = 128;
+
+    /** The number of words whose phonemes are kept for each voice by {@link #textToPhonemes(String[], boolean)}. */
+    public static final int PHONEME_CACHE_SIZE = 10000;
+
+    /** Render the audio as raw 16-bit PCM, in the native byte order. */
+    public static final int RENDER_FORMAT_PCM = 0;
+
+    /** Render the audio as a WAV file. */
+    public static final int RENDER_FORMAT_WAV = 1;
+
+    /** The number of direct audio buffers cycled through by a {@link SynthBufferReadyCallback}. */
+    private static final int AUDIO_BUFFER_COUNT = 4;
+
     static {
         System.loadLibrary("ttsespeak");
 
@@ -66,6 +157,45 @@ public class SpeechSynthesis {
     private static int mVoiceCount = 0;
     private int mSampleRate = 0;
 
+    private ByteBuffer[] mAudioBuffers = null;
+    private int[] mEvents = null;
+    private int mTextOffset = 0;
+    private int mFrameOffset = 0;
+    private int mFrames = 0;
+    private int mPipelineSize = 0;
+    private int mOutputMode = OUTPUT_MODE_THROUGHPUT;
+    private long mSynthesisStartTime = 0;
+    private long mTimeToFirstAudio = -1;
+    private boolean mIncremental = false;
+    private boolean mSuppressCompletion = false;
+    private StreamListener mStreamListener = null;
+    private volatile boolean mStopRequested = false;
+    // Held while the stop request is cleared for a new synthesis, and while
+    // the engine is stopped, so a stop either ends the synthesis and is seen
+    // by it, or comes before it and leaves it to run to the end.
+    private final Object mStopLock = new Object();
+    private Locale mLocale = Locale.getDefault();
+
+    // The voice and parameters to use for the next synthesis. These are only
+    // passed to eSpeak when they differ from the applied state.
+    private Voice mVoice = null;
+    private VoiceVariant mVoiceVariant = null;
+    private final int[] mParameters = createParameterArray();
+    private String mPunctuationCharacters = null;
+    private int mPhonemeEvents = PHONEME_EVENTS_NONE;
+
+    // The phonemes of single words, by the voice and phoneme names they were converted with.
+    private final Map<String, Map<String, String>> mPhonemeCache = new HashMap<String, Map<String, String>>();
+
+    // The state of the native engine, which is shared by all instances.
+    private static boolean mMappedDataFiles = true;
+    private static String mAppliedVoice = null;
+    private static final int[] mAppliedParameters = createParameterArray();
+    private static String mAppliedPunctuationCharacters = null;
+    private static int mAppliedPhonemeEvents = PHONEME_EVENTS_NONE;
+    private static final int[] mDefaultParameters = createParameterArray();
+    private static SpeechSynthesis mActiveEngine = null;
+
     public SpeechSynthesis(Context context, SynthReadyCallback callback) {
         // First, ensure the data directory exists, otherwise init will crash.
         final File dataPath = CheckVoiceData.getDataPath(context);
@@ -86,6 +216,15 @@ public class SpeechSynthesis {
         return nativeGetVersion();
     }
 
+    /**
+     * Map the eSpeak data files into memory instead of reading them, so the
+     * pages are shared between the processes using eSpeak and can be dropped
+     * under memory pressure. This takes effect when the next engine is created.
+     */
+    public static void setMappedDataFiles(boolean enabled) {
+        mMappedDataFiles = enabled;
+    }
+
     public static int getVoiceCount() {
         return mVoiceCount;
     }
@@ -121,7 +260,62 @@ public class SpeechSynthesis {
         }
     }
 
+    /**
+     * Lists the installed voices. These are read from the voice catalog when
+     * it is for the installed version of the data, otherwise eSpeak lists the
+     * voices and the catalog is rewritten.
+     */
     public List<Voice> getAvailableVoices() {
+        final File voicesPath = new File(mDatapath);
+        final String version = getDataVersion(new File(voicesPath, "espeak-ng-data"));
+        final List<Voice> cachedVoices = getCachedVoices(voicesPath, version);
+        if (cachedVoices != null) {
+            return cachedVoices;
+        }
+
+        final List<Voice> voices = listAvailableVoices();
+        if (version != null) {
+            try {
+                new VoiceCatalog(version, mVoiceCount, voices).write(new File(voicesPath, VoiceCatalog.FILE_NAME));
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to write the voice catalog: " + e.getMessage());
+            }
+        }
+        return voices;
+    }
+
+    /**
+     * Reads the installed voices from the voice catalog, without creating an
+     * engine.
+     *
+     * @return The voices, or null if there is no catalog for the installed data.
+     */
+    public static List<Voice> getCachedVoices(Context context) {
+        final File dataPath = CheckVoiceData.getDataPath(context);
+        return getCachedVoices(dataPath.getParentFile(), getDataVersion(dataPath));
+    }
+
+    private static List<Voice> getCachedVoices(File voicesPath, String version) {
+        if (version == null) {
+            return null;
+        }
+        final VoiceCatalog catalog = VoiceCatalog.read(new File(voicesPath, VoiceCatalog.FILE_NAME), version);
+        if (catalog == null) {
+            return null;
+        }
+        mVoiceCount = catalog.voiceCount;
+        return new LinkedList<Voice>(catalog.voices);
+    }
+
+    private static String getDataVersion(File dataPath) {
+        try {
+            return FileUtils.read(new File(dataPath, "version"));
+        } catch (IOException e) {
+            return null; // The data is not installed, so there is nothing to cache.
+        }
+    }
+
+    private List<Voice> listAvailableVoices() {
         final List<Voice> voices = new LinkedList<Voice>();
         final String[] results = nativeGetAvailableVoices();
         mVoiceCount = results.length / 4;
@@ -169,17 +363,137 @@ public class SpeechSynthesis {
     }
 
     public void setVoice(Voice voice, VoiceVariant variant) {
-        // NOTE: espeak_SetVoiceByProperties does not support specifying the
-        // voice variant (e.g. klatt), but espeak_SetVoiceByName does.
-        if (variant.variant == null) {
-            nativeSetVoiceByProperties(voice.name, variant.gender, variant.age);
-        } else {
-            nativeSetVoiceByName(voice.identifier + "+" + variant.variant);
-        }
+        mLocale = voice.locale;
+        mVoice = voice;
+        mVoiceVariant = variant;
+    }
+
+    /**
+     * Keep the dictionaries of recently used languages in memory, so switching
+     * back to a language does not need to load its dictionary again. This is
+     * shared by all instances.
+     *
+     * @param megabytes The maximum size of the cached dictionaries, or 0 to
+     *        only keep the dictionary of the current voice.
+     */
+    public void setDictionaryCacheSize(int megabytes) {
+        nativeSetDictionaryCacheSize(megabytes * 1024 * 1024);
     }
 
     public void setPunctuationCharacters(String characters) {
-        nativeSetPunctuationCharacters(characters);
+        // An empty list is the same as no list on the native side.
+        mPunctuationCharacters = characters == null ? "" : characters;
+    }
+
+    /**
+     * Pass an {@link #EVENT_PHONEME} to the {@link SynthEventCallback} for each
+     * phoneme, with the chunk of audio it is spoken in, e.g. to animate the
+     * mouth of an avatar from the same synthesis as the audio.
+     *
+     * @param mode {@link #PHONEME_EVENTS_NONE}, {@link #PHONEME_EVENTS_MNEMONICS}
+     *        or {@link #PHONEME_EVENTS_IPA}.
+     */
+    public void setPhonemeEvents(int mode) {
+        mPhonemeEvents = mode;
+    }
+
+    /**
+     * Decodes the name of the phoneme of an {@link #EVENT_PHONEME}.
+     *
+     * @param events The events passed to {@link SynthEventCallback#onSynthEvents(int[], int)}.
+     * @param offset The offset of the event in the array.
+     */
+    public static String getPhonemeName(int[] events, int offset) {
+        final byte[] name = new byte[8];
+        int length = 0;
+        while (length < name.length) {
+            final int b = events[offset + EVENT_PHONEME_NAME + length / 4] >>> ((length % 4) * 8) & 0xFF;
+            if (b == 0) {
+                break;
+            }
+            name[length++] = (byte)b;
+        }
+        try {
+            return new String(name, 0, length, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int[] createParameterArray() {
+        final int[] parameters = new int[PARAMETER_COUNT];
+        Arrays.fill(parameters, UNKNOWN_VALUE);
+        return parameters;
+    }
+
+    /**
+     * The native engine state is no longer known, e.g. after it has been
+     * initialized or SSML has changed the voice.
+     */
+    private static void invalidateAppliedState() {
+        mAppliedVoice = null;
+        Arrays.fill(mAppliedParameters, UNKNOWN_VALUE);
+        mAppliedPunctuationCharacters = null;
+    }
+
+    /**
+     * Pass the voice and parameters that have changed since the last
+     * synthesis to eSpeak in a single native call.
+     */
+    private void applyState() {
+        if (mPhonemeEvents != mAppliedPhonemeEvents) {
+            nativeSetPhonemeEvents(mPhonemeEvents != PHONEME_EVENTS_NONE, mPhonemeEvents == PHONEME_EVENTS_IPA);
+            mAppliedPhonemeEvents = mPhonemeEvents;
+        }
+
+        String voiceName = null;
+        String language = null;
+        int gender = GENDER_UNSPECIFIED;
+        int age = AGE_ANY;
+        int[] parameters = null;
+        String punctuationCharacters = null;
+
+        if (mVoice != null) {
+            final String voice = mVoice.name + "+" + mVoiceVariant;
+            if (!voice.equals(mAppliedVoice)) {
+                // NOTE: espeak_SetVoiceByProperties does not support specifying the
+                // voice variant (e.g. klatt), but espeak_SetVoiceByName does.
+                if (mVoiceVariant.variant == null) {
+                    language = mVoice.name;
+                    gender = mVoiceVariant.gender;
+                    age = mVoiceVariant.age;
+                } else {
+                    voiceName = mVoice.identifier + "+" + mVoiceVariant.variant;
+                }
+                // Loading a voice can change how the parameters are applied,
+                // so set all of them again after the voice has changed.
+                invalidateAppliedState();
+                mAppliedVoice = voice;
+            }
+        }
+
+        for (int id = 0; id < PARAMETER_COUNT; ++id) {
+            if (mParameters[id] != UNKNOWN_VALUE && mParameters[id] != mAppliedParameters[id]) {
+                if (parameters == null) {
+                    parameters = createParameterArray();
+                }
+                parameters[id] = mParameters[id];
+                mAppliedParameters[id] = mParameters[id];
+            }
+        }
+
+        if (mPunctuationCharacters != null && !mPunctuationCharacters.equals(mAppliedPunctuationCharacters)) {
+            punctuationCharacters = mPunctuationCharacters;
+            mAppliedPunctuationCharacters = mPunctuationCharacters;
+        }
+
+        if (voiceName == null && language == null && parameters == null && punctuationCharacters == null) {
+            return;
+        }
+
+        if (!nativeApplyState(voiceName, language, gender, age, parameters, punctuationCharacters)) {
+            invalidateAppliedState();
+        }
     }
 
     /** Don't announce any punctuation characters. */
@@ -220,10 +534,15 @@ public class SpeechSynthesis {
         }
 
         public int getDefaultValue() {
-            return nativeGetParameter(id, 0);
+            // The default values are fixed by eSpeak, so only need to be read once.
+            if (mDefaultParameters[id] == UNKNOWN_VALUE) {
+                mDefaultParameters[id] = nativeGetParameter(id, 0);
+            }
+            return mDefaultParameters[id];
         }
 
         public int getValue() {
+            applyState();
             return nativeGetParameter(id, 1);
         }
 
@@ -232,7 +551,7 @@ public class SpeechSynthesis {
         }
 
         public void setValue(int value) {
-            nativeSetParameter(id, value);
+            mParameters[id] = value;
         }
 
         public UnitType getUnitType() {
@@ -255,25 +574,394 @@ public class SpeechSynthesis {
     /** Which punctuation characters to announce. */
     public final Parameter Punctuation = new Parameter(5, 0, 2, UnitType.Punctuation);
 
-    public void synthesize(String text, boolean isSsml) {
-        nativeSynthesize(text, isSsml);
+    /**
+     * Run the synthesis on a separate native thread, so eSpeak can generate
+     * audio while the callback is still processing the previous chunk.
+     *
+     * @param milliseconds The amount of audio the synthesis thread can get
+     *        ahead of the callback, or 0 to synthesize on the calling thread.
+     */
+    public void setPipelineLength(int milliseconds) {
+        mPipelineSize = (mSampleRate * milliseconds / 1000) * 2;
+        if (mActiveEngine == this) {
+            nativeSetPipelineSize(mPipelineSize);
+        }
+    }
+
+    public void setOutputMode(int mode) {
+        mOutputMode = mode;
+    }
+
+    public int getOutputMode() {
+        return mOutputMode;
+    }
+
+    /**
+     * @return The time in milliseconds between the start of the last synthesis
+     *         and its first chunk of audio, or -1 if no audio was generated.
+     */
+    public long getTimeToFirstAudio() {
+        return mTimeToFirstAudio;
+    }
+
+    public boolean synthesize(String text, boolean isSsml) {
+        return synthesize(text, isSsml, mOutputMode);
+    }
+
+    /**
+     * Pass long texts to eSpeak a segment at a time, so the native memory use
+     * does not depend on the length of the text and a stop request takes
+     * effect at the next segment.
+     */
+    public void setIncrementalSynthesis(boolean enabled) {
+        mIncremental = enabled;
+    }
+
+    /**
+     * @return Whether the text was synthesized to the end, which it is not
+     *         when {@link #stop()} is called during the synthesis.
+     */
+    public boolean synthesize(String text, boolean isSsml, int outputMode) {
+        activate();
+        applyState();
+        clearStopRequest();
+        mSynthesisStartTime = System.nanoTime();
+        mTimeToFirstAudio = -1;
+        mTextOffset = 0;
+        mFrameOffset = 0;
+        mFrames = 0;
+
+        int initialBufferSize = outputMode == OUTPUT_MODE_LATENCY ? INITIAL_BUFFER_SIZE_IN_MILLISECONDS : 0;
+        // SSML is not segmented, as the markup cannot be split at arbitrary sentences.
+        if (!mIncremental || isSsml || text.length() <= SEGMENT_LENGTH) {
+            nativeSynthesize(text, isSsml, initialBufferSize, false);
+            if (isSsml) {
+                invalidateAppliedState();
+            }
+            return !mStopRequested;
+        }
+
+        final TextSegmenter segmenter = new TextSegmenter(text, mLocale, SEGMENT_LENGTH);
+        mSuppressCompletion = true;
+        try {
+            while (segmenter.hasNext() && !mStopRequested) {
+                final String segment = segmenter.next();
+                // The events of each segment are relative to the start of the segment.
+                mTextOffset = segmenter.getSegmentStart();
+                mFrameOffset = mFrames;
+                // Keep the pause at the end of each sentence, except for the last one.
+                nativeSynthesize(segment, false, initialBufferSize, segmenter.hasNext());
+                initialBufferSize = 0;
+            }
+        } finally {
+            mSuppressCompletion = false;
+        }
+        nativeSynthCallback(null, 0);
+        return !mStopRequested;
+    }
+
+    /**
+     * Synthesizes the text into the shared audio ring, after the audio that
+     * is already in it. The audio is written to the ring by the native code
+     * as eSpeak generates it, without the pipeline or passing it to Java,
+     * waiting for the reader when the ring is full.
+     *
+     * @param listener Called with the position the audio has been written up
+     *        to after each chunk of audio, on the calling thread.
+     * @return Whether the text was synthesized, or was stopped.
+     */
+    public boolean stream(String text, boolean isSsml, SharedAudioRing ring, StreamListener listener) {
+        applyState();
+        clearStopRequest();
+        mStreamListener = listener;
+        mSynthesisStartTime = System.nanoTime();
+        mTimeToFirstAudio = -1;
+
+        int initialBufferSize = mOutputMode == OUTPUT_MODE_LATENCY ? INITIAL_BUFFER_SIZE_IN_MILLISECONDS : 0;
+        try {
+            // SSML is not segmented, as the markup cannot be split at arbitrary sentences.
+            if (!mIncremental || isSsml || text.length() <= SEGMENT_LENGTH) {
+                final boolean result = nativeStream(text, isSsml, ring.getMemory(), initialBufferSize, false);
+                if (isSsml) {
+                    invalidateAppliedState();
+                }
+                return result;
+            }
+
+            final TextSegmenter segmenter = new TextSegmenter(text, mLocale, SEGMENT_LENGTH);
+            while (segmenter.hasNext() && !mStopRequested) {
+                final String segment = segmenter.next();
+                if (!nativeStream(segment, false, ring.getMemory(), initialBufferSize, segmenter.hasNext())) {
+                    return false;
+                }
+                initialBufferSize = 0;
+            }
+            return true;
+        } finally {
+            mStreamListener = null;
+        }
+    }
+
+    /**
+     * The audio buffers and pipeline are shared by all engine instances on the
+     * native side, so make sure the ones belonging to this instance are in use.
+     */
+    private void activate() {
+        if (mActiveEngine != this) {
+            nativeSetAudioBuffers(mAudioBuffers);
+            nativeSetEventBuffer(mEvents);
+            nativeSetPipelineSize(mPipelineSize);
+            mActiveEngine = this;
+        }
     }
 
     public void stop() {
-        nativeStop();
+        synchronized (mStopLock) {
+            mStopRequested = true;
+            nativeStop();
+        }
+    }
+
+    private void clearStopRequest() {
+        synchronized (mStopLock) {
+            mStopRequested = false;
+        }
+    }
+
+    /**
+     * Converts each of the texts to phonemes with the current voice, in a
+     * single native call.
+     *
+     * A text that is a single word is looked up in a cache of the words that
+     * have been converted with the voice, so common words are only converted
+     * once. Texts with several words are always converted, as the phonemes of
+     * a word can depend on the words around it.
+     *
+     * @param texts The texts to convert.
+     * @param ipa Whether to name the phonemes with IPA symbols instead of the
+     *        eSpeak mnemonics.
+     * @return The phonemes of each text, with the clauses separated by spaces.
+     */
+    public String[] textToPhonemes(String[] texts, boolean ipa) {
+        applyState();
+
+        final Map<String, String> cache = getPhonemeCache(ipa);
+        final String[] results = new String[texts.length];
+
+        // The texts that are converted, with each word only converted once.
+        final List<String> missed = new ArrayList<String>();
+        final Map<String, Integer> missedWords = new HashMap<String, Integer>();
+        final int[] slots = new int[texts.length];
+        for (int i = 0; i < texts.length; ++i) {
+            final String text = texts[i];
+            final boolean word = cache != null && text != null && isWord(text);
+            final String phonemes = word ? cache.get(text) : null;
+            if (phonemes != null) {
+                results[i] = phonemes;
+                slots[i] = -1;
+                continue;
+            }
+
+            Integer slot = word ? missedWords.get(text) : null;
+            if (slot == null) {
+                slot = missed.size();
+                missed.add(text);
+                if (word) {
+                    missedWords.put(text, slot);
+                }
+            }
+            slots[i] = slot;
+        }
+        if (missed.isEmpty()) {
+            return results;
+        }
+
+        final String[] converted = nativeTextToPhonemes(missed.toArray(new String[missed.size()]), ipa);
+        for (int i = 0; i < texts.length; ++i) {
+            if (slots[i] >= 0) {
+                results[i] = converted[slots[i]];
+            }
+        }
+        for (Map.Entry<String, Integer> word : missedWords.entrySet()) {
+            if (converted[word.getValue()] != null) {
+                cache.put(word.getKey(), converted[word.getValue()]);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @return The cache of the phonemes of words for the current voice, or
+     *         null if no voice has been set.
+     */
+    private Map<String, String> getPhonemeCache(boolean ipa) {
+        if (mVoice == null) {
+            return null;
+        }
+        // The voice variant does not change the phonemes.
+        final String key = mVoice.name + (ipa ? ":ipa" : ":mnemonics");
+        Map<String, String> cache = mPhonemeCache.get(key);
+        if (cache == null) {
+            cache = new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > PHONEME_CACHE_SIZE;
+                }
+            };
+            mPhonemeCache.put(key, cache);
+        }
+        return cache;
+    }
+
+    private static boolean isWord(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); ++i) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Renders each of the requests to its file, with the voice and settings
+     * of the request. The audio of each request is written to the file by
+     * the native code in a single call, without passing it to Java.
+     *
+     * This uses the voice and settings of the last request for the next
+     * synthesis, so they need to be set again before synthesizing.
+     *
+     * @param queue The queue to claim the requests from when several
+     *        processes are rendering the same requests, or null to render
+     *        all of them.
+     * @param listener Called after each request is rendered, or null.
+     * @return The total of the requests rendered by this call.
+     */
+    public RenderResult render(List<RenderRequest> requests, RenderQueue queue, RenderListener listener) throws IOException {
+        clearStopRequest();
+        long frames = 0;
+        long elapsedNanos = 0;
+        int next = 0;
+        while (!mStopRequested) {
+            final int index;
+            if (queue != null) {
+                index = queue.claim(requests.size());
+            } else {
+                index = next < requests.size() ? next++ : -1;
+            }
+            if (index < 0) {
+                break;
+            }
+
+            final RenderResult result = render(requests.get(index));
+            if (result.frames > 0) {
+                frames += result.frames;
+            }
+            elapsedNanos += result.elapsedNanos;
+            if (listener != null) {
+                listener.onRendered(index, result);
+            }
+        }
+        return new RenderResult(frames, elapsedNanos, mSampleRate);
     }
 
-    private void nativeSynthCallback(byte[] audioData) {
+    private RenderResult render(RenderRequest request) {
+        final long start = System.nanoTime();
+        final VoiceSettings settings = request.settings;
+        setVoice(request.voice, settings.getVoiceVariant());
+        Rate.setValue(settings.getRate());
+        Pitch.setValue(settings.getPitch());
+        PitchRange.setValue(settings.getPitchRange());
+        Volume.setValue(settings.getVolume());
+        Punctuation.setValue(settings.getPunctuationLevel());
+        setPunctuationCharacters(settings.getPunctuationCharacters());
+        applyState();
+
+        final boolean isSsml = request.text.startsWith("<speak");
+        long frames = -1;
+        try {
+            final ParcelFileDescriptor output = request.openOutput();
+            try {
+                frames = nativeRenderToFile(request.text, isSsml, output.getFd(), mSampleRate, request.format == RENDER_FORMAT_WAV);
+            } finally {
+                request.closeOutput(output);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to render the audio: " + e.getMessage());
+        }
+        if (isSsml) {
+            invalidateAppliedState();
+        }
+        return new RenderResult(frames, System.nanoTime() - start, mSampleRate);
+    }
+
+    private void nativeSynthCallback(byte[] audioData, int eventCount) {
         if (mCallback == null)
             return;
 
+        onSynthEvents(eventCount);
         if (audioData == null) {
-            mCallback.onSynthDataComplete();
+            if (!mSuppressCompletion) {
+                mCallback.onSynthDataComplete();
+            }
         } else {
+            onFirstAudio();
+            mFrames += audioData.length / 2;
             mCallback.onSynthDataReady(audioData);
         }
     }
 
+    private boolean nativeStreamCallback(long writePosition) {
+        onFirstAudio();
+        return mStreamListener.onAudioAvailable(writePosition);
+    }
+
+    private void nativeSynthBufferCallback(int index, int length, int eventCount) {
+        final ByteBuffer audioData = mAudioBuffers[index];
+        audioData.clear();
+        audioData.limit(length);
+        onSynthEvents(eventCount);
+        onFirstAudio();
+        mFrames += length / 2;
+        ((SynthBufferReadyCallback)mCallback).onSynthDataReady(audioData);
+    }
+
+    /**
+     * Passes the events that occur in the next chunk of audio to the callback,
+     * before the audio. eSpeak counts the text from 1 and the audio from the
+     * start of the text it was given, which is a segment of the text in
+     * incremental synthesis.
+     */
+    private void onSynthEvents(int count) {
+        if (count == 0) {
+            return;
+        }
+        for (int i = 0; i < count * EVENT_SIZE; i += EVENT_SIZE) {
+            mEvents[i + EVENT_TEXT_START] += mTextOffset - 1;
+            mEvents[i + EVENT_FRAME] += mFrameOffset;
+        }
+        ((SynthEventCallback)mCallback).onSynthEvents(mEvents, count);
+    }
+
+    private void onFirstAudio() {
+        if (mTimeToFirstAudio < 0) {
+            mTimeToFirstAudio = (System.nanoTime() - mSynthesisStartTime) / 1000000;
+        }
+    }
+
+    private void createAudioBuffers() {
+        // Round down to a whole number of 16-bit samples. Larger chunks of
+        // audio are split across several buffers by the native code.
+        final int capacity = (mSampleRate * BUFFER_SIZE_IN_MILLISECONDS / 1000) * 2;
+
+        mAudioBuffers = new ByteBuffer[AUDIO_BUFFER_COUNT];
+        for (int i = 0; i < AUDIO_BUFFER_COUNT; ++i) {
+            mAudioBuffers[i] = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+    }
+
     private void attemptInit() {
         if (mInitialized) {
             return;
@@ -284,12 +972,27 @@ public class SpeechSynthesis {
             return;
         }
 
-        mSampleRate = nativeCreate(mDatapath);
+        final DataArchive archive = DataArchive.get(mContext);
+        if (archive != null) {
+            mSampleRate = nativeCreate(mDatapath, BUFFER_SIZE_IN_MILLISECONDS, mMappedDataFiles,
+                    archive.getFd(), archive.getNames(), archive.getOffsets(), archive.getLengths());
+        } else {
+            mSampleRate = nativeCreate(mDatapath, BUFFER_SIZE_IN_MILLISECONDS, mMappedDataFiles, -1, null, null, null);
+        }
+        invalidateAppliedState();
+        mAppliedPhonemeEvents = PHONEME_EVENTS_NONE; // reset by the initialization
         if (mSampleRate == 0) {
             Log.e(TAG, "Failed to initialize speech synthesis library");
             return;
         }
 
+        if (mCallback instanceof SynthBufferReadyCallback) {
+            createAudioBuffers();
+        }
+        if (mCallback instanceof SynthEventCallback) {
+            mEvents = new int[MAX_EVENTS_PER_CHUNK * EVENT_SIZE];
+        }
+
         Log.i(TAG, "Initialized synthesis library with sample rate = " + getSampleRate());
 
         mInitialized = true;
@@ -309,32 +1012,175 @@ public class SpeechSynthesis {
 
     private static native final boolean nativeClassInit();
 
-    private native final int nativeCreate(String path);
+    private native final int nativeCreate(String path, int bufferSizeInMilliseconds, boolean mappedDataFiles,
+                                          int archiveFd, String[] archiveNames, long[] archiveOffsets, long[] archiveLengths);
 
     private native final static String nativeGetVersion();
 
     private native final String[] nativeGetAvailableVoices();
 
-    private native final boolean nativeSetVoiceByName(String name);
+    private native final boolean nativeApplyState(String voiceName, String language, int gender, int age, int[] parameters, String punctuationCharacters);
 
-    private native final boolean nativeSetVoiceByProperties(String language, int gender, int age);
+    private native final int nativeGetParameter(int parameter, int current);
 
-    private native final boolean nativeSetParameter(int parameter, int value);
+    private native final boolean nativeSetDictionaryCacheSize(int size);
 
-    private native final int nativeGetParameter(int parameter, int current);
+    private native final boolean nativeSynthesize(String text, boolean isSsml, int initialBufferSizeInMilliseconds, boolean endPause);
+
+    private native final String[] nativeTextToPhonemes(String[] texts, boolean ipa);
 
-    private native final boolean nativeSetPunctuationCharacters(String characters);
+    private native final long nativeRenderToFile(String text, boolean isSsml, int fd, int sampleRate, boolean wav);
 
-    private native final boolean nativeSynthesize(String text, boolean isSsml);
+    private native final boolean nativeStream(String text, boolean isSsml, ByteBuffer memory, int initialBufferSizeInMilliseconds, boolean endPause);
 
     private native final boolean nativeStop();
 
+    private native final boolean nativeSetAudioBuffers(ByteBuffer[] buffers);
+
+    private native final boolean nativeSetEventBuffer(int[] events);
+
+    private native final boolean nativeSetPhonemeEvents(boolean enable, boolean ipa);
+
+    private native final boolean nativeSetPipelineSize(int size);
+
     public interface SynthReadyCallback {
         void onSynthDataReady(byte[] audioData);
 
         void onSynthDataComplete();
     }
 
+    /**
+     * A callback that receives the audio in a small ring of direct buffers
+     * that are reused for each chunk, instead of a newly allocated array.
+     *
+     * The buffer is only valid until the callback returns.
+     */
+    public interface SynthBufferReadyCallback extends SynthReadyCallback {
+        void onSynthDataReady(ByteBuffer audioData);
+    }
+
+    /**
+     * A callback that also receives the word, sentence, mark and phoneme
+     * events, before the chunk of audio they occur in.
+     *
+     * The events are packed into an array of {@link #EVENT_SIZE} ints each,
+     * which is reused for each chunk, so is only valid until the callback
+     * returns.
+     */
+    public interface SynthEventCallback extends SynthReadyCallback {
+        void onSynthEvents(int[] events, int count);
+    }
+
+    /**
+     * Receives the progress of {@link #stream(String, boolean, SharedAudioRing, StreamListener)}.
+     */
+    public interface StreamListener {
+        /**
+         * Called after a chunk of audio has been written to the ring.
+         *
+         * @param writePosition The position the audio has been written up to.
+         * @return Whether to continue the synthesis.
+         */
+        boolean onAudioAvailable(long writePosition);
+    }
+
+    /**
+     * The text to render with {@link #render(List, RenderQueue, RenderListener)},
+     * with the voice and settings to render it with and the file to write it to.
+     */
+    public static class RenderRequest {
+        public final String text;
+        public final Voice voice;
+        public final VoiceSettings settings;
+        /** {@link #RENDER_FORMAT_PCM} or {@link #RENDER_FORMAT_WAV}. */
+        public final int format;
+        private final File mFile;
+        private final ParcelFileDescriptor mOutput;
+
+        /**
+         * Renders to the file, which is only opened when the request is
+         * rendered, so the request can be claimed from a {@link RenderQueue}
+         * by any of the processes rendering the requests.
+         */
+        public RenderRequest(String text, Voice voice, VoiceSettings settings, File file, int format) {
+            this.text = text;
+            this.voice = voice;
+            this.settings = settings;
+            this.format = format;
+            mFile = file;
+            mOutput = null;
+        }
+
+        /**
+         * Renders to the file descriptor, from its current position. The
+         * file descriptor is not closed.
+         */
+        public RenderRequest(String text, Voice voice, VoiceSettings settings, ParcelFileDescriptor output, int format) {
+            this.text = text;
+            this.voice = voice;
+            this.settings = settings;
+            this.format = format;
+            mFile = null;
+            mOutput = output;
+        }
+
+        private ParcelFileDescriptor openOutput() throws IOException {
+            if (mOutput != null) {
+                return mOutput;
+            }
+            return ParcelFileDescriptor.open(mFile, ParcelFileDescriptor.MODE_WRITE_ONLY | ParcelFileDescriptor.MODE_CREATE | ParcelFileDescriptor.MODE_TRUNCATE);
+        }
+
+        private void closeOutput(ParcelFileDescriptor output) throws IOException {
+            if (output != mOutput) {
+                output.close();
+            }
+        }
+    }
+
+    /**
+     * The audio rendered for a request, or for all the requests rendered by
+     * a call to {@link #render(List, RenderQueue, RenderListener)}.
+     */
+    public static class RenderResult {
+        /** The number of frames of audio written, or -1 if the file could not be written or the text could not be synthesized. */
+        public final long frames;
+        /** The time taken to render the audio. */
+        public final long elapsedNanos;
+        public final int sampleRate;
+
+        public RenderResult(long frames, long elapsedNanos, int sampleRate) {
+            this.frames = frames;
+            this.elapsedNanos = elapsedNanos;
+            this.sampleRate = sampleRate;
+        }
+
+        /**
+         * @return The time taken to render the audio divided by the length of
+         *         the audio, so a value below 1 is faster than real time.
+         */
+        public double getRealTimeFactor() {
+            if (frames <= 0 || sampleRate == 0) {
+                return 0;
+            }
+            return (elapsedNanos / 1000000000.0) / ((double)frames / sampleRate);
+        }
+
+        @Override
+        public String toString() {
+            return frames + " frames in " + (elapsedNanos / 1000000) + " ms, real-time factor " + String.format(Locale.ROOT, "%.3f", getRealTimeFactor());
+        }
+    }
+
+    public interface RenderListener {
+        /**
+         * Called after a request has been rendered.
+         *
+         * @param index The index of the request in the list.
+         */
+        void onRendered(int index, RenderResult result);
+    }
+
     public static String getIanaLanguageCode(String code) {
         return getIanaLocaleCode(code, mJavaToIanaLanguageCode);
     }
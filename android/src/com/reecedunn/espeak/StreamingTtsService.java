@@ -0,0 +1,545 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import android.annotation.TargetApi;
+import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.os.RemoteException;
+import android.os.SharedMemory;
+import android.preference.PreferenceManager;
+import android.system.ErrnoException;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bound service that streams the audio into shared memory, for clients
+ * that play the audio themselves and need less latency and copying than
+ * {@link TtsService} gives through the platform TTS framework.
+ *
+ * A client opens a stream with {@link IStreamingTtsService#openStream}, which
+ * returns the {@link SharedMemory} holding a {@link SharedAudioRing} and the
+ * format of the audio. The requests of all the streams are synthesized one at
+ * a time, the ones with the highest priority first, and the client is told
+ * the position in the ring of the audio of each request through its
+ * {@link IStreamingTtsCallback}, which is a one-way call. The audio is
+ * written to the ring by the native synthesis callback, so it is copied
+ * once, from eSpeak to the shared memory.
+ *
+ * eSpeak is a single native instance per process, so this service runs in a
+ * separate process from {@link TtsService}. The engine is created again on
+ * the request thread when the voice data changes, as the data it was created
+ * on is removed once {@link TtsService} uses the new data.
+ */
+public class StreamingTtsService extends Service {
+    private static final String TAG = StreamingTtsService.class.getSimpleName();
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+
+    /** The {@link SharedMemory} holding the {@link SharedAudioRing} of the stream. */
+    public static final String KEY_MEMORY = "com.reecedunn.espeak.MEMORY";
+    public static final String KEY_SAMPLE_RATE = "com.reecedunn.espeak.SAMPLE_RATE";
+    public static final String KEY_AUDIO_FORMAT = "com.reecedunn.espeak.AUDIO_FORMAT";
+    public static final String KEY_CHANNEL_COUNT = "com.reecedunn.espeak.CHANNEL_COUNT";
+
+    /** The request was synthesized. */
+    public static final int STATUS_DONE = 0;
+
+    /** The request was cancelled, or its stream was closed. */
+    public static final int STATUS_CANCELLED = 1;
+
+    /** The request could not be synthesized, such as when the voice is not found. */
+    public static final int STATUS_ERROR = 2;
+
+    /** The amount of audio the ring of a stream can hold. */
+    private static final int RING_LENGTH_IN_MILLISECONDS = 2000;
+
+    private static final Comparator<Request> PRIORITY_ORDER = new Comparator<Request>() {
+        @Override
+        public int compare(Request a, Request b) {
+            if (a.priority != b.priority) {
+                return a.priority > b.priority ? -1 : 1;
+            }
+            return Long.compare(a.sequence, b.sequence);
+        }
+    };
+
+    private final Map<IBinder, Stream> mStreams = new HashMap<IBinder, Stream>();
+    private final PriorityBlockingQueue<Request> mRequests = new PriorityBlockingQueue<Request>(11, PRIORITY_ORDER);
+    private final AtomicInteger mNextRequestId = new AtomicInteger(1);
+    private final AtomicLong mNextSequence = new AtomicLong(0);
+
+    private final CountDownLatch mEngineReady = new CountDownLatch(1);
+    private volatile SpeechSynthesis mEngine = null;
+    private VoiceIndex mVoiceIndex = null;
+    private volatile boolean mDataChanged = false;
+
+    // The requests that have not been reported as done, by their id, so they
+    // can be cancelled while they are queued or taken from the queue. The
+    // engine is only stopped for a cancelled request while it is being
+    // synthesized, so a late stop cannot end the next request.
+    private final Object mCurrentLock = new Object();
+    private final Map<Integer, Request> mPendingRequests = new HashMap<Integer, Request>();
+    private Request mCurrent = null;
+    private boolean mSynthesizing = false;
+    private Thread mThread = null;
+
+    // The language pack of a voice is installed before it is used, as the
+    // dictionaries of most languages are not installed with the base data.
+    private final ExecutorService mPackInstaller = Executors.newSingleThreadExecutor();
+    private LanguagePacks mLanguagePacks = null;
+
+    private final BroadcastReceiver mOnLanguagesUpdated = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            mDataChanged = true;
+        }
+    };
+
+    @TargetApi(Build.VERSION_CODES.O_MR1)
+    private class Stream implements IBinder.DeathRecipient {
+        public final IStreamingTtsCallback callback;
+        public final SharedMemory memory;
+        public final SharedAudioRing ring;
+        private final ByteBuffer mMapped;
+        public volatile boolean closed = false;
+        private boolean mInUse = false;
+
+        public Stream(IStreamingTtsCallback callback, SharedMemory memory) throws ErrnoException {
+            this.callback = callback;
+            this.memory = memory;
+            mMapped = memory.mapReadWrite();
+            ring = new SharedAudioRing(mMapped);
+        }
+
+        /**
+         * Keeps the ring mapped while a request is written to it.
+         *
+         * @return Whether the stream is open.
+         */
+        public synchronized boolean use() {
+            if (closed) {
+                return false;
+            }
+            mInUse = true;
+            return true;
+        }
+
+        public synchronized void release() {
+            mInUse = false;
+            if (closed) {
+                unmap();
+            }
+        }
+
+        /**
+         * Closes the stream. If a request is being written to the ring, it
+         * is unmapped when the request has stopped.
+         */
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!mInUse) {
+                unmap();
+            }
+        }
+
+        private void unmap() {
+            SharedMemory.unmap(mMapped);
+            memory.close();
+        }
+
+        @Override
+        public void binderDied() {
+            closeStream(callback);
+        }
+    }
+
+    private static class Request {
+        public final int id;
+        public final long sequence;
+        public final Stream stream;
+        public final String text;
+        public final String voiceName;
+        public final int rate;
+        public final int pitch;
+        public final int priority;
+        public volatile boolean cancelled = false;
+
+        public Request(int id, long sequence, Stream stream, String text, String voiceName, int rate, int pitch, int priority) {
+            this.id = id;
+            this.sequence = sequence;
+            this.stream = stream;
+            this.text = text;
+            this.voiceName = voiceName;
+            this.rate = rate;
+            this.pitch = pitch;
+            this.priority = priority;
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        final Context storageContext = EspeakApp.getStorageContext();
+        registerReceiver(mOnLanguagesUpdated, new IntentFilter(DownloadVoiceData.BROADCAST_LANGUAGES_UPDATED));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                createEngine(storageContext);
+                mEngineReady.countDown();
+                processRequests(storageContext);
+            }
+        }, TAG);
+        mThread.start();
+    }
+
+    @Override
+    public void onDestroy() {
+        unregisterReceiver(mOnLanguagesUpdated);
+        mThread.interrupt();
+        mPackInstaller.shutdown();
+        stopEngine();
+        synchronized (mStreams) {
+            for (Stream stream : mStreams.values()) {
+                stream.callback.asBinder().unlinkToDeath(stream, 0);
+                stream.close();
+            }
+            mStreams.clear();
+        }
+        super.onDestroy();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        // SharedMemory is only available from Android 8.1.
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O_MR1) {
+            return null;
+        }
+        return mBinder;
+    }
+
+    /**
+     * Creates the engine on the current voice data. This is only called on
+     * the request thread, so the engine is not used while it is created.
+     */
+    private void createEngine(Context storageContext) {
+        mLanguagePacks = LanguagePacks.get(storageContext);
+        try {
+            final SpeechSynthesis engine = new SpeechSynthesis(storageContext, null);
+            engine.setOutputMode(SpeechSynthesis.OUTPUT_MODE_LATENCY);
+            engine.setIncrementalSynthesis(true);
+            mVoiceIndex = new VoiceIndex(engine.getAvailableVoices());
+            mEngine = engine;
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Unable to initialize the eSpeak engine.", e);
+            mEngine = null;
+        }
+    }
+
+    /**
+     * Synthesizes the requests of all the streams, one at a time, until the
+     * service is destroyed.
+     */
+    private void processRequests(Context storageContext) {
+        while (true) {
+            final Request request;
+            try {
+                request = mRequests.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            synchronized (mCurrentLock) {
+                mCurrent = request;
+            }
+            // The client is not told about the requests of a closed stream.
+            if (!request.stream.use()) {
+                synchronized (mCurrentLock) {
+                    mCurrent = null;
+                    mPendingRequests.remove(request.id);
+                }
+                continue;
+            }
+            try {
+                if (mDataChanged) {
+                    mDataChanged = false;
+                    createEngine(storageContext);
+                }
+                final SpeechSynthesis engine = mEngine;
+
+                final int status;
+                if (request.cancelled) {
+                    status = STATUS_CANCELLED;
+                } else if (engine == null) {
+                    status = STATUS_ERROR;
+                } else {
+                    status = synthesize(storageContext, engine, request);
+                }
+                notifyDone(request, status);
+            } finally {
+                synchronized (mCurrentLock) {
+                    mCurrent = null;
+                    mPendingRequests.remove(request.id);
+                }
+                request.stream.release();
+            }
+        }
+    }
+
+    private int synthesize(Context storageContext, SpeechSynthesis engine, final Request request) {
+        final Voice voice;
+        if (request.voiceName == null) {
+            final Locale locale = Locale.getDefault();
+            voice = mVoiceIndex.findDefault(locale.getISO3Language(), locale.getISO3Country(), locale.getVariant()).first;
+        } else {
+            voice = mVoiceIndex.getVoice(request.voiceName);
+        }
+        if (voice == null) {
+            Log.e(TAG, "Voice not found: " + request.voiceName);
+            return STATUS_ERROR;
+        }
+
+        final Future<Void> install = mLanguagePacks.install(voice, mPackInstaller);
+        if (install != null) {
+            try {
+                install.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return STATUS_CANCELLED;
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Unable to install the language pack for " + voice.name, e.getCause());
+                return STATUS_ERROR;
+            }
+        }
+
+        final VoiceSettings settings = new VoiceSettings(PreferenceManager.getDefaultSharedPreferences(storageContext), engine);
+        engine.setVoice(voice, settings.getVoiceVariant());
+        engine.Rate.setValue(settings.getRate(), request.rate);
+        engine.Pitch.setValue(settings.getPitch(), request.pitch);
+        engine.PitchRange.setValue(settings.getPitchRange());
+        engine.Volume.setValue(settings.getVolume());
+        engine.Punctuation.setValue(settings.getPunctuationLevel());
+        engine.setPunctuationCharacters(settings.getPunctuationCharacters());
+
+        try {
+            request.stream.callback.onStart(request.id, request.stream.ring.getWritePosition());
+        } catch (RemoteException e) {
+            return STATUS_CANCELLED;
+        }
+
+        final SpeechSynthesis.StreamListener listener = new SpeechSynthesis.StreamListener() {
+            @Override
+            public boolean onAudioAvailable(long writePosition) {
+                // This also ends a request cancelled just before it started.
+                if (request.cancelled || request.stream.closed) {
+                    return false;
+                }
+                try {
+                    request.stream.callback.onAudioAvailable(request.id, writePosition);
+                } catch (RemoteException e) {
+                    return false;
+                }
+                return true;
+            }
+        };
+
+        synchronized (mCurrentLock) {
+            if (request.cancelled) {
+                return STATUS_CANCELLED;
+            }
+            mSynthesizing = true;
+        }
+        final boolean synthesized;
+        try {
+            synthesized = engine.stream(request.text, request.text.startsWith("<speak"), request.stream.ring, listener);
+        } finally {
+            synchronized (mCurrentLock) {
+                mSynthesizing = false;
+            }
+        }
+        if (DEBUG) {
+            Log.i(TAG, "Time to first audio: " + engine.getTimeToFirstAudio() + " ms");
+        }
+        if (request.cancelled || request.stream.closed) {
+            return STATUS_CANCELLED;
+        }
+        return synthesized ? STATUS_DONE : STATUS_ERROR;
+    }
+
+    private void notifyDone(Request request, int status) {
+        final Stream stream = request.stream;
+        try {
+            stream.callback.onDone(request.id, stream.ring.getWritePosition(), status);
+        } catch (RemoteException e) {
+            // The stream is closed when the client dies.
+        }
+    }
+
+    private void stopEngine() {
+        final SpeechSynthesis engine = mEngine;
+        if (engine != null) {
+            engine.stop();
+        }
+    }
+
+    private Stream getStream(IStreamingTtsCallback callback) {
+        synchronized (mStreams) {
+            return mStreams.get(callback.asBinder());
+        }
+    }
+
+    private void closeStream(IStreamingTtsCallback callback) {
+        final Stream stream;
+        synchronized (mStreams) {
+            stream = mStreams.remove(callback.asBinder());
+        }
+        if (stream == null) {
+            return;
+        }
+        stream.callback.asBinder().unlinkToDeath(stream, 0);
+        cancelRequests(stream);
+        stream.close();
+    }
+
+    private void cancelRequests(Stream stream) {
+        synchronized (mCurrentLock) {
+            for (Request request : mPendingRequests.values()) {
+                if (request.stream == stream) {
+                    cancelRequest(request);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cancels the request, stopping the engine if the request is being
+     * synthesized. A queued request is reported as cancelled when it is
+     * taken from the queue. This is called with the current request locked.
+     */
+    private void cancelRequest(Request request) {
+        request.cancelled = true;
+        if (request == mCurrent && mSynthesizing) {
+            stopEngine();
+        }
+    }
+
+    private final IStreamingTtsService.Stub mBinder = new IStreamingTtsService.Stub() {
+        @Override
+        @TargetApi(Build.VERSION_CODES.O_MR1)
+        public Bundle openStream(IStreamingTtsCallback callback) throws RemoteException {
+            try {
+                mEngineReady.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            final SpeechSynthesis engine = mEngine;
+            if (engine == null) {
+                return null;
+            }
+
+            final int bytesPerSecond = engine.getSampleRate() * engine.getChannelCount() * 2;
+            final int capacity = bytesPerSecond * RING_LENGTH_IN_MILLISECONDS / 1000;
+            final Stream stream;
+            try {
+                stream = new Stream(callback, SharedMemory.create("espeak-stream", SharedAudioRing.HEADER_SIZE + capacity));
+            } catch (ErrnoException e) {
+                Log.e(TAG, "Unable to create the shared memory: " + e.getMessage());
+                return null;
+            }
+
+            synchronized (mStreams) {
+                final Stream previous = mStreams.put(callback.asBinder(), stream);
+                if (previous != null) {
+                    // The client opened the stream again, so the old one is not used.
+                    mStreams.put(callback.asBinder(), previous);
+                    stream.close();
+                    return null;
+                }
+            }
+            callback.asBinder().linkToDeath(stream, 0);
+
+            final Bundle result = new Bundle();
+            result.putParcelable(KEY_MEMORY, stream.memory);
+            result.putInt(KEY_SAMPLE_RATE, engine.getSampleRate());
+            result.putInt(KEY_AUDIO_FORMAT, engine.getAudioFormat());
+            result.putInt(KEY_CHANNEL_COUNT, engine.getChannelCount());
+            return result;
+        }
+
+        @Override
+        public void closeStream(IStreamingTtsCallback callback) {
+            StreamingTtsService.this.closeStream(callback);
+        }
+
+        @Override
+        public int speak(IStreamingTtsCallback callback, String text, String voiceName, int rate, int pitch, int priority) {
+            final Stream stream = getStream(callback);
+            if (stream == null) {
+                return -1;
+            }
+            final int id = mNextRequestId.getAndIncrement();
+            final Request request = new Request(id, mNextSequence.getAndIncrement(), stream, text, voiceName, rate, pitch, priority);
+            synchronized (mCurrentLock) {
+                mPendingRequests.put(id, request);
+            }
+            mRequests.add(request);
+            return id;
+        }
+
+        @Override
+        public void cancel(IStreamingTtsCallback callback, int requestId) {
+            final Stream stream = getStream(callback);
+            synchronized (mCurrentLock) {
+                final Request request = mPendingRequests.get(requestId);
+                // A client can only cancel the requests of its own stream.
+                if (request != null && request.stream == stream) {
+                    cancelRequest(request);
+                }
+            }
+        }
+
+        @Override
+        public void cancelAll(IStreamingTtsCallback callback) {
+            final Stream stream = getStream(callback);
+            if (stream != null) {
+                cancelRequests(stream);
+            }
+        }
+    };
+}
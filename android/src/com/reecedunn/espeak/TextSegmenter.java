@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import java.text.BreakIterator;
+import java.util.Locale;
+
+/**
+ * Splits a text into segments at sentence boundaries.
+ *
+ * The first segment is a single sentence so that the audio can start as soon
+ * as possible. Later segments contain as many whole sentences as fit in the
+ * maximum segment length. Sentences that are longer than that are split after
+ * clause punctuation, or at a space if there is none.
+ */
+public class TextSegmenter {
+    private static final String CLAUSE_PUNCTUATION = ",;:";
+
+    private final String mText;
+    private final int mMaxLength;
+    private final BreakIterator mSentences;
+    private int mStart = 0;
+    private int mSegmentStart = 0;
+
+    public TextSegmenter(String text, Locale locale, int maxLength) {
+        mText = text;
+        mMaxLength = maxLength;
+        mSentences = BreakIterator.getSentenceInstance(locale);
+        mSentences.setText(text);
+    }
+
+    public boolean hasNext() {
+        return mStart < mText.length();
+    }
+
+    /**
+     * @return The offset of the last segment returned by {@link #next()} within the text.
+     */
+    public int getSegmentStart() {
+        return mSegmentStart;
+    }
+
+    public String next() {
+        final int start = mStart;
+        int end = getSentenceEnd(start);
+        if (end - start > mMaxLength) {
+            end = getClauseEnd(start, start + mMaxLength);
+        } else if (start != 0) {
+            int next;
+            while (end < mText.length() && (next = getSentenceEnd(end)) - start <= mMaxLength) {
+                end = next;
+            }
+        }
+
+        mSegmentStart = start;
+        mStart = end;
+        return mText.substring(start, end);
+    }
+
+    private int getSentenceEnd(int offset) {
+        final int end = mSentences.following(offset);
+        return end == BreakIterator.DONE ? mText.length() : end;
+    }
+
+    private int getClauseEnd(int start, int limit) {
+        for (int i = limit - 1; i > start; --i) {
+            if (CLAUSE_PUNCTUATION.indexOf(mText.charAt(i - 1)) >= 0 && Character.isWhitespace(mText.charAt(i))) {
+                return i;
+            }
+        }
+        for (int i = limit - 1; i > start; --i) {
+            if (Character.isWhitespace(mText.charAt(i))) {
+                return i;
+            }
+        }
+        // Don't split a surrogate pair.
+        return Character.isHighSurrogate(mText.charAt(limit - 1)) ? limit - 1 : limit;
+    }
+}
@@ -33,6 +33,8 @@ import android.content.IntentFilter;
 import android.media.AudioTrack;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Process;
+import android.os.SystemClock;
 import android.preference.PreferenceManager;
 import android.speech.tts.SynthesisCallback;
 import android.speech.tts.SynthesisRequest;
@@ -41,15 +43,25 @@ import android.speech.tts.TextToSpeechService;
 import android.util.Log;
 import android.util.Pair;
 
-import com.reecedunn.espeak.SpeechSynthesis.SynthReadyCallback;
+import com.reecedunn.espeak.SpeechSynthesis.SynthBufferReadyCallback;
+import com.reecedunn.espeak.SpeechSynthesis.SynthEventCallback;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Implements the eSpeak engine as a {@link TextToSpeechService}.
@@ -61,14 +73,67 @@ import java.util.Set;
 public class TtsService extends TextToSpeechService {
     public static final String ESPEAK_INITIALIZED = "com.reecedunn.espeak.ESPEAK_INITIALIZED";
 
+    /**
+     * Synthesis request parameter selecting how the audio is chunked. This is
+     * either {@link #OUTPUT_MODE_LATENCY} or {@link #OUTPUT_MODE_THROUGHPUT}.
+     */
+    public static final String KEY_PARAM_OUTPUT_MODE = "com.reecedunn.espeak.OUTPUT_MODE";
+    public static final String OUTPUT_MODE_LATENCY = "latency";
+    public static final String OUTPUT_MODE_THROUGHPUT = "throughput";
+
     private static final String TAG = TtsService.class.getSimpleName();
     private static Context storageContext;
     private static final boolean DEBUG = BuildConfig.DEBUG;
 
-    private SpeechSynthesis mEngine;
+    /** The amount of audio eSpeak can synthesize ahead of the audio callback. */
+    private static final int PIPELINE_LENGTH_IN_MILLISECONDS = 1500;
+
+    /** The memory used to keep the dictionaries of recently used languages loaded. */
+    private static final int DICTIONARY_CACHE_SIZE_IN_MEGABYTES = 8;
+
+    /** The memory and disk space used to keep the audio of short, repeated utterances. */
+    private static final int AUDIO_CACHE_SIZE_IN_BYTES = 2 * 1024 * 1024;
+    private static final long AUDIO_CACHE_DISK_SIZE_IN_BYTES = 8 * 1024 * 1024;
+
+    // The engine is created on a background thread so that the service can
+    // start handling requests straight away. The voice catalog is read by a
+    // task of its own, so the voices are available before the engine when
+    // the catalog is up to date.
+    private final ExecutorService mInitializer = Executors.newSingleThreadExecutor();
+    private final ExecutorService mCatalogReader = Executors.newSingleThreadExecutor();
+    private volatile Future<SpeechSynthesis> mEngine;
+    private volatile Future<VoiceIndex> mCatalogVoiceIndex;
+    private volatile VoiceIndex mEngineVoiceIndex = null;
+
+    // eSpeak is a single native instance, so it is only used by one engine at
+    // a time. Synthesis holds this lock so that an engine being created on new
+    // voice data waits for the current request to finish.
+    private final Object mEngineLock = new Object();
+
+    // The language packs are installed in the background when a voice is
+    // loaded, and synthesis waits for the pack of its voice.
+    private final ExecutorService mPackInstaller = Executors.newSingleThreadExecutor();
+    private volatile LanguagePacks mLanguagePacks = null;
+
+    // The installed data is checked on a low priority thread of its own, so
+    // the language packs being installed do not wait for it.
+    private final ExecutorService mDataVerifier = Executors.newSingleThreadExecutor();
+
     private SynthesisCallback mCallback;
+    private byte[] mAudioData = null;
+
+    // The word events are relative to the text passed to eSpeak, which is
+    // the request text without any XML declaration.
+    private int mTextOffset = 0;
+    private int mTextLength = 0;
+
+    // The audio and word events of a request that can be cached are recorded
+    // as it is synthesized, and are cached if the request was not stopped.
+    private AudioCache mAudioCache;
+    private ByteArrayOutputStream mRecording = null;
+    private int[] mRecordedEvents = null;
+    private int mRecordedEventsLength = 0;
 
-    private final Map<String, Voice> mAvailableVoices = new HashMap<String, Voice>();
     protected Voice mMatchingVoice = null;
 
     private BroadcastReceiver mOnLanguagesDownloaded = null;
@@ -78,6 +143,7 @@ public class TtsService extends TextToSpeechService {
         storageContext = EspeakApp.getStorageContext();
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
             storageContext.moveSharedPreferencesFrom(this, this.getPackageName() + "_preferences");
+        mAudioCache = new AudioCache(AUDIO_CACHE_SIZE_IN_BYTES, new File(storageContext.getCacheDir(), "audio"), AUDIO_CACHE_DISK_SIZE_IN_BYTES);
         initializeTtsEngine();
         super.onCreate();
     }
@@ -85,28 +151,155 @@ public class TtsService extends TextToSpeechService {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        mInitializer.shutdown();
+        mCatalogReader.shutdown();
+        mPackInstaller.shutdown();
+        mDataVerifier.shutdown();
         if (mOnLanguagesDownloaded != null) {
             unregisterReceiver(mOnLanguagesDownloaded);
         }
     }
 
     /**
-     * Sets up the native eSpeak engine.
+     * Starts setting up the native eSpeak engine on a background thread. The
+     * previous engine is used by the requests that have already started.
      */
     private void initializeTtsEngine() {
-        if (mEngine != null) {
-            mEngine.stop();
-            mEngine = null;
+        // Requests that only need the voices can be answered from the voice
+        // catalog while eSpeak is loading its data.
+        final FutureTask<VoiceIndex> catalog = new FutureTask<>(new Callable<VoiceIndex>() {
+            @Override
+            public VoiceIndex call() {
+                final List<Voice> cachedVoices = SpeechSynthesis.getCachedVoices(storageContext);
+                return cachedVoices == null ? null : new VoiceIndex(cachedVoices);
+            }
+        });
+        mCatalogVoiceIndex = catalog;
+        mCatalogReader.execute(catalog);
+
+        final FutureTask<SpeechSynthesis> engine = new FutureTask<>(new Callable<SpeechSynthesis>() {
+            @Override
+            public SpeechSynthesis call() {
+                return createTtsEngine(catalog);
+            }
+        });
+        mEngine = engine;
+        mInitializer.execute(engine);
+    }
+
+    private SpeechSynthesis createTtsEngine(Future<VoiceIndex> catalog) {
+        final long start = SystemClock.elapsedRealtime();
+        mLanguagePacks = LanguagePacks.get(storageContext);
+
+        final SpeechSynthesis engine;
+        synchronized (mEngineLock) {
+            engine = new SpeechSynthesis(storageContext, mSynthCallback);
+            engine.setPipelineLength(PIPELINE_LENGTH_IN_MILLISECONDS);
+            engine.setOutputMode(SpeechSynthesis.OUTPUT_MODE_LATENCY);
+            engine.setIncrementalSynthesis(true);
+            engine.setDictionaryCacheSize(DICTIONARY_CACHE_SIZE_IN_MEGABYTES);
+            if (waitFor(catalog) == null) {
+                mEngineVoiceIndex = new VoiceIndex(engine.getAvailableVoices());
+            }
+            // The audio synthesized from the previous data is not used.
+            mAudioCache.setDataVersion(getDataVersion(CheckVoiceData.getDataPath(storageContext)));
         }
 
-        mEngine = new SpeechSynthesis(storageContext, mSynthCallback);
-        mAvailableVoices.clear();
-        for (Voice voice : mEngine.getAvailableVoices()) {
-            mAvailableVoices.put(voice.name, voice);
+        // Nothing is using the data from before the last upgrade now.
+        CheckVoiceData.removeOldDataTrees(storageContext);
+        repairVoiceData(mLanguagePacks);
+
+        if (DEBUG) {
+            Log.i(TAG, "Engine initialized in " + (SystemClock.elapsedRealtime() - start) + " ms");
+
+            try {
+                Log.i(TAG, "Mapped data files: " + DataMemoryUsage.read(storageContext));
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to read the data file memory usage: " + e.getMessage());
+            }
         }
 
         final Intent intent = new Intent(ESPEAK_INITIALIZED);
         sendBroadcast(intent);
+        return engine;
+    }
+
+    /**
+     * Checks the installed data in the background, with the language packs,
+     * and creates the engine again if any files had to be installed again.
+     */
+    private void repairVoiceData(final LanguagePacks packs) {
+        mDataVerifier.execute(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                if (VoiceDataInstaller.isInstalling()) {
+                    return;
+                }
+                try {
+                    if (VoiceDataInstaller.repair(storageContext, packs)) {
+                        initializeTtsEngine();
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to repair the voice data: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * @return A string that changes when the voice data changes, including
+     *         when a dictionary is imported without changing the version.
+     */
+    private static String getDataVersion(File dataPath) {
+        final StringBuilder version = new StringBuilder(dataPath.getPath());
+        try {
+            version.append(':').append(FileUtils.read(new File(dataPath, "version")).trim());
+        } catch (IOException e) {
+            // The data does not have a version.
+        }
+
+        final File[] files = dataPath.listFiles();
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                if (file.getName().endsWith("_dict")) {
+                    version.append(':').append(file.getName()).append('=').append(file.lastModified());
+                }
+            }
+        }
+        return version.toString();
+    }
+
+    private static <T> T waitFor(Future<T> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Unable to initialize the eSpeak engine.", e.getCause());
+        }
+        return null;
+    }
+
+    /**
+     * @return The engine, waiting for it to be initialized, or null if it could not be created.
+     */
+    private SpeechSynthesis getEngine() {
+        return waitFor(mEngine);
+    }
+
+    /**
+     * @return The voice index, waiting for the voice catalog to be read, and
+     *         for the engine only if there is no catalog for the data.
+     */
+    private VoiceIndex getVoiceIndex() {
+        VoiceIndex index = waitFor(mCatalogVoiceIndex);
+        if (index == null) {
+            getEngine();
+            index = mEngineVoiceIndex;
+        }
+        return index == null ? VoiceIndex.EMPTY : index;
     }
 
     @Override
@@ -122,8 +315,18 @@ public class TtsService extends TextToSpeechService {
         };
     }
 
-    private Pair<Voice, Integer> findVoice(String language, String country, String variant) {
-        if (!CheckVoiceData.hasBaseResources(storageContext) || CheckVoiceData.canUpgradeResources(storageContext)) {
+    private static final Pair<Voice, Integer> MISSING_DATA = new Pair<>(null, TextToSpeech.LANG_MISSING_DATA);
+
+    /**
+     * Checks that the voice data is installed, starting the install if it is
+     * not or if it can be upgraded. The installed data is used while it is
+     * being upgraded. The status is kept in memory until the data changes,
+     * so this does not read any files when the data is up to date.
+     */
+    private boolean hasVoiceData() {
+        final VoiceDataState state = VoiceDataState.get(storageContext);
+        final boolean hasBaseResources = state.hasBaseResources();
+        if (!hasBaseResources || state.canUpgradeResources()) {
             if (mOnLanguagesDownloaded == null) {
                 mOnLanguagesDownloaded = new BroadcastReceiver() {
                     @Override
@@ -136,60 +339,23 @@ public class TtsService extends TextToSpeechService {
                 registerReceiver(mOnLanguagesDownloaded, filter);
             }
 
-            final Intent intent = new Intent(storageContext, DownloadVoiceData.class);
-            intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-            startActivity(intent);
-
-            return new Pair<>(null, TextToSpeech.LANG_MISSING_DATA);
-        }
-
-        final Locale query = new Locale(language, country, variant);
-
-        Voice languageVoice = null;
-        Voice countryVoice = null;
-
-        synchronized (mAvailableVoices) {
-            for (Voice voice : mAvailableVoices.values()) {
-                switch (voice.match(query)) {
-                    case TextToSpeech.LANG_COUNTRY_VAR_AVAILABLE:
-                        return new Pair<>(voice, TextToSpeech.LANG_COUNTRY_VAR_AVAILABLE);
-                    case TextToSpeech.LANG_COUNTRY_AVAILABLE:
-                        countryVoice = voice;
-                    case TextToSpeech.LANG_AVAILABLE:
-                        languageVoice = voice;
-                        break;
-                }
-            }
+            VoiceDataInstaller.start(storageContext);
         }
+        return hasBaseResources;
+    }
 
-        if (languageVoice == null) {
-            return new Pair<>(null, TextToSpeech.LANG_NOT_SUPPORTED);
-        } else if (countryVoice == null) {
-            return new Pair<>(languageVoice, TextToSpeech.LANG_AVAILABLE);
-        } else {
-            return new Pair<>(countryVoice, TextToSpeech.LANG_COUNTRY_AVAILABLE);
+    private Pair<Voice, Integer> findVoice(String language, String country, String variant) {
+        if (!hasVoiceData()) {
+            return MISSING_DATA;
         }
+        return getVoiceIndex().find(language, country, variant);
     }
 
     private Pair<Voice, Integer> getDefaultVoiceFor(String language, String country, String variant) {
-        final Pair<Voice, Integer> match = findVoice(language, country, variant);
-        switch (match.second) {
-            case TextToSpeech.LANG_AVAILABLE:
-                if (language.equals("fr") || language.equals("fra")) {
-                    return new Pair<>(findVoice(language, "FRA", "").first, match.second);
-                }
-                if (language.equals("pt") || language.equals("por")) {
-                    return new Pair<>(findVoice(language, "PRT", "").first, match.second);
-                }
-                return new Pair<>(findVoice(language, "", "").first, match.second);
-            case TextToSpeech.LANG_COUNTRY_AVAILABLE:
-                if ((language.equals("vi") || language.equals("vie")) && (country.equals("VN") || country.equals("VNM"))) {
-                    return new Pair<>(findVoice(language, country, "hue").first, match.second);
-                }
-                return new Pair<>(findVoice(language, country, "").first, match.second);
-            default:
-                return match;
+        if (!hasVoiceData()) {
+            return MISSING_DATA;
         }
+        return getVoiceIndex().findDefault(language, country, variant);
     }
 
     @Override
@@ -202,6 +368,7 @@ public class TtsService extends TextToSpeechService {
         final Pair<Voice, Integer> match = getDefaultVoiceFor(language, country, variant);
         if (match.first != null) {
             mMatchingVoice = match.first;
+            installLanguagePack(match.first);
         }
         return match.second;
     }
@@ -220,11 +387,16 @@ public class TtsService extends TextToSpeechService {
     @Override
     public List<android.speech.tts.Voice> onGetVoices() {
         List<android.speech.tts.Voice> voices = new ArrayList<android.speech.tts.Voice>();
-        for (Voice voice : mAvailableVoices.values()) {
+        final VoiceIndex index = getVoiceIndex();
+        final LanguagePacks packs = mLanguagePacks;
+        for (Voice voice : index.getVoices()) {
             int quality = android.speech.tts.Voice.QUALITY_NORMAL;
             int latency = android.speech.tts.Voice.LATENCY_VERY_LOW;
             Locale locale = new Locale(voice.locale.getISO3Language(), voice.locale.getISO3Country(), voice.locale.getVariant());
             Set<String> features = onGetFeaturesForLanguage(locale.getLanguage(), locale.getCountry(), locale.getVariant());
+            if (packs != null && !packs.isInstalled(voice)) {
+                features.add(TextToSpeech.Engine.KEY_FEATURE_NOT_INSTALLED);
+            }
             voices.add(new android.speech.tts.Voice(voice.name, voice.locale, quality, latency, false, features));
         }
         return voices;
@@ -232,25 +404,60 @@ public class TtsService extends TextToSpeechService {
 
     @Override
     public int onIsValidVoiceName(String name) {
-        Voice voice = mAvailableVoices.get(name);
+        Voice voice = getVoiceIndex().getVoice(name);
         return (voice == null) ? TextToSpeech.ERROR : TextToSpeech.SUCCESS;
     }
 
     @Override
     public int onLoadVoice(String name) {
-        Voice voice = mAvailableVoices.get(name);
+        Voice voice = getVoiceIndex().getVoice(name);
         if (voice == null) {
             return TextToSpeech.ERROR;
         }
         mMatchingVoice = voice;
+        installLanguagePack(voice);
         return TextToSpeech.SUCCESS;
     }
 
+    /**
+     * Starts installing the language pack of the voice, if it is not installed.
+     *
+     * @return The install, or null if the voice can be used now.
+     */
+    private Future<Void> installLanguagePack(Voice voice) {
+        final LanguagePacks packs = mLanguagePacks;
+        return packs == null ? null : packs.install(voice, mPackInstaller);
+    }
+
+    /**
+     * @return false if the language pack of the voice could not be installed.
+     */
+    private boolean waitForLanguagePack(Voice voice) {
+        final Future<Void> install = installLanguagePack(voice);
+        if (install == null) {
+            return true;
+        }
+        try {
+            install.get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Unable to install the language pack for " + voice.name, e.getCause());
+        }
+        return false;
+    }
+
     @Override
     protected void onStop() {
         Log.i(TAG, "Received stop request.");
-
-        mEngine.stop();
+        // There is nothing to stop if the engine is still being initialized.
+        if (mEngine.isDone()) {
+            final SpeechSynthesis engine = getEngine();
+            if (engine != null) {
+                engine.stop();
+            }
+        }
     }
 
     @SuppressWarnings("deprecation")
@@ -279,6 +486,16 @@ public class TtsService extends TextToSpeechService {
         return TextToSpeech.SUCCESS;
     }
 
+    private int getOutputMode(SpeechSynthesis engine, SynthesisRequest request) {
+        final String mode = request.getParams().getString(KEY_PARAM_OUTPUT_MODE);
+        if (OUTPUT_MODE_LATENCY.equals(mode)) {
+            return SpeechSynthesis.OUTPUT_MODE_LATENCY;
+        } else if (OUTPUT_MODE_THROUGHPUT.equals(mode)) {
+            return SpeechSynthesis.OUTPUT_MODE_THROUGHPUT;
+        }
+        return engine.getOutputMode();
+    }
+
     @Override
     protected synchronized void onSynthesizeText(SynthesisRequest request, SynthesisCallback callback) {
         if (mMatchingVoice == null)
@@ -287,6 +504,8 @@ public class TtsService extends TextToSpeechService {
         String text = getRequestString(request);
         if (text == null)
             return;
+        final int textLength = text.length();
+        int textOffset = 0;
 
         if (DEBUG) {
             Log.i(TAG, "Received synthesis request: {language=\"" + mMatchingVoice.name + "\"}");
@@ -302,27 +521,140 @@ public class TtsService extends TextToSpeechService {
         {
             // eSpeak does not recognise/skip "<?...?>" preprocessing tags,
             // so need to remove these before passing to synthesize.
-            text = text.substring(text.indexOf("?>") + 2).trim();
+            textOffset = text.indexOf("?>") + 2;
+            final String markup = text.substring(textOffset);
+            text = markup.trim();
+            textOffset += markup.indexOf(text);
         }
 
+        if (!waitForLanguagePack(mMatchingVoice)) {
+            callback.error();
+            return;
+        }
+
+        while (true) {
+            final Future<SpeechSynthesis> future = mEngine;
+            final SpeechSynthesis engine = waitFor(future);
+            if (engine == null) {
+                callback.error();
+                return;
+            }
+
+            synchronized (mEngineLock) {
+                // Use the new engine if the voice data was updated while waiting for the lock.
+                if (future == mEngine) {
+                    mTextOffset = textOffset;
+                    mTextLength = textLength;
+                    synthesize(engine, text, request, callback);
+                    return;
+                }
+            }
+        }
+    }
+
+    private void synthesize(SpeechSynthesis engine, String text, SynthesisRequest request, SynthesisCallback callback) {
         mCallback = callback;
-        mCallback.start(mEngine.getSampleRate(), mEngine.getAudioFormat(), mEngine.getChannelCount());
-
-        final VoiceSettings settings = new VoiceSettings(PreferenceManager.getDefaultSharedPreferences(storageContext), mEngine);
-        mEngine.setVoice(mMatchingVoice, settings.getVoiceVariant());
-        mEngine.Rate.setValue(settings.getRate(), request.getSpeechRate());
-        mEngine.Pitch.setValue(settings.getPitch(), request.getPitch());
-        mEngine.PitchRange.setValue(settings.getPitchRange());
-        mEngine.Volume.setValue(settings.getVolume());
-        mEngine.Punctuation.setValue(settings.getPunctuationLevel());
-        mEngine.setPunctuationCharacters(settings.getPunctuationCharacters());
-        mEngine.synthesize(text, text.startsWith("<speak"));
+        mCallback.start(engine.getSampleRate(), engine.getAudioFormat(), engine.getChannelCount());
+
+        final VoiceSettings settings = new VoiceSettings(PreferenceManager.getDefaultSharedPreferences(storageContext), engine);
+        final VoiceVariant variant = settings.getVoiceVariant();
+        final int rate = (settings.getRate() * request.getSpeechRate()) / 100;
+        final int pitch = (settings.getPitch() * request.getPitch()) / 100;
+        final String key = AudioCache.getKey(text, mMatchingVoice, variant, rate, pitch, settings.getPitchRange(),
+                settings.getVolume(), settings.getPunctuationLevel(), settings.getPunctuationCharacters(), engine.getSampleRate());
+
+        final AudioCache.Entry cached = key == null ? null : mAudioCache.get(key, text);
+        if (cached != null) {
+            mSynthCallback.onSynthEvents(cached.events, cached.events.length / SpeechSynthesis.EVENT_SIZE);
+            mSynthCallback.onSynthDataReady(cached.audio);
+            mSynthCallback.onSynthDataComplete();
+            if (DEBUG) {
+                Log.i(TAG, "Audio cache: " + mAudioCache);
+            }
+            return;
+        }
+
+        engine.setVoice(mMatchingVoice, variant);
+        engine.Rate.setValue(rate);
+        engine.Pitch.setValue(pitch);
+        engine.PitchRange.setValue(settings.getPitchRange());
+        engine.Volume.setValue(settings.getVolume());
+        engine.Punctuation.setValue(settings.getPunctuationLevel());
+        engine.setPunctuationCharacters(settings.getPunctuationCharacters());
+
+        mRecording = key == null ? null : new ByteArrayOutputStream();
+        mRecordedEvents = new int[0];
+        mRecordedEventsLength = 0;
+        try {
+            // Audio that was cut short by a stop request is not cached.
+            final boolean completed = engine.synthesize(text, text.startsWith("<speak"), getOutputMode(engine, request));
+            if (mRecording != null && completed) {
+                mAudioCache.put(key, text, mRecording.toByteArray(), Arrays.copyOf(mRecordedEvents, mRecordedEventsLength));
+            }
+        } finally {
+            mRecording = null;
+            mRecordedEvents = null;
+        }
+
+        if (DEBUG) {
+            Log.i(TAG, "Time to first audio: " + engine.getTimeToFirstAudio() + " ms");
+        }
+    }
+
+    /**
+     * Adds the audio to the recording of the current request, if it is
+     * being recorded. Audio that is too long to cache is not recorded.
+     */
+    private void record(byte[] audioData, int offset, int length) {
+        if (mRecording == null) {
+            return;
+        }
+        if (mRecording.size() + length > AudioCache.MAX_ENTRY_SIZE) {
+            mRecording = null;
+            return;
+        }
+        mRecording.write(audioData, offset, length);
+    }
+
+    /**
+     * Adds the word event to the recording of the current request, if it is
+     * being recorded.
+     */
+    private void recordEvent(int[] events, int offset) {
+        if (mRecording == null) {
+            return;
+        }
+        if (mRecordedEventsLength == mRecordedEvents.length) {
+            mRecordedEvents = Arrays.copyOf(mRecordedEvents, Math.max(mRecordedEvents.length * 2, SpeechSynthesis.EVENT_SIZE * 8));
+        }
+        System.arraycopy(events, offset, mRecordedEvents, mRecordedEventsLength, SpeechSynthesis.EVENT_SIZE);
+        mRecordedEventsLength += SpeechSynthesis.EVENT_SIZE;
     }
 
     /**
      * Pipes synthesizer output from native eSpeak to an {@link AudioTrack}.
      */
-    private final SpeechSynthesis.SynthReadyCallback mSynthCallback = new SynthReadyCallback() {
+    private final SynthCallback mSynthCallback = new SynthCallback();
+
+    private class SynthCallback implements SynthBufferReadyCallback, SynthEventCallback {
+        @Override
+        public void onSynthDataReady(ByteBuffer audioData) {
+            final int maxBytesToCopy = mCallback.getMaxBufferSize();
+
+            // SynthesisCallback.audioAvailable copies the data it is given, so
+            // the same array can be used for every chunk of audio.
+            if (mAudioData == null || mAudioData.length < maxBytesToCopy) {
+                mAudioData = new byte[maxBytesToCopy];
+            }
+
+            while (audioData.hasRemaining()) {
+                final int bytesToWrite = Math.min(maxBytesToCopy, audioData.remaining());
+                audioData.get(mAudioData, 0, bytesToWrite);
+                record(mAudioData, 0, bytesToWrite);
+                mCallback.audioAvailable(mAudioData, 0, bytesToWrite);
+            }
+        }
+
         @Override
         public void onSynthDataReady(byte[] audioData) {
             if ((audioData == null) || (audioData.length == 0)) {
@@ -336,6 +668,7 @@ public class TtsService extends TextToSpeechService {
 
             while (offset < audioData.length) {
                 final int bytesToWrite = Math.min(maxBytesToCopy, (audioData.length - offset));
+                record(audioData, offset, bytesToWrite);
                 mCallback.audioAvailable(audioData, offset, bytesToWrite);
                 offset += bytesToWrite;
             }
@@ -345,5 +678,26 @@ public class TtsService extends TextToSpeechService {
         public void onSynthDataComplete() {
             mCallback.done();
         }
-    };
+
+        /**
+         * Reports the words as they are spoken, so the client can highlight
+         * them. The events are passed before the audio they occur in, and are
+         * recorded with the audio when it is cached.
+         */
+        @Override
+        public void onSynthEvents(int[] events, int count) {
+            for (int i = 0; i < count * SpeechSynthesis.EVENT_SIZE; i += SpeechSynthesis.EVENT_SIZE) {
+                if (events[i + SpeechSynthesis.EVENT_TYPE] != SpeechSynthesis.EVENT_WORD) {
+                    continue;
+                }
+                recordEvent(events, i);
+                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+                    continue;
+                }
+                final int start = Math.min(mTextOffset + events[i + SpeechSynthesis.EVENT_TEXT_START], mTextLength);
+                final int end = Math.min(start + events[i + SpeechSynthesis.EVENT_TEXT_LENGTH], mTextLength);
+                mCallback.rangeStart(events[i + SpeechSynthesis.EVENT_FRAME], start, end);
+            }
+        }
+    }
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The voices resolved from an installed copy of the eSpeak data.
+ *
+ * Listing the voices reads every voice file and resolves the locale of each
+ * voice. The catalog stores the result in a compact binary file so the next
+ * start only has to read that file. It is keyed by the version of the data
+ * (the SHA-256 of the data archive), so it is rebuilt whenever the data is
+ * upgraded.
+ */
+public class VoiceCatalog {
+    public static final String FILE_NAME = "voices.catalog";
+
+    private static final int MAGIC = 0x65535643; // "eSVC"
+    private static final int FORMAT_VERSION = 1;
+
+    // The smallest a voice can be in the file: five empty strings, each with
+    // a 2 byte length, and the gender and age.
+    private static final int MIN_VOICE_SIZE = 5 * 2 + 2 * 4;
+
+    public final String version;
+    public final int voiceCount;
+    public final List<Voice> voices;
+
+    /**
+     * @param version The version of the data the voices were listed from.
+     * @param voiceCount The number of voices eSpeak listed, including any that are not supported.
+     * @param voices The supported voices.
+     */
+    public VoiceCatalog(String version, int voiceCount, List<Voice> voices) {
+        this.version = version;
+        this.voiceCount = voiceCount;
+        this.voices = Collections.unmodifiableList(voices);
+    }
+
+    /**
+     * @return The catalog, or null if the file does not exist, is not valid,
+     *         or is for a different version of the data.
+     */
+    public static VoiceCatalog read(File file, String version) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            final DataInputStream input = new DataInputStream(new ByteArrayInputStream(FileUtils.readBinary(file)));
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION || !input.readUTF().equals(version)) {
+                return null;
+            }
+
+            final int voiceCount = input.readInt();
+            final int count = input.readInt();
+            // The count is not used to size the list, as a corrupt file could ask for a huge one.
+            if (count < 0 || count > input.available() / MIN_VOICE_SIZE) {
+                return null;
+            }
+            final List<Voice> voices = new ArrayList<Voice>();
+            for (int i = 0; i < count; ++i) {
+                final String name = input.readUTF();
+                final String identifier = input.readUTF();
+                final int gender = input.readInt();
+                final int age = input.readInt();
+                final Locale locale = new Locale(input.readUTF(), input.readUTF(), input.readUTF());
+                voices.add(new Voice(name, identifier, gender, age, locale));
+            }
+            return new VoiceCatalog(version, voiceCount, voices);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Replaces the catalog file, so a reader never sees a partially written
+     * catalog.
+     */
+    public void write(File file) throws IOException {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final DataOutputStream output = new DataOutputStream(content);
+        output.writeInt(MAGIC);
+        output.writeInt(FORMAT_VERSION);
+        output.writeUTF(version);
+        output.writeInt(voiceCount);
+        output.writeInt(voices.size());
+        for (Voice voice : voices) {
+            output.writeUTF(voice.name);
+            output.writeUTF(voice.identifier);
+            output.writeInt(voice.gender);
+            output.writeInt(voice.age);
+            output.writeUTF(voice.locale.getLanguage());
+            output.writeUTF(voice.locale.getCountry());
+            output.writeUTF(voice.locale.getVariant());
+        }
+        output.flush();
+
+        FileUtils.replace(file, content.toByteArray());
+    }
+}
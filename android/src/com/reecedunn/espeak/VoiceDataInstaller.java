@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import android.app.job.JobInfo;
+import android.app.job.JobParameters;
+import android.app.job.JobScheduler;
+import android.app.job.JobService;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Installs the voice data in the background, as a job.
+ *
+ * The job is not tied to an activity, so the install carries on when the
+ * user leaves the activity showing its progress. If the job is stopped or
+ * the process is killed, the job scheduler runs it again and the install
+ * carries on from the files that have already been written to the new data
+ * tree.
+ *
+ * {@link DownloadVoiceData#BROADCAST_LANGUAGES_UPDATED} is sent as soon as
+ * the new data tree is current, so the engine can be created on it.
+ */
+public class VoiceDataInstaller extends JobService {
+    private static final String TAG = "eSpeakTTS";
+    private static final boolean DEBUG = BuildConfig.DEBUG;
+
+    private static final int JOB_ID = 0x65535644; // "eSVD"
+
+    // The version of the data that the files of the data tree were last
+    // checked against its manifest for.
+    private static final String VERIFIED_FILE_NAME = "verified";
+
+    public interface Listener {
+        /**
+         * Called on the install thread as the files are extracted.
+         *
+         * @param extracted The number of bytes extracted so far.
+         * @param total The number of bytes to extract.
+         */
+        void onProgress(long extracted, long total);
+
+        /**
+         * Called on the install thread when the install has finished.
+         *
+         * @param success Whether the data was installed. If the install was
+         *        stopped, it is run again later.
+         */
+        void onFinished(boolean success);
+    }
+
+    private static final List<Listener> mListeners = new ArrayList<Listener>();
+    private static boolean mInstalling = false;
+    private static long mExtracted = 0;
+    private static long mTotal = 0;
+
+    private Thread mThread = null;
+
+    /**
+     * Starts installing the voice data, if it is not already being installed.
+     */
+    public static void start(Context context) {
+        synchronized (mListeners) {
+            if (mInstalling) {
+                return;
+            }
+        }
+
+        final JobScheduler scheduler = (JobScheduler)context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : scheduler.getAllPendingJobs()) {
+            // Scheduling the job again would stop it if it is running.
+            if (job.getId() == JOB_ID) {
+                return;
+            }
+        }
+
+        final JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, VoiceDataInstaller.class))
+                .setOverrideDeadline(0)
+                .build();
+        scheduler.schedule(job);
+    }
+
+    /**
+     * Adds a listener for the progress of the install. If the data is being
+     * installed, the listener is called with the current progress.
+     */
+    public static void addListener(Listener listener) {
+        synchronized (mListeners) {
+            mListeners.add(listener);
+            if (mInstalling) {
+                listener.onProgress(mExtracted, mTotal);
+            }
+        }
+    }
+
+    public static void removeListener(Listener listener) {
+        synchronized (mListeners) {
+            mListeners.remove(listener);
+        }
+    }
+
+    public static boolean isInstalling() {
+        synchronized (mListeners) {
+            return mInstalling;
+        }
+    }
+
+    private static void notifyProgress(long extracted, long total) {
+        synchronized (mListeners) {
+            mExtracted = extracted;
+            mTotal = total;
+            for (Listener listener : mListeners) {
+                listener.onProgress(extracted, total);
+            }
+        }
+    }
+
+    private static void notifyFinished(boolean success) {
+        synchronized (mListeners) {
+            mInstalling = false;
+            for (Listener listener : mListeners) {
+                listener.onFinished(success);
+            }
+        }
+    }
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        synchronized (mListeners) {
+            mInstalling = true;
+            mExtracted = 0;
+            mTotal = 0;
+        }
+
+        final Context storageContext = EspeakApp.getStorageContext();
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean success = false;
+                try {
+                    install(storageContext, R.raw.espeakdata);
+                    success = true;
+                } catch (IOException e) {
+                    Log.e(TAG, "Unable to install the voice data: " + e.getMessage());
+                }
+
+                notifyFinished(success);
+                if (success) {
+                    sendBroadcast(new Intent(DownloadVoiceData.BROADCAST_LANGUAGES_UPDATED));
+                }
+                // The job is run again when it is stopped, not when the install fails.
+                if (!Thread.currentThread().isInterrupted()) {
+                    jobFinished(params, false);
+                }
+            }
+        }, "VoiceDataInstaller");
+        mThread.start();
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The files written so far are kept, so the install carries on when the job is run again.
+        mThread.interrupt();
+        return true;
+    }
+
+    /**
+     * Installs the data into a new data tree, with the unchanged files linked
+     * from the current tree. This includes the language packs that are used
+     * with the current tree. The engine keeps using the current tree until the
+     * new one is complete and has been made current.
+     */
+    public static void install(Context context, int rawResId) throws IOException {
+        final String version = FileUtils.read(context.getResources().openRawResource(R.raw.espeakdata_version));
+        final File current = CheckVoiceData.getDataPath(context).getParentFile();
+        final File output = CheckVoiceData.getDataTree(context, version);
+
+        final DataExtractor extractor = new DataExtractor(context, rawResId, output, current);
+        // The new tree is only used for this version of the data, so the
+        // files from an earlier install that did not complete can be kept.
+        extractor.setResume(!output.equals(current));
+        final DataExtractor.Result result = extractor.extract(new DataExtractor.Listener() {
+            private long mTotal = 0;
+
+            @Override
+            public void onStart(long totalSize) {
+                mTotal = totalSize;
+                notifyProgress(0, totalSize);
+            }
+
+            @Override
+            public void onFileExtracted(File file, long size, long elapsedNanos, long extracted) {
+                if (DEBUG) {
+                    final long throughput = elapsedNanos == 0 ? 0 : (size * 1000000000L / 1024) / elapsedNanos;
+                    Log.v(TAG, "Extracted " + file + ": " + size + " bytes, " + throughput + " kB/s");
+                }
+                notifyProgress(extracted, mTotal);
+            }
+        });
+        Log.i(TAG, "Extracted the voice data: " + result);
+
+        // The language packs that have not been used are installed when they are needed.
+        LanguagePacks.upgrade(context, current, output);
+
+        FileUtils.replace(new File(output, "espeak-ng-data/version"), version.getBytes());
+        CheckVoiceData.setCurrentDataTree(context, output);
+    }
+
+    /**
+     * Checks the files of the data tree of the language packs against its
+     * manifest, and installs the files that are corrupt or missing again.
+     * Only those files are written.
+     *
+     * The files are only checked once for each version of the data, and
+     * again after the install of a language pack was interrupted.
+     *
+     * @return Whether any files were installed again.
+     */
+    public static boolean repair(Context context, LanguagePacks packs) throws IOException {
+        final File tree = packs.getTree();
+        final DataManifest manifest = DataManifest.read(tree);
+        if (packs.isInPlace() || manifest == null) {
+            return false;
+        }
+
+        // A tree without a version, such as one extracted by the tests, is always checked.
+        final File versionFile = new File(tree, "espeak-ng-data/version");
+        final String version = versionFile.exists() ? FileUtils.read(versionFile).trim() : null;
+        final File verified = new File(tree, VERIFIED_FILE_NAME);
+        final boolean interrupted = packs.isInstallInterrupted();
+        if (version != null && !interrupted && verified.exists() && FileUtils.read(verified).equals(version)) {
+            return false;
+        }
+
+        final long start = System.currentTimeMillis();
+        final List<String> missing = new ArrayList<String>();
+        final List<String> corrupt = manifest.verify(tree, missing);
+        boolean extract = false;
+        final List<String> repairedPacks = new ArrayList<String>();
+        for (String path : corrupt) {
+            Log.w(TAG, "Corrupt voice data file: " + path);
+            final String pack = packs.getPackOfFile(path);
+            if (pack == null) {
+                // The unchanged files are kept when the data is extracted again.
+                new File(tree, path).delete();
+                extract = true;
+            } else {
+                repairedPacks.add(pack);
+            }
+        }
+        for (String path : missing) {
+            final String pack = packs.getPackOfFile(path);
+            if (pack == null) {
+                Log.w(TAG, "Missing voice data file: " + path);
+                extract = true;
+            } else if (packs.isUsed(pack)) {
+                // The packs that have not been used are not installed.
+                Log.w(TAG, "Missing voice data file: " + path);
+                repairedPacks.add(pack);
+            }
+        }
+        if (DEBUG) {
+            Log.i(TAG, "Verified the voice data in " + (System.currentTimeMillis() - start) + " ms");
+        }
+
+        int repaired = 0;
+        if (extract) {
+            // A missing file that is not in the archive is not extracted.
+            repaired += new DataExtractor(context, R.raw.espeakdata, tree).extract(DataExtractor.Listener.NONE).files;
+        }
+        for (String pack : repairedPacks) {
+            packs.repair(pack);
+            ++repaired;
+        }
+
+        if (interrupted) {
+            packs.clearInstallInterrupted();
+        }
+        if (version != null) {
+            FileUtils.replace(verified, version.getBytes());
+        }
+        return repaired > 0;
+    }
+}
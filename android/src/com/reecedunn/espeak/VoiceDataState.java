@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.FileObserver;
+
+import java.io.File;
+
+/**
+ * The install status of the voice data, checked once and then kept in memory.
+ *
+ * Checking the status reads the data files, so it is only done again after
+ * the data has changed: when {@link DownloadVoiceData#BROADCAST_LANGUAGES_UPDATED}
+ * is sent, or when a file in the voices directory or the data path is
+ * created, removed or written.
+ */
+public class VoiceDataState {
+    private static final int CHANGES = FileObserver.CREATE | FileObserver.DELETE | FileObserver.MOVED_FROM | FileObserver.MOVED_TO | FileObserver.CLOSE_WRITE | FileObserver.DELETE_SELF | FileObserver.MOVE_SELF;
+
+    private static VoiceDataState mInstance = null;
+
+    private final Context mContext;
+    private final String mVersion;
+    private final FileObserver mVoicesObserver;
+    private FileObserver mDataObserver = null;
+    private File mWatchedPath = null;
+
+    private volatile Status mStatus = null;
+    private volatile int mGeneration = 0;
+
+    private static class Status {
+        public final File dataPath;
+        public final boolean hasBaseResources;
+        public final boolean canUpgradeResources;
+
+        public Status(File dataPath, boolean hasBaseResources, boolean canUpgradeResources) {
+            this.dataPath = dataPath;
+            this.hasBaseResources = hasBaseResources;
+            this.canUpgradeResources = canUpgradeResources;
+        }
+    }
+
+    private VoiceDataState(Context context) {
+        mContext = context;
+        mVersion = CheckVoiceData.getVersion(context);
+
+        mVoicesObserver = createObserver(context.getDir("voices", Context.MODE_PRIVATE));
+        mVoicesObserver.startWatching();
+
+        final IntentFilter filter = new IntentFilter(DownloadVoiceData.BROADCAST_LANGUAGES_UPDATED);
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        }, filter);
+    }
+
+    public static synchronized VoiceDataState get(Context context) {
+        if (mInstance == null) {
+            mInstance = new VoiceDataState(context);
+        }
+        return mInstance;
+    }
+
+    private FileObserver createObserver(File directory) {
+        return new FileObserver(directory.getPath(), CHANGES) {
+            @Override
+            public void onEvent(int event, String path) {
+                invalidate();
+            }
+        };
+    }
+
+    /**
+     * Checks the status again the next time it is used.
+     */
+    public synchronized void invalidate() {
+        ++mGeneration;
+        mStatus = null;
+    }
+
+    private Status getStatus() {
+        final Status current = mStatus;
+        if (current != null) {
+            return current;
+        }
+
+        final int generation = mGeneration;
+        final File dataPath = CheckVoiceData.getDataPath(mContext);
+        watch(dataPath);
+        final Status status = new Status(
+                dataPath,
+                CheckVoiceData.hasBaseResources(mContext),
+                CheckVoiceData.canUpgradeResources(mContext, mVersion));
+
+        synchronized (this) {
+            // If the data changed while it was being checked, it is checked again next time.
+            if (generation == mGeneration) {
+                mStatus = status;
+            }
+        }
+        return status;
+    }
+
+    private synchronized void watch(File dataPath) {
+        if (dataPath.equals(mWatchedPath)) {
+            return;
+        }
+        if (mDataObserver != null) {
+            mDataObserver.stopWatching();
+        }
+        mDataObserver = createObserver(dataPath);
+        mDataObserver.startWatching();
+        mWatchedPath = dataPath;
+    }
+
+    public File getDataPath() {
+        return getStatus().dataPath;
+    }
+
+    public boolean hasBaseResources() {
+        return getStatus().hasBaseResources;
+    }
+
+    public boolean canUpgradeResources() {
+        return getStatus().canUpgradeResources;
+    }
+}
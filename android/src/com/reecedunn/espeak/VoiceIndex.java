@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2026 eSpeak NG contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.reecedunn.espeak;
+
+import android.speech.tts.TextToSpeech;
+import android.util.Pair;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.MissingResourceException;
+
+/**
+ * An immutable index of the available voices by language, country and variant.
+ *
+ * The matches are computed when the index is built, so looking up a voice does
+ * not need a lock and, for the language and country codes passed by the TTS
+ * framework, does not allocate. The results are the same as matching each voice
+ * with {@link Voice#match(Locale)}.
+ */
+public class VoiceIndex {
+    public static final VoiceIndex EMPTY = new VoiceIndex(Collections.<Voice>emptyList());
+
+    private static final Pair<Voice, Integer> NOT_SUPPORTED = new Pair<>(null, TextToSpeech.LANG_NOT_SUPPORTED);
+
+    private static class CountryEntry {
+        public Pair<Voice, Integer> match;
+        public Pair<Voice, Integer> defaultMatch;
+        public final Map<String, Pair<Voice, Integer>> variants = new HashMap<>();
+    }
+
+    private static class LanguageEntry {
+        public Pair<Voice, Integer> match;
+        public Pair<Voice, Integer> defaultMatch;
+        public final Map<String, CountryEntry> countries = new HashMap<>();
+    }
+
+    private final Map<String, Voice> mVoices = new HashMap<>();
+    private final Map<String, LanguageEntry> mLanguages = new HashMap<>();
+
+    public VoiceIndex(List<Voice> voices) {
+        for (Voice voice : voices) {
+            mVoices.put(voice.name, voice);
+        }
+
+        // Voices are added in the same order as the linear scan over the
+        // voices this replaces, so the same voice is picked when several match.
+        for (Voice voice : mVoices.values()) {
+            add(voice);
+        }
+
+        for (Map.Entry<String, LanguageEntry> language : mLanguages.entrySet()) {
+            final String iso3Language = language.getKey();
+            if (iso3Language.length() != 3) {
+                continue; // an alias of the ISO 639-2 code
+            }
+
+            String country = "";
+            if (iso3Language.equals("fra")) {
+                country = "FRA";
+            } else if (iso3Language.equals("por")) {
+                country = "PRT";
+            }
+            language.getValue().defaultMatch = new Pair<>(find(iso3Language, country, "").first, TextToSpeech.LANG_AVAILABLE);
+
+            for (Map.Entry<String, CountryEntry> entry : language.getValue().countries.entrySet()) {
+                final String iso3Country = entry.getKey();
+                if (iso3Country.length() == 2) {
+                    continue; // an alias of the ISO 3166 alpha-3 code
+                }
+
+                final String variant = iso3Language.equals("vie") && iso3Country.equals("VNM") ? "hue" : "";
+                entry.getValue().defaultMatch = new Pair<>(find(iso3Language, iso3Country, variant).first, TextToSpeech.LANG_COUNTRY_AVAILABLE);
+            }
+        }
+    }
+
+    private void add(Voice voice) {
+        final String iso3Language;
+        try {
+            iso3Language = voice.locale.getISO3Language();
+        } catch (MissingResourceException e) {
+            return;
+        }
+
+        LanguageEntry language = mLanguages.get(iso3Language);
+        if (language == null) {
+            language = new LanguageEntry();
+            mLanguages.put(iso3Language, language);
+        }
+        mLanguages.put(voice.locale.getLanguage(), language);
+        language.match = new Pair<>(voice, TextToSpeech.LANG_AVAILABLE);
+
+        final String iso3Country;
+        try {
+            iso3Country = voice.locale.getISO3Country();
+        } catch (MissingResourceException e) {
+            return;
+        }
+
+        CountryEntry country = language.countries.get(iso3Country);
+        if (country == null) {
+            country = new CountryEntry();
+            language.countries.put(iso3Country, country);
+        }
+        language.countries.put(voice.locale.getCountry(), country);
+        country.match = new Pair<>(voice, TextToSpeech.LANG_COUNTRY_AVAILABLE);
+
+        if (!country.variants.containsKey(voice.locale.getVariant())) {
+            country.variants.put(voice.locale.getVariant(), new Pair<>(voice, TextToSpeech.LANG_COUNTRY_VAR_AVAILABLE));
+        }
+    }
+
+    public Voice getVoice(String name) {
+        return mVoices.get(name);
+    }
+
+    public Collection<Voice> getVoices() {
+        return Collections.unmodifiableCollection(mVoices.values());
+    }
+
+    /**
+     * Finds the voice that best matches a locale.
+     *
+     * @return The matching voice (or null) and a text-to-speech availability code.
+     */
+    public Pair<Voice, Integer> find(String language, String country, String variant) {
+        final LanguageEntry languageEntry = getLanguage(language);
+        if (languageEntry == null) {
+            return NOT_SUPPORTED;
+        }
+
+        final CountryEntry countryEntry = getCountry(languageEntry, country);
+        if (countryEntry == null) {
+            return languageEntry.match;
+        }
+
+        final Pair<Voice, Integer> match = countryEntry.variants.get(variant);
+        return match == null ? countryEntry.match : match;
+    }
+
+    /**
+     * Finds the voice to use for a locale. This is the same as {@link #find}
+     * for an exact match, otherwise it is the default voice for the language
+     * or country that matched.
+     */
+    public Pair<Voice, Integer> findDefault(String language, String country, String variant) {
+        final LanguageEntry languageEntry = getLanguage(language);
+        if (languageEntry == null) {
+            return NOT_SUPPORTED;
+        }
+
+        final CountryEntry countryEntry = getCountry(languageEntry, country);
+        if (countryEntry == null) {
+            return languageEntry.defaultMatch;
+        }
+
+        final Pair<Voice, Integer> match = countryEntry.variants.get(variant);
+        return match == null ? countryEntry.defaultMatch : match;
+    }
+
+    private LanguageEntry getLanguage(String language) {
+        final LanguageEntry entry = mLanguages.get(language);
+        if (entry != null || isCode(language, 3, 3, 'a', 'z')) {
+            return entry;
+        }
+        // Normalize the case, or an old code such as "iw" for Hebrew.
+        try {
+            return mLanguages.get(new Locale(language).getISO3Language());
+        } catch (MissingResourceException e) {
+            return null;
+        }
+    }
+
+    private static CountryEntry getCountry(LanguageEntry language, String country) {
+        final CountryEntry entry = language.countries.get(country);
+        if (entry != null || isCode(country, 0, 3, 'A', 'Z')) {
+            return entry;
+        }
+        try {
+            return language.countries.get(new Locale("", country).getISO3Country());
+        } catch (MissingResourceException e) {
+            return null;
+        }
+    }
+
+    private static boolean isCode(String code, int minLength, int maxLength, char first, char last) {
+        if (code.length() < minLength || code.length() > maxLength) {
+            return false;
+        }
+        for (int i = 0; i < code.length(); ++i) {
+            if (code.charAt(i) < first || code.charAt(i) > last) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
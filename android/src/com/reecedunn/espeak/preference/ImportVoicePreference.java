@@ -100,8 +100,8 @@ public class ImportVoicePreference extends DialogPreference {
                         if (source != null) {
                             File destination = new File(CheckVoiceData.getDataPath(getContext()), source.getName());
                             try {
-                                byte[] data = FileUtils.readBinary(source);
-                                FileUtils.write(destination, data);
+                                // The running engine may have the old dictionary mapped.
+                                FileUtils.replace(destination, source);
                                 return source;
                             } catch (IOException e) {
                             }
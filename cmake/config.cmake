@@ -1,5 +1,8 @@
 include(CheckSymbolExists)
 check_symbol_exists(mkstemp "stdlib.h" HAVE_MKSTEMP)
+check_symbol_exists(mmap "sys/mman.h" HAVE_MMAP)
+check_symbol_exists(fmemopen "stdio.h" HAVE_FMEMOPEN)
+check_symbol_exists(funopen "stdio.h" HAVE_FUNOPEN)
 
 option(USE_MBROLA "Use mbrola for speech synthesis" ${HAVE_MBROLA})
 option(USE_LIBSONIC "Use libsonit for faster speech rates" ${HAVE_LIBSONIC})
@@ -215,6 +215,27 @@ espeak_ng_SetConstF0(int f0);
 ESPEAK_NG_API espeak_ng_STATUS
 espeak_ng_SetRandSeed(long seed);
 
+/* eSpeak NG 1.52 */
+
+ESPEAK_NG_API espeak_ng_STATUS
+espeak_ng_SetInitialBufferLength(int buffer_length);
+
+ESPEAK_NG_API espeak_ng_STATUS
+espeak_ng_SetDictionaryCacheSize(int size);
+
+ESPEAK_NG_API espeak_ng_STATUS
+espeak_ng_SetMappedDataFiles(int enable);
+
+typedef struct
+{
+  const char *name; // The path of the file, relative to the archive directory.
+  long long offset; // The offset of the file data in the archive.
+  long long length; // The length of the file data.
+} espeak_ng_DATA_FILE;
+
+ESPEAK_NG_API espeak_ng_STATUS
+espeak_ng_SetDataArchive(int fd, const char *path, const espeak_ng_DATA_FILE *files, int count);
+
 
 #ifdef __cplusplus
 }
@@ -30,6 +30,12 @@
 #include <sys/stat.h>
 #include <wctype.h>
 
+#if HAVE_MMAP
+#include <fcntl.h>
+#include <sys/mman.h>
+#include <unistd.h>
+#endif
+
 #include <espeak-ng/espeak_ng.h>
 #include <espeak-ng/speak_lib.h>
 #include <espeak-ng/encoding.h>
@@ -38,14 +44,245 @@
 #include "common.h"
 #include "translate.h"
 
+#define USE_DATA_ARCHIVE (HAVE_MMAP && (HAVE_FUNOPEN || HAVE_FMEMOPEN))
+
+#if USE_DATA_ARCHIVE
+typedef struct {
+	char *name;
+	off_t offset;
+	int length;
+} DATA_ARCHIVE_FILE;
+
+// The data files that are read from a region of a file, such as an archive
+// that stores the files uncompressed, when they are not on disk.
+static struct {
+	int fd;
+	char *path;
+	size_t path_len;
+	DATA_ARCHIVE_FILE *files;
+	int n_files;
+} data_archive = { -1, NULL, 0, NULL, 0 };
+
+static int compare_archive_files(const void *a, const void *b)
+{
+	return strcmp(((const DATA_ARCHIVE_FILE *)a)->name, ((const DATA_ARCHIVE_FILE *)b)->name);
+}
+
+// Returns the path of the file relative to the data archive, or NULL if the
+// file is not in the archive directory.
+static const char *GetArchivePath(const char *filename)
+{
+	if (data_archive.fd < 0 || strncmp(filename, data_archive.path, data_archive.path_len) != 0)
+		return NULL;
+	if (filename[data_archive.path_len] == 0)
+		return filename + data_archive.path_len;
+	if (filename[data_archive.path_len] != '/')
+		return NULL;
+	return filename + data_archive.path_len + 1;
+}
+
+static const DATA_ARCHIVE_FILE *FindArchiveFile(const char *filename)
+{
+	DATA_ARCHIVE_FILE key;
+	if ((key.name = (char *)GetArchivePath(filename)) == NULL)
+		return NULL;
+	return bsearch(&key, data_archive.files, data_archive.n_files, sizeof(DATA_ARCHIVE_FILE), compare_archive_files);
+}
+
+static int IsArchiveDirectory(const char *filename)
+{
+	const char *name = GetArchivePath(filename);
+	if (name == NULL)
+		return 0;
+	if (name[0] == 0)
+		return data_archive.n_files > 0;
+
+	size_t len = strlen(name);
+	for (int i = 0; i < data_archive.n_files; i++) {
+		if (strncmp(data_archive.files[i].name, name, len) == 0 && data_archive.files[i].name[len] == '/')
+			return 1;
+	}
+	return 0;
+}
+
+static espeak_ng_STATUS ReadArchiveFile(const DATA_ARCHIVE_FILE *file, void *data)
+{
+	int read = 0;
+	while (read < file->length) {
+		ssize_t n = pread(data_archive.fd, (char *)data + read, file->length - read, file->offset + read);
+		if (n < 0 && errno == EINTR)
+			continue;
+		if (n <= 0)
+			return n < 0 ? errno : EIO;
+		read += n;
+	}
+	return ENS_OK;
+}
+
+#if HAVE_FUNOPEN
+typedef struct {
+	char *data;
+	int length;
+	int position;
+} MEMORY_FILE;
+
+static int ReadMemoryFile(void *cookie, char *buf, int size)
+{
+	MEMORY_FILE *file = cookie;
+	int n = file->length - file->position;
+	if (n > size)
+		n = size;
+	memcpy(buf, file->data + file->position, n);
+	file->position += n;
+	return n;
+}
+
+static int CloseMemoryFile(void *cookie)
+{
+	MEMORY_FILE *file = cookie;
+	free(file->data);
+	free(file);
+	return 0;
+}
+#endif
+
+// Opens a stream that reads a copy of the file from the archive.
+static FILE *OpenArchiveFile(const DATA_ARCHIVE_FILE *file)
+{
+	void *data = malloc(file->length);
+	if (data == NULL)
+		return NULL;
+	if (ReadArchiveFile(file, data) != ENS_OK) {
+		free(data);
+		return NULL;
+	}
+
+#if HAVE_FUNOPEN
+	MEMORY_FILE *cookie = malloc(sizeof(MEMORY_FILE));
+	FILE *f = NULL;
+	if (cookie != NULL) {
+		cookie->data = data;
+		cookie->length = file->length;
+		cookie->position = 0;
+		if ((f = funopen(cookie, ReadMemoryFile, NULL, NULL, CloseMemoryFile)) != NULL)
+			return f;
+		free(cookie);
+	}
+	free(data);
+	return NULL;
+#else
+	// The stream has its own copy of the data, so it is freed by fclose.
+	FILE *f = fmemopen(NULL, file->length, "w+");
+	if (f != NULL) {
+		if (fwrite(data, 1, file->length, f) == (size_t)file->length)
+			rewind(f);
+		else {
+			fclose(f);
+			f = NULL;
+		}
+	}
+	free(data);
+	return f;
+#endif
+}
+
+static void ClearDataArchive(void)
+{
+	for (int i = 0; i < data_archive.n_files; i++)
+		free(data_archive.files[i].name);
+	free(data_archive.files);
+	free(data_archive.path);
+	if (data_archive.fd >= 0)
+		close(data_archive.fd);
+
+	data_archive.fd = -1;
+	data_archive.path = NULL;
+	data_archive.path_len = 0;
+	data_archive.files = NULL;
+	data_archive.n_files = 0;
+}
+#endif
+
+#if USE_DATA_ARCHIVE
+// Returns the name of the file or subdirectory of the directory that the
+// archive file is in, or NULL if the file is not in the directory.
+static const char *GetArchiveChild(int index, const char *path, size_t len, size_t *child_len)
+{
+	const char *child = data_archive.files[index].name;
+	if (len > 0) {
+		if (strncmp(child, path, len) != 0 || child[len] != '/')
+			return NULL;
+		child += len + 1;
+	}
+	*child_len = strcspn(child, "/");
+	return child;
+}
+#endif
+
+int NextDataArchiveFile(const char *directory, int *index, char *name, int size)
+{
+#if USE_DATA_ARCHIVE
+	const char *path = GetArchivePath(directory);
+	if (path == NULL)
+		return 0;
+
+	size_t len = strlen(path);
+	for (; *index < data_archive.n_files; ++*index) {
+		size_t child_len;
+		const char *child = GetArchiveChild(*index, path, len, &child_len);
+		if (child == NULL || child_len >= (size_t)size)
+			continue;
+
+		// The files are sorted, so the files in a subdirectory are next to each other.
+		size_t previous_len;
+		const char *previous = *index > 0 ? GetArchiveChild(*index - 1, path, len, &previous_len) : NULL;
+		if (previous != NULL && previous_len == child_len && strncmp(previous, child, child_len) == 0)
+			continue;
+
+		memcpy(name, child, child_len);
+		name[child_len] = 0;
+		++*index;
+		return 1;
+	}
+#else
+	(void)directory; // unused
+	(void)index; // unused
+	(void)name; // unused
+	(void)size; // unused
+#endif
+	return 0;
+}
+
+FILE *OpenDataFile(const char *filename, const char *mode)
+{
+	FILE *f = fopen(filename, mode);
+#if USE_DATA_ARCHIVE
+	const DATA_ARCHIVE_FILE *file;
+	if (f == NULL && errno == ENOENT && (file = FindArchiveFile(filename)) != NULL && file->length > 0)
+		f = OpenArchiveFile(file);
+#endif
+	return f;
+}
+
 #pragma GCC visibility push(default)
 
 int GetFileLength(const char *filename)
 {
 	struct stat statbuf;
 
-	if (stat(filename, &statbuf) != 0)
+	if (stat(filename, &statbuf) != 0) {
+#if USE_DATA_ARCHIVE
+		if (errno == ENOENT) {
+			const DATA_ARCHIVE_FILE *file = FindArchiveFile(filename);
+			if (file != NULL)
+				return file->length;
+			if (IsArchiveDirectory(filename))
+				return -EISDIR;
+			errno = ENOENT;
+		}
+#endif
 		return -errno;
+	}
 
 	if (S_ISDIR(statbuf.st_mode))
 		return -EISDIR;
@@ -53,6 +290,104 @@ int GetFileLength(const char *filename)
 	return statbuf.st_size;
 }
 
+static int map_data_files = 0;
+
+espeak_ng_STATUS LoadFileData(const char *filename, int length, void **data, int *mapped)
+{
+	*data = NULL;
+	*mapped = 0;
+	if (length <= 0)
+		return ENS_OK;
+
+#if USE_DATA_ARCHIVE
+	const DATA_ARCHIVE_FILE *file;
+	if ((file = FindArchiveFile(filename)) != NULL && access(filename, F_OK) != 0) {
+		if (length > file->length)
+			return EIO;
+
+		// The dictionaries are aligned to 4 bytes from the start of the
+		// data, so the mapped data needs to be at least as aligned as that.
+		if (map_data_files && file->offset % 4 == 0) {
+			// The file is not necessarily page aligned in the archive, so the
+			// mapping starts at the page containing the start of the file.
+			off_t page_offset = file->offset % sysconf(_SC_PAGESIZE);
+			void *ptr = mmap(NULL, length + page_offset, PROT_READ, MAP_PRIVATE, data_archive.fd, file->offset - page_offset);
+			if (ptr != MAP_FAILED) {
+				*data = (char *)ptr + page_offset;
+				*mapped = 1;
+				return ENS_OK;
+			}
+		}
+
+		if ((*data = malloc(length)) == NULL)
+			return ENOMEM;
+		DATA_ARCHIVE_FILE region = *file;
+		region.length = length;
+		espeak_ng_STATUS status = ReadArchiveFile(&region, *data);
+		if (status != ENS_OK) {
+			free(*data);
+			*data = NULL;
+		}
+		return status;
+	}
+#endif
+
+#if HAVE_MMAP
+	if (map_data_files) {
+		int fd = open(filename, O_RDONLY);
+		if (fd < 0)
+			return errno;
+
+		void *ptr = mmap(NULL, length, PROT_READ, MAP_PRIVATE, fd, 0);
+		close(fd);
+		if (ptr != MAP_FAILED) {
+			*data = ptr;
+			*mapped = 1;
+			return ENS_OK;
+		}
+		// fall back to reading the file into memory
+	}
+#endif
+
+	FILE *f_in = fopen(filename, "rb");
+	if (f_in == NULL)
+		return errno;
+
+	if ((*data = malloc(length)) == NULL) {
+		fclose(f_in);
+		return ENOMEM;
+	}
+	if (fread(*data, 1, length, f_in) != (size_t)length) {
+		int error = ferror(f_in) ? errno : EIO;
+		fclose(f_in);
+		free(*data);
+		*data = NULL;
+		return error;
+	}
+
+	fclose(f_in);
+	return ENS_OK;
+}
+
+void FreeFileData(void *data, int length, int mapped)
+{
+	if (data == NULL)
+		return;
+
+#if HAVE_MMAP
+	if (mapped) {
+		// Files mapped from an archive start part of the way into a page.
+		size_t page_offset = (uintptr_t)data % sysconf(_SC_PAGESIZE);
+		munmap((char *)data - page_offset, length + page_offset);
+		return;
+	}
+#else
+	(void)length; // unused
+	(void)mapped; // unused
+#endif
+	free(data);
+}
+
 void strncpy0(char *to, const char *from, int size)
 {
 	// strcpy with limit, ensures a zero terminator
@@ -341,6 +676,65 @@ void espeak_srand(long seed) {
 }
 
 #pragma GCC visibility push(default)
+ESPEAK_NG_API espeak_ng_STATUS
+espeak_ng_SetMappedDataFiles(int enable) {
+#if HAVE_MMAP
+	map_data_files = enable;
+	return ENS_OK;
+#else
+	return enable ? ENS_NOT_SUPPORTED : ENS_OK;
+#endif
+}
+
+ESPEAK_NG_API espeak_ng_STATUS
+espeak_ng_SetDataArchive(int fd, const char *path, const espeak_ng_DATA_FILE *files, int count) {
+#if USE_DATA_ARCHIVE
+	ClearDataArchive();
+	if (fd < 0)
+		return ENS_OK;
+
+	if (path == NULL || (files == NULL && count > 0) || count < 0)
+		return EINVAL;
+
+	if ((data_archive.files = calloc(count > 0 ? count : 1, sizeof(DATA_ARCHIVE_FILE))) == NULL)
+		return ENOMEM;
+	for (int i = 0; i < count; i++) {
+		if (files[i].name == NULL || files[i].offset < 0 || files[i].length < 0 || files[i].length > INT32_MAX) {
+			ClearDataArchive();
+			return EINVAL;
+		}
+		if ((data_archive.files[i].name = strdup(files[i].name)) == NULL) {
+			ClearDataArchive();
+			return ENOMEM;
+		}
+		data_archive.files[i].offset = files[i].offset;
+		data_archive.files[i].length = (int)files[i].length;
+		data_archive.n_files = i + 1;
+	}
+	qsort(data_archive.files, data_archive.n_files, sizeof(DATA_ARCHIVE_FILE), compare_archive_files);
+
+	if ((data_archive.path = strdup(path)) == NULL) {
+		ClearDataArchive();
+		return ENOMEM;
+	}
+	data_archive.path_len = strlen(path);
+	while (data_archive.path_len > 1 && data_archive.path[data_archive.path_len - 1] == '/')
+		data_archive.path[--data_archive.path_len] = 0;
+
+	if ((data_archive.fd = dup(fd)) < 0) {
+		espeak_ng_STATUS status = errno;
+		ClearDataArchive();
+		return status;
+	}
+	return ENS_OK;
+#else
+	(void)path; // unused
+	(void)files; // unused
+	(void)count; // unused
+	return fd < 0 ? ENS_OK : ENS_NOT_SUPPORTED;
+#endif
+}
+
 ESPEAK_NG_API espeak_ng_STATUS
 espeak_ng_SetRandSeed(long seed) {
 	espeak_srand(seed);
@@ -26,6 +26,24 @@
 extern ESPEAK_NG_API int GetFileLength(const char *filename);
 extern ESPEAK_NG_API void strncpy0(char *to, const char *from, int size);
 
+/* Loads a data file of the given length. If mapped data files are enabled,
+ * the file is mapped read-only so that its pages can be shared with other
+ * processes through the page cache. The data is freed with FreeFileData.
+ */
+espeak_ng_STATUS LoadFileData(const char *filename, int length, void **data, int *mapped);
+void FreeFileData(void *data, int length, int mapped);
+
+/* Opens a data file for reading, reading it from the data archive set by
+ * espeak_ng_SetDataArchive if it is not on disk.
+ */
+FILE *OpenDataFile(const char *filename, const char *mode);
+
+/* Gets the name of the next file or subdirectory of the directory that is in
+ * the data archive, starting with an index of 0. Returns 0 when there are no
+ * more names.
+ */
+int NextDataArchiveFile(const char *directory, int *index, char *name, int size);
+
 void espeak_srand(long seed);
 long espeak_rand(long min, long max);
 
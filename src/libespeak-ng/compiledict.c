@@ -1606,6 +1606,7 @@ ESPEAK_NG_API espeak_ng_STATUS espeak_ng_CompileDictionary(const char *dsource,
 		return status;
 	}
 
+	FlushDictionaryCache();
 	LoadDictionary(translator, dict_name, 0);
 
 	status = ctx->error_count > 0 ? ENS_COMPILE_ERROR : ENS_OK;
@@ -20,10 +20,12 @@
 #include "config.h"
 
 #include <ctype.h>
+#include <errno.h>
 #include <stdint.h>
 #include <stdio.h>
 #include <stdlib.h>
 #include <string.h>
+#include <sys/stat.h>
 #include <wctype.h>
 #include <wchar.h>
 #include <assert.h>
@@ -57,6 +59,27 @@ typedef struct {
 int dictionary_skipwords;
 char dictionary_name[40];
 
+// Recently used dictionaries are kept in memory, so that switching back to a
+// language does not need to read its dictionary file again.
+#define N_DICTIONARY_CACHE 16
+
+typedef struct {
+	char path[sizeof(path_home)+20]; // empty if the data is out of date
+	char *data;
+	int size;
+	// The file the data was read from, which can be replaced by a file
+	// of the same size.
+	time_t modified;
+	ino_t inode;
+	int mapped;
+	int refs;                        // number of translators using the data
+	unsigned int last_used;
+} DICTIONARY_CACHE_ENTRY;
+
+static DICTIONARY_CACHE_ENTRY dictionary_cache[N_DICTIONARY_CACHE];
+static int dictionary_cache_size = 0; // maximum size of the cached dictionaries in bytes
+static unsigned int dictionary_cache_clock = 0;
+
 // accented characters which indicate (in some languages) the start of a separate syllable
 static const unsigned short diereses_list[7] = { 0xe4, 0xeb, 0xef, 0xf6, 0xfc, 0xff, 0 };
 
@@ -193,13 +216,162 @@ static void InitGroups(Translator *tr)
 	}
 }
 
+static void FreeDictionaryCacheEntry(DICTIONARY_CACHE_ENTRY *entry)
+{
+	FreeFileData(entry->data, entry->size, entry->mapped);
+	entry->data = NULL;
+	entry->path[0] = 0;
+}
+
+/* Free the least recently used dictionaries that are not in use until the
+ * cache fits in max_size bytes. If need_entry is set, also make sure there is
+ * a free entry.
+ */
+static void TrimDictionaryCache(int max_size, int need_entry)
+{
+	for (;;) {
+		DICTIONARY_CACHE_ENTRY *lru = NULL;
+		int total = 0;
+		int free_entries = 0;
+		for (int ix = 0; ix < N_DICTIONARY_CACHE; ix++) {
+			DICTIONARY_CACHE_ENTRY *entry = &dictionary_cache[ix];
+			if (entry->data == NULL) {
+				free_entries++;
+				continue;
+			}
+			total += entry->size;
+			if ((entry->refs == 0) && ((lru == NULL) || (entry->last_used < lru->last_used)))
+				lru = entry;
+		}
+
+		if ((total <= max_size) && ((need_entry == 0) || (free_entries > 0)))
+			return;
+		if (lru == NULL)
+			return;
+
+		FreeDictionaryCacheEntry(lru);
+	}
+}
+
+/* Get the modification time and inode of the file, which are left as 0 if
+ * the file is not on the file system, such as when it is in a data archive.
+ */
+static void GetDictionaryFileId(const char *fname, time_t *modified, ino_t *inode)
+{
+	struct stat statbuf;
+
+	*modified = 0;
+	*inode = 0;
+	if (stat(fname, &statbuf) == 0) {
+		*modified = statbuf.st_mtime;
+		*inode = statbuf.st_ino;
+	}
+}
+
+static char *GetCachedDictionary(const char *fname, int size)
+{
+	if (dictionary_cache_size <= 0)
+		return NULL;
+
+	for (int ix = 0; ix < N_DICTIONARY_CACHE; ix++) {
+		DICTIONARY_CACHE_ENTRY *entry = &dictionary_cache[ix];
+		if ((entry->data != NULL) && (strcmp(entry->path, fname) == 0)) {
+			time_t modified;
+			ino_t inode;
+			GetDictionaryFileId(fname, &modified, &inode);
+			if ((entry->size != size) || (entry->modified != modified) || (entry->inode != inode)) {
+				// The file has been replaced, so the data is out of date.
+				// It is freed when it is no longer in use.
+				entry->path[0] = 0;
+				if (entry->refs == 0)
+					FreeDictionaryCacheEntry(entry);
+				return NULL;
+			}
+
+			entry->refs++;
+			entry->last_used = ++dictionary_cache_clock;
+			return entry->data;
+		}
+	}
+	return NULL;
+}
+
+/* Add the dictionary to the cache. Mapped dictionaries are always added, as
+ * the cache keeps track of how to free them. Returns 0 if a mapped dictionary
+ * could not be added.
+ */
+static int CacheDictionary(const char *fname, char *data, int size, int mapped)
+{
+	if ((mapped == 0) && (size > dictionary_cache_size))
+		return 1;
+
+	TrimDictionaryCache(dictionary_cache_size - size, 1);
+	for (int ix = 0; ix < N_DICTIONARY_CACHE; ix++) {
+		DICTIONARY_CACHE_ENTRY *entry = &dictionary_cache[ix];
+		if (entry->data == NULL) {
+			strncpy0(entry->path, fname, sizeof(entry->path));
+			entry->data = data;
+			entry->size = size;
+			GetDictionaryFileId(fname, &entry->modified, &entry->inode);
+			entry->mapped = mapped;
+			entry->refs = 1;
+			entry->last_used = ++dictionary_cache_clock;
+			return 1;
+		}
+	}
+	return mapped == 0;
+}
+
+void ReleaseDictionary(char *data)
+{
+	if (data == NULL)
+		return;
+
+	for (int ix = 0; ix < N_DICTIONARY_CACHE; ix++) {
+		DICTIONARY_CACHE_ENTRY *entry = &dictionary_cache[ix];
+		if (entry->data == data) {
+			entry->refs--;
+			if (entry->path[0] == 0) {
+				// the data is out of date, so don't keep it
+				if (entry->refs == 0)
+					FreeDictionaryCacheEntry(entry);
+			} else
+				TrimDictionaryCache(dictionary_cache_size, 0);
+			return;
+		}
+	}
+	free(data);
+}
+
+void FlushDictionaryCache(void)
+{
+	// Dictionaries that are in use are freed when they are released.
+	for (int ix = 0; ix < N_DICTIONARY_CACHE; ix++)
+		dictionary_cache[ix].path[0] = 0;
+	TrimDictionaryCache(0, 0);
+}
+
+#pragma GCC visibility push(default)
+
+ESPEAK_NG_API espeak_ng_STATUS espeak_ng_SetDictionaryCacheSize(int size)
+{
+	if (size < 0)
+		return EINVAL;
+
+	// The cache is trimmed to the new size when a dictionary is next loaded
+	// or released, as that may happen on the synthesis thread.
+	dictionary_cache_size = size;
+	return ENS_OK;
+}
+
+#pragma GCC visibility pop
+
 int LoadDictionary(Translator *tr, const char *name, int no_error)
 {
 	int hash;
 	char *p;
 	int *pw;
 	int length;
-	FILE *f;
 	int size;
 	char fname[sizeof(path_home)+20];
 
@@ -215,25 +387,28 @@ int LoadDictionary(Translator *tr, const char *name, int no_error)
 	size = GetFileLength(fname);
 
 	if (tr->data_dictlist != NULL) {
-		free(tr->data_dictlist);
+		ReleaseDictionary(tr->data_dictlist);
 		tr->data_dictlist = NULL;
 	}
 
-	f = fopen(fname, "rb");
-	if ((f == NULL) || (size <= 0)) {
-		if (no_error == 0)
-			fprintf(stderr, "Can't read dictionary file: '%s'\n", fname);
-		if (f != NULL)
-			fclose(f);
-		return 1;
-	}
+	if ((tr->data_dictlist = GetCachedDictionary(fname, size)) == NULL) {
+		void *data = NULL;
+		int mapped = 0;
+		espeak_ng_STATUS status = (size > 0) ? LoadFileData(fname, size, &data, &mapped) : ENOENT;
+		if (status == ENOMEM)
+			return 3;
+		if (status != ENS_OK) {
+			if (no_error == 0)
+				fprintf(stderr, "Can't read dictionary file: '%s'\n", fname);
+			return 1;
+		}
 
-	if ((tr->data_dictlist = malloc(size)) == NULL) {
-		fclose(f);
-		return 3;
+		if (CacheDictionary(fname, data, size, mapped) == 0) {
+			FreeFileData(data, size, mapped);
+			return 3;
+		}
+		tr->data_dictlist = data;
 	}
-	size = fread(tr->data_dictlist, 1, size, f);
-	fclose(f);
 
 	pw = (int *)(tr->data_dictlist);
 	length = Reverse4Bytes(pw[1]);
@@ -468,6 +468,9 @@ void fifo_terminate(void)
 	pthread_cond_signal(&my_cond_start_is_required);
 	pthread_join(my_thread, NULL);
 	my_terminate_is_required = false;
+	// The thread is woken to see the terminate request, which marks a command
+	// as running, so the next thread would wait for a stop to be acknowledged.
+	my_command_is_running = false;
 	thread_inited = false;
 
 	pthread_mutex_destroy(&my_mutex);
@@ -31,6 +31,7 @@
 #include <espeak-ng/speak_lib.h>
 #include <espeak-ng/encoding.h>
 
+#include "common.h"                   // for OpenDataFile
 #include "langopts.h"
 #include "mnemonics.h"                // for MNEM_TAB
 #include "translate.h"                // for Translator
@@ -187,7 +188,7 @@ void LoadConfig(void) {
 	char string[200];
 
 	sprintf(buf, "%s%c%s", path_home, PATHSEP, "config");
-	if ((f = fopen(buf, "r")) == NULL)
+	if ((f = OpenDataFile(buf, "r")) == NULL)
 		return;
 
 	while (fgets(buf, sizeof(buf), f) != NULL) {
@@ -65,6 +65,7 @@
 
 static unsigned char *outbuf = NULL;
 static int outbuf_size = 0;
+static int initial_buffer_length = 0; // length of the first chunk in ms, 0 to use the whole buffer
 static unsigned char *out_start;
 
 espeak_EVENT *event_list = NULL;
@@ -302,9 +303,21 @@ ESPEAK_NG_API espeak_ng_STATUS espeak_ng_InitializeOutput(espeak_ng_OUTPUT_MODE
 	return ENS_OK;
 }
 
+ESPEAK_NG_API espeak_ng_STATUS espeak_ng_SetInitialBufferLength(int buffer_length)
+{
+	if (buffer_length < 0)
+		return EINVAL;
+
+	initial_buffer_length = buffer_length;
+	return ENS_OK;
+}
 
 ESPEAK_NG_API void espeak_ng_InitializePath(const char *path)
 {
+	// The data may have changed since the dictionaries were cached, even if
+	// the path is the same.
+	FlushDictionaryCache();
+
 	if (check_data_path(path, 1))
 		return;
 
@@ -454,9 +467,24 @@ static espeak_ng_STATUS Synthesize(unsigned int unique_identifier, const void *t
 
 	SpeakNextClause(0);
 
+	// Start with a short chunk so that the first audio is available quickly,
+	// then double the chunk length up to the full buffer.
+	int chunk_size = outbuf_size;
+	if (initial_buffer_length > 0) {
+		int millisamples = initial_buffer_length * samplerate;
+		chunk_size = (millisamples + 1000 - millisamples % 1000) / 500;
+		if (chunk_size > outbuf_size)
+			chunk_size = outbuf_size;
+	}
+
 	for (;;) {
 		out_ptr = outbuf;
-		out_end = &outbuf[outbuf_size];
+		out_end = &outbuf[chunk_size];
+		if (chunk_size < outbuf_size) {
+			chunk_size *= 2;
+			if (chunk_size > outbuf_size)
+				chunk_size = outbuf_size;
+		}
 		event_list_ix = 0;
 		WavegenFill();
 
@@ -931,12 +959,14 @@ ESPEAK_NG_API espeak_ng_STATUS espeak_ng_Terminate(void)
 
 	free(outbuf);
 	outbuf = NULL;
+	initial_buffer_length = 0;
 
 	FreePhData();
 	FreeVoiceList();
 
 	DeleteTranslator(translator);
 	translator = NULL;
+	FlushDictionaryCache();
 
 	if (p_decoder != NULL) {
 		destroy_text_decoder(p_decoder);
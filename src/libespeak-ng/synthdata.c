@@ -63,11 +63,29 @@ int phoneme_tab_number = 0;
 
 int seq_len_adjust;
 
-static espeak_ng_STATUS ReadPhFile(void **ptr, const char *fname, int *size, espeak_ng_ERROR_CONTEXT *context)
+// The size of a loaded data file, and whether it is memory mapped, needed to free it.
+typedef struct {
+	int size;
+	int mapped;
+} PH_FILE;
+
+static PH_FILE phoneme_tab_file;
+static PH_FILE phoneme_index_file;
+static PH_FILE phondata_file;
+static PH_FILE tunes_file;
+
+static void FreePhFile(void **ptr, PH_FILE *file)
+{
+	FreeFileData(*ptr, file->size, file->mapped);
+	*ptr = NULL;
+	file->size = 0;
+	file->mapped = 0;
+}
+
+static espeak_ng_STATUS ReadPhFile(void **ptr, PH_FILE *file, const char *fname, int *size, espeak_ng_ERROR_CONTEXT *context)
 {
 	if (!ptr) return EINVAL;
 
-	FILE *f_in;
 	int length;
 	char buf[sizeof(path_home)+40];
 
@@ -76,32 +94,13 @@ static espeak_ng_STATUS ReadPhFile(void **ptr, const char *fname, int *size, esp
 	if (length < 0) // length == -errno
 		return create_file_error_context(context, -length, buf);
 
-	if ((f_in = fopen(buf, "rb")) == NULL)
-		return create_file_error_context(context, errno, buf);
-
-	if (*ptr != NULL) {
-		free(*ptr);
-		*ptr = NULL;
-	}
-	
-	if (length == 0) {
-		*ptr = NULL;
-		return 0;
-	}
+	FreePhFile(ptr, file);
 
-	if ((*ptr = malloc(length)) == NULL) {
-		fclose(f_in);
-		return ENOMEM;
-	}
-	if (fread(*ptr, 1, length, f_in) != length) {
-		int error = errno;
-		fclose(f_in);
-		free(*ptr);
-		*ptr = NULL;
-		return create_file_error_context(context, error, buf);
-	}
+	espeak_ng_STATUS status = LoadFileData(buf, length, ptr, &file->mapped);
+	if (status != ENS_OK)
+		return create_file_error_context(context, status, buf);
 
-	fclose(f_in);
+	file->size = length;
 	if (size != NULL)
 		*size = length;
 	return ENS_OK;
@@ -116,13 +115,13 @@ espeak_ng_STATUS LoadPhData(int *srate, espeak_ng_ERROR_CONTEXT *context)
 	unsigned char *p;
 
 	espeak_ng_STATUS status;
-	if ((status = ReadPhFile((void **)&phoneme_tab_data, "phontab", NULL, context)) != ENS_OK)
+	if ((status = ReadPhFile((void **)&phoneme_tab_data, &phoneme_tab_file, "phontab", NULL, context)) != ENS_OK)
 		return status;
-	if ((status = ReadPhFile((void **)&phoneme_index, "phonindex", NULL, context)) != ENS_OK)
+	if ((status = ReadPhFile((void **)&phoneme_index, &phoneme_index_file, "phonindex", NULL, context)) != ENS_OK)
 		return status;
-	if ((status = ReadPhFile((void **)&phondata_ptr, "phondata", NULL, context)) != ENS_OK)
+	if ((status = ReadPhFile((void **)&phondata_ptr, &phondata_file, "phondata", NULL, context)) != ENS_OK)
 		return status;
-	if ((status = ReadPhFile((void **)&tunes, "intonations", &length, context)) != ENS_OK)
+	if ((status = ReadPhFile((void **)&tunes, &tunes_file, "intonations", &length, context)) != ENS_OK)
 		return status;
 	wavefile_data = (unsigned char *)phondata_ptr;
 	n_tunes = length / sizeof(TUNE);
@@ -166,14 +165,10 @@ espeak_ng_STATUS LoadPhData(int *srate, espeak_ng_ERROR_CONTEXT *context)
 
 void FreePhData(void)
 {
-	free(phoneme_tab_data);
-	free(phoneme_index);
-	free(phondata_ptr);
-	free(tunes);
-	phoneme_tab_data = NULL;
-	phoneme_index = NULL;
-	phondata_ptr = NULL;
-	tunes = NULL;
+	FreePhFile((void **)&phoneme_tab_data, &phoneme_tab_file);
+	FreePhFile((void **)&phoneme_index, &phoneme_index_file);
+	FreePhFile((void **)&phondata_ptr, &phondata_file);
+	FreePhFile((void **)&tunes, &tunes_file);
 	current_phoneme_table = -1;
 }
 
@@ -33,6 +33,7 @@
 #include <windows.h>
 #else
 #include <dirent.h>
+#include <unistd.h>
 #endif
 
 #include <espeak-ng/espeak_ng.h>
@@ -465,7 +466,7 @@ voice_t *LoadVoice(const char *vname, int control)
 		}
 	}
 
-	f_voice = fopen(buf, "r");
+	f_voice = OpenDataFile(buf, "r");
 
         if (!(control & 8)/*compiling phonemes*/)
             language_type = ESPEAKNG_DEFAULT_VOICE; // default
@@ -1216,25 +1217,40 @@ static void GetVoices(const char *path, int len_path_voices, int is_language_fil
 	DIR *dir;
 	struct dirent *ent;
 
-	if ((dir = opendir((char *)path)) == NULL) // note: (char *) is needed for WINCE
-		return;
+	if ((dir = opendir((char *)path)) != NULL) { // note: (char *) is needed for WINCE
+		while ((ent = readdir(dir)) != NULL) {
+			if (n_voices_list >= (N_VOICES_LIST-2)) {
+				fprintf(stderr, "Warning: maximum number %d of (N_VOICES_LIST = %d - 1) reached\n", n_voices_list + 1, N_VOICES_LIST);
+				break; // voices list is full
+			}
+
+			if (ent->d_name[0] == '.')
+				continue;
+
+				 sprintf(fname, "%s%c%s", path, PATHSEP, ent->d_name);
+				if (AddToVoicesList(fname, len_path_voices, is_language_file) != 0) {
+					continue;
+				}
+
+		}
+		closedir(dir);
+	}
 
-	while ((ent = readdir(dir)) != NULL) {
+	// list the voices in the data archive that are not on disk
+	char name[100];
+	int index = 0;
+	while (NextDataArchiveFile(path, &index, name, sizeof(name))) {
 		if (n_voices_list >= (N_VOICES_LIST-2)) {
 			fprintf(stderr, "Warning: maximum number %d of (N_VOICES_LIST = %d - 1) reached\n", n_voices_list + 1, N_VOICES_LIST);
 			break; // voices list is full
 		}
 
-		if (ent->d_name[0] == '.')
-			continue;
-
-			 sprintf(fname, "%s%c%s", path, PATHSEP, ent->d_name);
-			if (AddToVoicesList(fname, len_path_voices, is_language_file) != 0) {
-				continue;
-			}
+		sprintf(fname, "%s%c%s", path, PATHSEP, name);
+		if (access(fname, F_OK) == 0)
+			continue; // listed from the directory
 
+		AddToVoicesList(fname, len_path_voices, is_language_file);
 	}
-	closedir(dir);
 #endif
 }
 
@@ -1419,7 +1435,7 @@ static int AddToVoicesList(const char *fname, int len_path_voices, int is_langua
 	} else if (ftype > 0) {
 		// a regular file, add it to the voices list
 		FILE *f_voice;
-		if ((f_voice = fopen(fname, "r")) == NULL)
+		if ((f_voice = OpenDataFile(fname, "r")) == NULL)
 			return 1;
 
 		// pass voice file name within the voices directory
@@ -19,8 +19,11 @@
 #include "config.h"
 #include "test_assert.h"
 
+#include <errno.h>
 #include <stdlib.h>
 #include <string.h>
+#include <sys/stat.h>
+#include <unistd.h>
 
 #include <espeak-ng/espeak_ng.h>
 #include <espeak-ng/speak_lib.h>
@@ -624,6 +627,372 @@ test_espeak_ng_phoneme_events(int enabled, int ipa) {
 	TEST_ASSERT(p_decoder == NULL);
 }
 
+static int
+_test_espeak_ng_initial_buffer_length_cb(short *samples, int num_samples, espeak_EVENT *events) {
+	int *chunks = events->user_data;
+	(void) samples;
+	if (num_samples > 0 && chunks[1] == 0) {
+		if (chunks[0] == 0)
+			chunks[0] = num_samples;
+		else
+			chunks[1] = num_samples;
+	}
+	return 0;
+}
+
+static void
+test_espeak_ng_initial_buffer_length() {
+	printf("testing espeak_ng_SetInitialBufferLength\n");
+
+	TEST_ASSERT(event_list == NULL);
+	TEST_ASSERT(translator == NULL);
+	TEST_ASSERT(p_decoder == NULL);
+
+	espeak_ng_InitializePath(NULL);
+	espeak_ng_ERROR_CONTEXT context = NULL;
+	TEST_ASSERT(espeak_ng_Initialize(&context) == ENS_OK);
+	TEST_ASSERT(espeak_ng_InitializeOutput(0, 300, NULL) == ENS_OK);
+	espeak_SetSynthCallback(_test_espeak_ng_initial_buffer_length_cb);
+	TEST_ASSERT(espeak_ng_SetInitialBufferLength(-1) == EINVAL);
+
+	const char *test = "One two three four five six seven eight nine ten.";
+	int full[2] = { 0, 0 };
+	TEST_ASSERT(espeak_ng_Synthesize(test, strlen(test)+1, 0, POS_CHARACTER, 0, espeakCHARS_AUTO, NULL, full) == ENS_OK);
+	TEST_ASSERT(espeak_ng_Synchronize() == ENS_OK);
+
+	int initial[2] = { 0, 0 };
+	TEST_ASSERT(espeak_ng_SetInitialBufferLength(20) == ENS_OK);
+	TEST_ASSERT(espeak_ng_Synthesize(test, strlen(test)+1, 0, POS_CHARACTER, 0, espeakCHARS_AUTO, NULL, initial) == ENS_OK);
+	TEST_ASSERT(espeak_ng_Synchronize() == ENS_OK);
+
+	// The first chunk is rounded up to the next sample.
+	const int initial_samples = espeak_ng_GetSampleRate() / 50 + 1;
+	TEST_ASSERT(full[0] > initial_samples);
+	TEST_ASSERT(initial[0] <= initial_samples);
+	TEST_ASSERT(initial[1] > initial[0] && initial[1] <= 2 * initial_samples);
+
+	TEST_ASSERT(espeak_Terminate() == EE_OK);
+	TEST_ASSERT(event_list == NULL);
+	TEST_ASSERT(translator == NULL);
+	TEST_ASSERT(p_decoder == NULL);
+}
+
+static void
+test_espeak_ng_dictionary_cache()
+{
+	printf("testing espeak_ng_SetDictionaryCacheSize\n");
+
+	TEST_ASSERT(event_list == NULL);
+	TEST_ASSERT(translator == NULL);
+	TEST_ASSERT(p_decoder == NULL);
+
+	TEST_ASSERT(espeak_Initialize(AUDIO_OUTPUT_RETRIEVAL, 0, NULL, 0) == 22050);
+	espeak_SetSynthCallback(NULL);
+	TEST_ASSERT(espeak_ng_SetDictionaryCacheSize(-1) == EINVAL);
+	TEST_ASSERT(espeak_ng_SetDictionaryCacheSize(16*1024*1024) == ENS_OK);
+
+	TEST_ASSERT(espeak_SetVoiceByName("en") == EE_OK);
+	TEST_ASSERT(strcmp(translator->dictionary_name, "en") == 0);
+	const char *en_dict = translator->data_dictlist;
+
+	TEST_ASSERT(espeak_SetVoiceByName("de") == EE_OK);
+	TEST_ASSERT(strcmp(translator->dictionary_name, "de") == 0);
+	TEST_ASSERT(translator->data_dictlist != en_dict);
+
+	// The cached dictionary is used when switching back to the language.
+	TEST_ASSERT(espeak_SetVoiceByName("en") == EE_OK);
+	TEST_ASSERT(strcmp(translator->dictionary_name, "en") == 0);
+	TEST_ASSERT(translator->data_dictlist == en_dict);
+
+	const char *test = "One two three.";
+	TEST_ASSERT(espeak_Synth(test, strlen(test)+1, 0, POS_CHARACTER, 0, espeakCHARS_AUTO, NULL, NULL) == EE_OK);
+	TEST_ASSERT(espeak_Synchronize() == EE_OK);
+
+	TEST_ASSERT(espeak_ng_SetDictionaryCacheSize(0) == ENS_OK);
+	TEST_ASSERT(espeak_SetVoiceByName("de") == EE_OK);
+	TEST_ASSERT(strcmp(translator->dictionary_name, "de") == 0);
+
+	TEST_ASSERT(espeak_Terminate() == EE_OK);
+	TEST_ASSERT(event_list == NULL);
+	TEST_ASSERT(translator == NULL);
+	TEST_ASSERT(p_decoder == NULL);
+}
+
+#if PLATFORM_POSIX
+static void
+write_data_file(const char *filename, const char *data, size_t size)
+{
+	FILE *f = fopen(filename, "wb");
+	TEST_ASSERT(f != NULL);
+	TEST_ASSERT(fwrite(data, 1, size, f) == size);
+	TEST_ASSERT(fclose(f) == 0);
+}
+
+static char *
+read_data_file(const char *filename, size_t *size)
+{
+	FILE *f = fopen(filename, "rb");
+	TEST_ASSERT(f != NULL);
+	TEST_ASSERT(fseek(f, 0, SEEK_END) == 0);
+	*size = ftell(f);
+	TEST_ASSERT(fseek(f, 0, SEEK_SET) == 0);
+	char *data = malloc(*size);
+	TEST_ASSERT(data != NULL);
+	TEST_ASSERT(fread(data, 1, *size, f) == *size);
+	fclose(f);
+	return data;
+}
+#endif
+
+static void
+test_espeak_ng_dictionary_cache_replaced_file()
+{
+	printf("testing espeak_ng_SetDictionaryCacheSize with a replaced dictionary\n");
+
+	TEST_ASSERT(event_list == NULL);
+	TEST_ASSERT(translator == NULL);
+	TEST_ASSERT(p_decoder == NULL);
+
+#if PLATFORM_POSIX
+	espeak_ng_InitializePath(NULL);
+	char data_path[sizeof(path_home)];
+	strcpy(data_path, path_home);
+
+	// Copy the data needed for the en and de voices, so the en dictionary can be replaced.
+	static const char *dirs[] = { "espeak-ng-data", "espeak-ng-data/lang", "espeak-ng-data/lang/gmw" };
+	static const char *names[] = { "phontab", "phonindex", "phondata", "intonations", "en_dict", "de_dict", "lang/gmw/en", "lang/gmw/de" };
+	const int dir_count = sizeof(dirs) / sizeof(dirs[0]);
+	const int count = sizeof(names) / sizeof(names[0]);
+	char root[] = "/tmp/espeak-ng-test-XXXXXX";
+	char filename[sizeof(path_home)+40];
+	TEST_ASSERT(mkdtemp(root) != NULL);
+	for (int i = 0; i < dir_count; i++) {
+		sprintf(filename, "%s/%s", root, dirs[i]);
+		TEST_ASSERT(mkdir(filename, 0700) == 0);
+	}
+	for (int i = 0; i < count; i++) {
+		size_t size;
+		sprintf(filename, "%s/%s", data_path, names[i]);
+		char *data = read_data_file(filename, &size);
+		sprintf(filename, "%s/espeak-ng-data/%s", root, names[i]);
+		write_data_file(filename, data, size);
+		free(data);
+	}
+
+	TEST_ASSERT(espeak_Initialize(AUDIO_OUTPUT_RETRIEVAL, 0, root, 0) == 22050);
+	espeak_SetSynthCallback(NULL);
+	TEST_ASSERT(espeak_ng_SetDictionaryCacheSize(16*1024*1024) == ENS_OK);
+
+	TEST_ASSERT(espeak_SetVoiceByName("en") == EE_OK);
+	TEST_ASSERT(strcmp(translator->dictionary_name, "en") == 0);
+	TEST_ASSERT(espeak_SetVoiceByName("de") == EE_OK);
+	TEST_ASSERT(strcmp(translator->dictionary_name, "de") == 0);
+
+	// Change a byte in the first word of the en dictionary, keeping its size.
+	char en_dict[sizeof(path_home)+40];
+	size_t size;
+	sprintf(en_dict, "%s/espeak-ng-data/en_dict", root);
+	char *data = read_data_file(en_dict, &size);
+	int offset = 8; // the start of the hash table
+	while (data[offset] == 0)
+		offset++;
+	TEST_ASSERT(data[offset] > 1); // the length of the word entry
+	offset++;
+	const char original = data[offset];
+	data[offset] = original ^ 1;
+
+	// Replace the file, as an imported dictionary is.
+	sprintf(filename, "%s.tmp", en_dict);
+	write_data_file(filename, data, size);
+	TEST_ASSERT(rename(filename, en_dict) == 0);
+
+	TEST_ASSERT(espeak_SetVoiceByName("en") == EE_OK);
+	TEST_ASSERT(strcmp(translator->dictionary_name, "en") == 0);
+	TEST_ASSERT(translator->data_dictlist[offset] == (original ^ 1));
+
+	// Rewrite the file in place, which can keep its modification time. The
+	// cached dictionaries are not used once the data path is set again, as
+	// the engine is when it is created on new data without being terminated.
+	data[offset] = original;
+	write_data_file(en_dict, data, size);
+	free(data);
+
+	espeak_ng_InitializePath(root);
+	TEST_ASSERT(espeak_SetVoiceByName("de") == EE_OK);
+	TEST_ASSERT(strcmp(translator->dictionary_name, "de") == 0);
+	TEST_ASSERT(espeak_SetVoiceByName("en") == EE_OK);
+	TEST_ASSERT(strcmp(translator->dictionary_name, "en") == 0);
+	TEST_ASSERT(translator->data_dictlist[offset] == original);
+
+	TEST_ASSERT(espeak_ng_SetDictionaryCacheSize(0) == ENS_OK);
+	TEST_ASSERT(espeak_Terminate() == EE_OK);
+	TEST_ASSERT(event_list == NULL);
+	TEST_ASSERT(translator == NULL);
+	TEST_ASSERT(p_decoder == NULL);
+
+	for (int i = 0; i < count; i++) {
+		sprintf(filename, "%s/espeak-ng-data/%s", root, names[i]);
+		TEST_ASSERT(unlink(filename) == 0);
+	}
+	for (int i = dir_count - 1; i >= 0; i--) {
+		sprintf(filename, "%s/%s", root, dirs[i]);
+		TEST_ASSERT(rmdir(filename) == 0);
+	}
+	TEST_ASSERT(rmdir(root) == 0);
+#endif
+}
+
+#if HAVE_MMAP && defined(__linux__)
+// Returns whether a file with a path ending in the name is mapped into the process.
+static int
+is_file_mapped(const char *name)
+{
+	char line[1024];
+	int found = 0;
+	FILE *maps = fopen("/proc/self/maps", "r");
+	TEST_ASSERT(maps != NULL);
+	while (!found && fgets(line, sizeof(line), maps) != NULL) {
+		char *end = strchr(line, '\n');
+		if (end != NULL)
+			*end = 0;
+		const size_t length = strlen(line);
+		found = length >= strlen(name) && strcmp(line + length - strlen(name), name) == 0;
+	}
+	fclose(maps);
+	return found;
+}
+#endif
+
+static void
+test_espeak_ng_mapped_data_files()
+{
+	printf("testing espeak_ng_SetMappedDataFiles\n");
+
+	TEST_ASSERT(event_list == NULL);
+	TEST_ASSERT(translator == NULL);
+	TEST_ASSERT(p_decoder == NULL);
+
+#if HAVE_MMAP
+	TEST_ASSERT(espeak_ng_SetMappedDataFiles(1) == ENS_OK);
+#else
+	TEST_ASSERT(espeak_ng_SetMappedDataFiles(1) == ENS_NOT_SUPPORTED);
+#endif
+	TEST_ASSERT(espeak_Initialize(AUDIO_OUTPUT_RETRIEVAL, 0, NULL, 0) == 22050);
+	espeak_SetSynthCallback(NULL);
+	TEST_ASSERT(espeak_ng_SetDictionaryCacheSize(16*1024*1024) == ENS_OK);
+
+	const char *test = "One two three.";
+	TEST_ASSERT(espeak_SetVoiceByName("en") == EE_OK);
+	TEST_ASSERT(espeak_Synth(test, strlen(test)+1, 0, POS_CHARACTER, 0, espeakCHARS_AUTO, NULL, NULL) == EE_OK);
+	TEST_ASSERT(espeak_Synchronize() == EE_OK);
+	TEST_ASSERT(espeak_SetVoiceByName("de") == EE_OK);
+	TEST_ASSERT(espeak_Synth(test, strlen(test)+1, 0, POS_CHARACTER, 0, espeakCHARS_AUTO, NULL, NULL) == EE_OK);
+	TEST_ASSERT(espeak_Synchronize() == EE_OK);
+#if HAVE_MMAP && defined(__linux__)
+	TEST_ASSERT(is_file_mapped("/phondata"));
+	TEST_ASSERT(is_file_mapped("/en_dict"));
+	TEST_ASSERT(is_file_mapped("/de_dict"));
+#endif
+
+	TEST_ASSERT(espeak_ng_SetDictionaryCacheSize(0) == ENS_OK);
+	TEST_ASSERT(espeak_SetVoiceByName("en") == EE_OK);
+	TEST_ASSERT(strcmp(translator->dictionary_name, "en") == 0);
+#if HAVE_MMAP && defined(__linux__)
+	TEST_ASSERT(!is_file_mapped("/de_dict"));
+#endif
+
+	TEST_ASSERT(espeak_Terminate() == EE_OK);
+	TEST_ASSERT(event_list == NULL);
+	TEST_ASSERT(translator == NULL);
+	TEST_ASSERT(p_decoder == NULL);
+#if HAVE_MMAP && defined(__linux__)
+	TEST_ASSERT(!is_file_mapped("/en_dict"));
+	TEST_ASSERT(!is_file_mapped("/phondata"));
+#endif
+	TEST_ASSERT(espeak_ng_SetMappedDataFiles(0) == ENS_OK);
+}
+
+static void
+test_espeak_ng_data_archive(int mapped)
+{
+	printf("testing espeak_ng_SetDataArchive(mapped=%d)\n", mapped);
+
+	TEST_ASSERT(event_list == NULL);
+	TEST_ASSERT(translator == NULL);
+	TEST_ASSERT(p_decoder == NULL);
+
+#if HAVE_MMAP && (HAVE_FUNOPEN || HAVE_FMEMOPEN)
+	TEST_ASSERT(espeak_Initialize(AUDIO_OUTPUT_RETRIEVAL, 0, NULL, 0) == 22050);
+	char data_path[sizeof(path_home)];
+	strcpy(data_path, path_home);
+	TEST_ASSERT(espeak_Terminate() == EE_OK);
+
+	// Store the data files in a single file, at offsets that are 4-byte aligned but not page aligned.
+	static const char *names[] = { "phontab", "phonindex", "phondata", "intonations", "en_dict", "lang/gmw/en" };
+	const int count = sizeof(names) / sizeof(names[0]);
+	espeak_ng_DATA_FILE files[sizeof(names) / sizeof(names[0])];
+	char file_names[sizeof(names) / sizeof(names[0])][40];
+	FILE *archive = tmpfile();
+	TEST_ASSERT(archive != NULL);
+	TEST_ASSERT(fwrite("\0\0\0", 1, 4, archive) == 4);
+	long long offset = 4;
+	for (int i = 0; i < count; i++) {
+		char filename[sizeof(path_home)+40];
+		sprintf(filename, "%s/%s", data_path, names[i]);
+		FILE *f = fopen(filename, "rb");
+		TEST_ASSERT(f != NULL);
+
+		char buffer[4096];
+		size_t n;
+		long long length = 0;
+		while ((n = fread(buffer, 1, sizeof(buffer), f)) > 0) {
+			TEST_ASSERT(fwrite(buffer, 1, n, archive) == n);
+			length += n;
+		}
+		fclose(f);
+
+		sprintf(file_names[i], "espeak-ng-data/%s", names[i]);
+		files[i].name = file_names[i];
+		files[i].offset = offset;
+		files[i].length = length;
+		offset += length;
+		for (; offset % 4 != 0; offset++)
+			TEST_ASSERT(fputc(0, archive) == 0);
+	}
+	TEST_ASSERT(fflush(archive) == 0);
+
+	TEST_ASSERT(espeak_ng_SetDataArchive(fileno(archive), "/nonexistent/espeak-ng-archive", files, count) == ENS_OK);
+	fclose(archive);
+	TEST_ASSERT(espeak_ng_SetMappedDataFiles(mapped) == ENS_OK);
+
+	TEST_ASSERT(espeak_Initialize(AUDIO_OUTPUT_RETRIEVAL, 0, "/nonexistent/espeak-ng-archive", 0) == 22050);
+	TEST_ASSERT(strcmp(path_home, "/nonexistent/espeak-ng-archive/espeak-ng-data") == 0);
+	espeak_SetSynthCallback(NULL);
+
+	const espeak_VOICE **voices = espeak_ListVoices(NULL);
+	TEST_ASSERT(voices[0] != NULL);
+	TEST_ASSERT(strcmp(voices[0]->identifier, "gmw/en") == 0);
+	TEST_ASSERT(voices[1] == NULL);
+
+	const char *test = "One two three.";
+	TEST_ASSERT(espeak_SetVoiceByName("en") == EE_OK);
+	TEST_ASSERT(strcmp(translator->dictionary_name, "en") == 0);
+	TEST_ASSERT(espeak_Synth(test, strlen(test)+1, 0, POS_CHARACTER, 0, espeakCHARS_AUTO, NULL, NULL) == EE_OK);
+	TEST_ASSERT(espeak_Synchronize() == EE_OK);
+
+	TEST_ASSERT(espeak_Terminate() == EE_OK);
+	TEST_ASSERT(event_list == NULL);
+	TEST_ASSERT(translator == NULL);
+	TEST_ASSERT(p_decoder == NULL);
+	TEST_ASSERT(espeak_ng_SetDataArchive(-1, NULL, NULL, 0) == ENS_OK);
+	TEST_ASSERT(espeak_ng_SetMappedDataFiles(0) == ENS_OK);
+#else
+	(void)mapped; // unused
+	TEST_ASSERT(espeak_ng_SetDataArchive(0, "/", NULL, 0) == ENS_NOT_SUPPORTED);
+	TEST_ASSERT(espeak_ng_SetDataArchive(-1, NULL, NULL, 0) == ENS_OK);
+#endif
+}
+
 // endregion
 
 int
@@ -666,6 +1035,13 @@ main(int argc, char **argv)
 	test_espeak_ng_phoneme_events(1, 0);
 	test_espeak_ng_phoneme_events(1, 1);
 
+	test_espeak_ng_initial_buffer_length();
+	test_espeak_ng_dictionary_cache();
+	test_espeak_ng_dictionary_cache_replaced_file();
+	test_espeak_ng_mapped_data_files();
+	test_espeak_ng_data_archive(0);
+	test_espeak_ng_data_archive(1);
+
 	free(progdir);
 
 	return EXIT_SUCCESS;